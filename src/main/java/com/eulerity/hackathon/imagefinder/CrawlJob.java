@@ -0,0 +1,243 @@
+package com.eulerity.hackathon.imagefinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.eulerity.hackathon.imagefinder.ImageFinder.ImageResult;
+import com.eulerity.hackathon.imagefinder.crawler.CrawlCheckpoint;
+import com.eulerity.hackathon.imagefinder.crawler.ImageMetadata;
+import com.eulerity.hackathon.imagefinder.crawler.StopReason;
+import com.eulerity.hackathon.imagefinder.crawler.WebCrawler;
+
+/**
+ * A crawl submitted to the {@link CrawlJobManager}. Tracks the crawler, its
+ * lifecycle and the final results so clients can poll by job ID.
+ */
+public class CrawlJob {
+
+    /**
+     * Lifecycle states of a crawl job
+     */
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, STOPPED, FAILED, REJECTED;
+
+        /**
+         * @return true if the job will not change state anymore
+         */
+        public boolean isFinished() {
+            return this == COMPLETED || this == STOPPED || this == FAILED || this == REJECTED;
+        }
+    }
+
+    private final String id;
+    private final String url;
+    private final String cacheKey;
+    private final boolean detectLogos;
+    private final WebCrawler crawler;
+    private final long createdAt;
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.QUEUED);
+    private volatile List<ImageResult> results;
+    private volatile String error;
+    private volatile long finishedAt;
+    private volatile CrawlCheckpoint checkpoint;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * Constructor for CrawlJob
+     * 
+     * @param url The URL being crawled
+     * @param cacheKey The results cache key for this crawl
+     * @param detectLogos Whether logo detection is enabled
+     * @param crawler The crawler that will do the work
+     */
+    public CrawlJob(String url, String cacheKey, boolean detectLogos, WebCrawler crawler) {
+        this(UUID.randomUUID().toString(), url, cacheKey, detectLogos, crawler);
+    }
+
+    /**
+     * Constructor for a job with a known ID, e.g. one resumed from a checkpoint
+     * 
+     * @param id The job ID
+     * @param url The URL being crawled
+     * @param cacheKey The results cache key for this crawl
+     * @param detectLogos Whether logo detection is enabled
+     * @param crawler The crawler that will do the work
+     */
+    public CrawlJob(String id, String url, String cacheKey, boolean detectLogos, WebCrawler crawler) {
+        this.id = id;
+        this.url = url;
+        this.cacheKey = cacheKey;
+        this.detectLogos = detectLogos;
+        this.crawler = crawler;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Create a job that is already completed, e.g. when results were served from the cache
+     * 
+     * @param url The URL that was crawled
+     * @param cacheKey The results cache key
+     * @param detectLogos Whether logo detection is enabled
+     * @param results The results
+     * @return A completed job
+     */
+    public static CrawlJob completed(String url, String cacheKey, boolean detectLogos, List<ImageResult> results) {
+        CrawlJob job = new CrawlJob(url, cacheKey, detectLogos, null);
+        job.results = results;
+        job.status.set(Status.COMPLETED);
+        job.finishedAt = job.createdAt;
+        job.done.countDown();
+        return job;
+    }
+
+    /**
+     * Record the crawl's progress in a checkpoint so the job can be resumed after
+     * a restart. The checkpoint is deleted once the job completes, and kept if it
+     * is stopped, fails or runs out of budget. Must be called before the job runs.
+     * 
+     * @param checkpoint The checkpoint
+     * @param resume true to continue from the progress already in the checkpoint
+     */
+    public void setCheckpoint(CrawlCheckpoint checkpoint, boolean resume) {
+        this.checkpoint = checkpoint;
+        crawler.setCheckpoint(checkpoint, resume);
+    }
+
+    /**
+     * Run the crawl on the calling thread and record the outcome
+     */
+    void run() {
+        if (!status.compareAndSet(Status.QUEUED, Status.RUNNING)) {
+            return; // Stopped before it got a worker
+        }
+        try {
+            List<String> imageUrls = crawler.crawl();
+            results = ImageFinder.buildResults(imageUrls, crawler.getImageMetadata(), detectLogos);
+            // A job stopped while crawling stays stopped
+            if (status.compareAndSet(Status.RUNNING, Status.COMPLETED)) {
+                // Results cut short by a budget would be served to requests without one
+                if (!isStoppedByBudget()) {
+                    ImageFinder.cacheResults(cacheKey, results);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            // The node is saturated, the client may retry later
+            error = e.getMessage();
+            status.compareAndSet(Status.RUNNING, Status.REJECTED);
+        } catch (Exception e) {
+            e.printStackTrace();
+            error = e.getMessage() != null ? e.getMessage() : "Unknown error occurred during crawling";
+            status.compareAndSet(Status.RUNNING, Status.FAILED);
+        } finally {
+            releaseCheckpoint();
+            finishedAt = System.currentTimeMillis();
+            done.countDown();
+        }
+    }
+
+    /**
+     * Reject a job that never got a thread because the node is saturated
+     * 
+     * @param message Why the job was rejected
+     */
+    void reject(String message) {
+        if (status.compareAndSet(Status.QUEUED, Status.REJECTED)) {
+            error = message;
+            releaseCheckpoint();
+            results = Collections.emptyList();
+            finishedAt = System.currentTimeMillis();
+            done.countDown();
+        }
+    }
+
+    /**
+     * @return true if the crawl ended because a budget ran out
+     */
+    private boolean isStoppedByBudget() {
+        StopReason stopReason = crawler != null ? crawler.getStopReason() : null;
+        return stopReason != null && stopReason.isBudget();
+    }
+
+    /**
+     * Delete the checkpoint of a job that crawled everything, keep it otherwise
+     * so that a job stopped early can be resumed
+     */
+    private void releaseCheckpoint() {
+        CrawlCheckpoint current = checkpoint;
+        if (current != null) {
+            if (status.get() == Status.COMPLETED && !isStoppedByBudget()) {
+                current.delete();
+            } else {
+                current.close();
+            }
+        }
+    }
+
+    /**
+     * Block until the job has finished or a timeout runs out
+     * 
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return true if the job finished, false if the timeout ran out first
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * Stop the job. A queued job will never start; a running job keeps the
+     * results found so far.
+     * 
+     * @return true if the job was queued or running
+     */
+    public boolean stop() {
+        // Only one of run() and stop() wins a queued job
+        if (status.compareAndSet(Status.QUEUED, Status.STOPPED)) {
+            releaseCheckpoint();
+            results = Collections.emptyList();
+            finishedAt = System.currentTimeMillis();
+            done.countDown();
+            return true;
+        }
+        if (status.compareAndSet(Status.RUNNING, Status.STOPPED)) {
+            crawler.stop();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the results found so far. Returns the final results once the job has finished.
+     * 
+     * @return List of image results
+     */
+    public List<ImageResult> getResults() {
+        List<ImageResult> finalResults = results;
+        if (finalResults != null) {
+            return finalResults;
+        }
+        if (crawler == null) {
+            return Collections.emptyList();
+        }
+        Map<String, ImageMetadata> metadataMap = crawler.getImageMetadata();
+        return ImageFinder.buildResults(new ArrayList<>(metadataMap.keySet()), metadataMap, detectLogos);
+    }
+
+    public String getId() { return id; }
+    public String getUrl() { return url; }
+    public String getCacheKey() { return cacheKey; }
+    public boolean isDetectLogos() { return detectLogos; }
+    public WebCrawler getCrawler() { return crawler; }
+    public Status getStatus() { return status.get(); }
+    public String getError() { return error; }
+    public long getCreatedAt() { return createdAt; }
+    public long getFinishedAt() { return finishedAt; }
+}
@@ -0,0 +1,175 @@
+package com.eulerity.hackathon.imagefinder;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs crawl jobs on a server-managed executor so servlet threads are not held
+ * for the duration of a crawl. Jobs are looked up by ID and kept for a while
+ * after they finish so clients can collect the results. Expired jobs are
+ * pruned on a timer rather than on every submit.
+ * 
+ * Jobs are handed straight to a thread, which submits the crawl to the
+ * CrawlScheduler where admission is decided. Nothing queues in front of the
+ * scheduler: a job that finds every thread busy is rejected.
+ */
+public class CrawlJobManager {
+    // Longest a finished job outlives its retention period
+    private static final long MAX_PRUNE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MIN_PRUNE_INTERVAL_MS = 1000;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService pruner;
+    private final Map<String, CrawlJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, CrawlJob> inFlight = new ConcurrentHashMap<>();
+    private final long retentionMs;
+
+    /**
+     * Constructor for CrawlJobManager
+     * 
+     * @param maxConcurrentJobs Maximum number of jobs running or waiting for admission at the same time
+     * @param retentionMs How long finished jobs are kept, in milliseconds
+     */
+    public CrawlJobManager(int maxConcurrentJobs, long retentionMs) {
+        this.retentionMs = retentionMs;
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "crawl-job-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), threadFactory);
+        this.pruner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "crawl-job-pruner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(MIN_PRUNE_INTERVAL_MS, Math.min(MAX_PRUNE_INTERVAL_MS, retentionMs));
+        pruner.scheduleWithFixedDelay(this::pruneFinishedJobs, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Submit a job for execution
+     * 
+     * @param job The job to run
+     * @return The submitted job, rejected if every job thread is busy
+     */
+    public CrawlJob submit(CrawlJob job) {
+        jobs.put(job.getId(), job);
+        if (!job.getStatus().isFinished()) {
+            try {
+                executor.execute(job::run);
+            } catch (RejectedExecutionException e) {
+                rejectJob(job);
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Submit a job unless one with the same key is already queued or running,
+     * in which case the caller joins that job and shares its results.
+     * 
+     * @param key The key identifying equivalent crawls
+     * @param factory Creates the job if there is none to join
+     * @return The new or joined job, rejected if every job thread is busy
+     */
+    public CrawlJob submitOrJoin(String key, Supplier<CrawlJob> factory) {
+        CrawlJob[] created = new CrawlJob[1];
+        CrawlJob job = inFlight.compute(key, (k, existing) -> {
+            if (existing != null && !existing.getStatus().isFinished()) {
+                return existing;
+            }
+            created[0] = factory.get();
+            return created[0];
+        });
+        
+        if (job == created[0]) {
+            jobs.put(job.getId(), job);
+            try {
+                executor.execute(() -> {
+                    try {
+                        job.run();
+                    } finally {
+                        inFlight.remove(key, job);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(key, job);
+                rejectJob(job);
+            }
+        }
+        return job;
+    }
+
+    private void rejectJob(CrawlJob job) {
+        job.reject("Crawler is at capacity (" + executor.getActiveCount()
+                + " jobs running), try again later");
+    }
+
+    /**
+     * Find a queued or running job for a URL
+     * 
+     * @param url The URL as submitted by the client
+     * @return The job, or null if none is active
+     */
+    public CrawlJob findActive(String url) {
+        for (CrawlJob job : inFlight.values()) {
+            if (job.getUrl().equals(url) && !job.getStatus().isFinished()) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a job by ID
+     * 
+     * @param jobId The job ID
+     * @return The job, or null if unknown or expired
+     */
+    public CrawlJob get(String jobId) {
+        return jobId == null ? null : jobs.get(jobId);
+    }
+
+    /**
+     * Remove finished jobs whose retention period has passed
+     */
+    private void pruneFinishedJobs() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        Iterator<CrawlJob> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            CrawlJob job = iterator.next();
+            if (job.getStatus().isFinished() && job.getFinishedAt() < cutoff) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Stop all jobs and shut down the executor
+     */
+    public void shutdown() {
+        pruner.shutdownNow();
+        for (CrawlJob job : jobs.values()) {
+            job.stop();
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
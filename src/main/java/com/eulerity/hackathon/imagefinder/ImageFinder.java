@@ -1,36 +1,60 @@
 package com.eulerity.hackathon.imagefinder;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.eulerity.hackathon.imagefinder.crawler.CrawlBudget;
+import com.eulerity.hackathon.imagefinder.crawler.CrawlCheckpoint;
+import com.eulerity.hackathon.imagefinder.crawler.CrawlScheduler;
+import com.eulerity.hackathon.imagefinder.crawler.DedupeMode;
+import com.eulerity.hackathon.imagefinder.crawler.ExtractMode;
+import com.eulerity.hackathon.imagefinder.crawler.FetchMode;
 import com.eulerity.hackathon.imagefinder.crawler.ImageMetadata;
 import com.eulerity.hackathon.imagefinder.crawler.LogoDetector;
 import com.eulerity.hackathon.imagefinder.crawler.WebCrawler;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonWriter;
 
-@WebServlet(name = "ImageFinder", urlPatterns = {"/main"})
+@WebServlet(name = "ImageFinder", urlPatterns = {"/main"}, asyncSupported = true)
 public class ImageFinder extends HttpServlet {
     private static final long serialVersionUID = 1L;
     private static final int DEFAULT_MAX_PAGES = 100;
     private static final int DEFAULT_THREAD_COUNT = 8;
     private static final int DEFAULT_CRAWL_DELAY_MS = 500;
+    private static final double DEFAULT_LINK_FILTER_RATE = 0.01;
+    // Threads for jobs running or waiting for admission by the CrawlScheduler. By
+    // default more than the scheduler admits and queues, so it is usually the
+    // scheduler that rejects jobs when the node is full. Jobs are never queued here.
+    private static final int MAX_CONCURRENT_JOBS = Integer.getInteger("imagefinder.maxConcurrentJobs", 64);
+    private static final long JOB_RETENTION_MS = 60 * 60 * 1000L; // 1 hour
+    private static final long STREAM_HEARTBEAT_MS = 15000;
+    // How long a client waits for a job beyond its crawl's time limit, e.g. for admission
+    private static final long JOB_WAIT_SLACK_MS = TimeUnit.MINUTES.toMillis(1);
 
-    private static final Map<String, WebCrawler> activeCrawlers = new ConcurrentHashMap<>();
-    private static final Map<String, List<ImageResult>> resultsCache = new ConcurrentHashMap<>();
+    private static final long CACHE_MAX_WEIGHT = Long.getLong("imagefinder.cache.maxWeight", 200000L);
+    private static final long CACHE_TTL_MS = Long.getLong("imagefinder.cache.ttlMinutes", 60L) * 60 * 1000;
+    
+    // Weighted by image count so one huge crawl cannot pin the heap
+    private static final ResultsCache<String, List<ImageResult>> resultsCache =
+            new LruResultsCache<>(CACHE_MAX_WEIGHT, CACHE_TTL_MS, results -> 1 + results.size());
+    private static final CrawlJobManager jobManager = new CrawlJobManager(MAX_CONCURRENT_JOBS, JOB_RETENTION_MS);
 
     protected static final Gson GSON = new GsonBuilder()
             .serializeNulls()
@@ -41,19 +65,43 @@ public class ImageFinder extends HttpServlet {
         resp.setContentType("application/json");
         String url = req.getParameter("url");
         String action = req.getParameter("action");
+        String jobId = req.getParameter("jobId");
 
         // Handle different actions
         if (action != null) {
             switch (action) {
                 case "status":
-                    handleStatusRequest(url, resp);
+                    if (jobId != null) {
+                        handleJobStatusRequest(jobId, resp);
+                    } else {
+                        handleStatusRequest(url, resp);
+                    }
+                    return;
+                case "results":
+                    handleJobResultsRequest(jobId, resp);
+                    return;
+                case "stream":
+                    handleJobStreamRequest(jobManager.get(jobId), jobId, req, resp);
+                    return;
+                case "resume":
+                    handleJobResumeRequest(jobId, resp);
                     return;
                 case "stop":
-                    handleStopRequest(url, resp);
+                    if (jobId != null) {
+                        handleJobStopRequest(jobId, resp);
+                    } else {
+                        handleStopRequest(url, resp);
+                    }
                     return;
                 case "clearCache":
                     handleClearCacheRequest(url, resp);
                     return;
+                case "cacheStats":
+                    resp.getWriter().print(GSON.toJson(resultsCache.stats()));
+                    return;
+                case "schedulerStats":
+                    resp.getWriter().print(GSON.toJson(CrawlScheduler.getInstance().getStats()));
+                    return;
             }
         }
 
@@ -67,52 +115,77 @@ public class ImageFinder extends HttpServlet {
         int maxPages = parseIntParam(req, "maxPages", DEFAULT_MAX_PAGES);
         int threadCount = parseIntParam(req, "threadCount", DEFAULT_THREAD_COUNT);
         int crawlDelay = parseIntParam(req, "crawlDelay", DEFAULT_CRAWL_DELAY_MS);
+        int priority = parseIntParam(req, "priority", CrawlScheduler.DEFAULT_PRIORITY);
         
         // Fix the boolean parsing to handle checkbox state correctly
         String detectLogosParam = req.getParameter("detectLogos");
         boolean detectLogos = "true".equals(detectLogosParam) || "on".equals(detectLogosParam);
         
         boolean refresh = Boolean.parseBoolean(req.getParameter("refresh"));
+        boolean async = Boolean.parseBoolean(req.getParameter("async"));
+        boolean stream = Boolean.parseBoolean(req.getParameter("stream"));
+        FetchMode fetchMode = "async".equalsIgnoreCase(req.getParameter("fetchMode")) ? FetchMode.ASYNC : FetchMode.JSOUP;
+        ExtractMode extractMode = "streaming".equalsIgnoreCase(req.getParameter("extractMode"))
+                ? ExtractMode.STREAMING : ExtractMode.DOM;
+        DedupeMode dedupeMode = "fingerprint".equalsIgnoreCase(req.getParameter("dedupe"))
+                ? DedupeMode.FINGERPRINT : DedupeMode.EXACT;
+        double linkFilterRate = parseLinkFilterRate(req);
+        boolean checkpoint = Boolean.parseBoolean(req.getParameter("checkpoint"));
+        CrawlBudget budget = parseBudget(req);
+        if (budget == null) {
+            sendErrorResponse(resp, "Invalid crawl budget");
+            return;
+        }
 
         // Create a composite cache key that includes URL and logo detection setting
         String cacheKey = createCacheKey(url, detectLogos);
 
+        if (async || stream) {
+            CrawlJob job = submitJob(url, cacheKey, refresh, maxPages, threadCount, crawlDelay, detectLogos, fetchMode, extractMode, dedupeMode, linkFilterRate, priority, budget, checkpoint);
+            if (job.getStatus() == CrawlJob.Status.REJECTED) {
+                resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                resp.getWriter().print(GSON.toJson(describeJob(job)));
+            } else if (stream) {
+                handleJobStreamRequest(job, job.getId(), req, resp);
+            } else {
+                resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+                resp.getWriter().print(GSON.toJson(describeJob(job)));
+            }
+            return;
+        }
+
+        // Serve cache hits directly, a client waiting for the response has no use for a job ID
+        List<ImageResult> cached = refresh ? null : resultsCache.get(cacheKey);
+        if (cached != null) {
+            resp.getWriter().print(GSON.toJson(cached));
+            return;
+        }
+
         try {
-            // Check cache using composite key
-            if (!refresh && resultsCache.containsKey(cacheKey)) {
-                resp.getWriter().print(GSON.toJson(resultsCache.get(cacheKey)));
+            // Start a crawl (joining one already running for the same site and
+            // options) and wait for it. The cache was checked above.
+            CrawlJob job = submitJob(url, cacheKey, true, maxPages, threadCount, crawlDelay, detectLogos, fetchMode, extractMode, dedupeMode, linkFilterRate, priority, budget, checkpoint);
+            if (!job.awaitCompletion(getMaxWaitMs(job), TimeUnit.MILLISECONDS)) {
+                // The crawl overran its time limit, the client can keep polling the job
+                resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+                resp.getWriter().print(GSON.toJson(describeJob(job)));
                 return;
             }
-        
-            // Create and start crawler
-            WebCrawler crawler = new WebCrawler(url, maxPages, threadCount, crawlDelay, detectLogos);
-            activeCrawlers.put(url, crawler);
-        
-            // Crawl and process images
-            List<String> imageUrls = crawler.crawl();
-            Map<String, ImageMetadata> metadataMap = crawler.getImageMetadata();
             
-            List<ImageResult> results = new ArrayList<>();
-            for (String imageUrl : imageUrls) {
-                ImageMetadata metadata = metadataMap.get(imageUrl);
-                ImageResult result = metadata != null 
-                    ? new ImageResult(
-                        imageUrl, 
-                        detectLogos && metadata.isLogo(), // Only set as logo if detection was enabled
-                        metadata.getAltText(), 
-                        metadata.getWidth(), 
-                        metadata.getHeight(), 
-                        metadata.getPageFound()
-                    )
-                    : createFallbackResult(imageUrl, detectLogos);
-                
-                results.add(result);
+            if (job.getStatus() == CrawlJob.Status.REJECTED) {
+                resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                resp.getWriter().print(GSON.toJson(describeJob(job)));
+                return;
             }
+            if (job.getStatus() == CrawlJob.Status.FAILED) {
+                sendErrorResponse(resp, "Crawling error: " + job.getError());
+                return;
+            }
+            resp.getWriter().print(GSON.toJson(job.getResults()));
         
-            // Cache with composite key and return results
-            resultsCache.put(cacheKey, results);
-            resp.getWriter().print(GSON.toJson(results));
-        
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendErrorResponse(resp, "Crawling error: interrupted while waiting for results");
         } catch (Exception e) {
             // More detailed error handling
             String errorMessage = e.getMessage();
@@ -126,19 +199,7 @@ public class ImageFinder extends HttpServlet {
             // Create user-friendly error message
             String userMessage = "Crawling error: " + errorMessage;
             
-            // Return more details in the error response
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", userMessage);
-            errorResponse.put("status", "failed");
-            errorResponse.put("errorType", e.getClass().getSimpleName());
-            
             sendErrorResponse(resp, userMessage);
-        } finally {
-            // Cleanup crawler
-            WebCrawler crawler = activeCrawlers.get(url);
-            if (crawler != null && !crawler.isRunning()) {
-                activeCrawlers.remove(url);
-            }
         }
     }
 
@@ -153,7 +214,83 @@ public class ImageFinder extends HttpServlet {
         return url + "_detectLogos_" + detectLogos;
     }
 
-    private ImageResult createFallbackResult(String imageUrl, boolean detectLogos) {
+    /**
+     * Create the key used to coalesce concurrent crawls. Only requests whose
+     * canonical URL and every option that changes how the crawl runs match share
+     * a single crawl, so a request never joins a crawl with another caller's
+     * politeness delay, modes or checkpointing.
+     * 
+     * @param url The URL
+     * @param maxPages Maximum number of pages to crawl
+     * @param threadCount Number of threads to use
+     * @param crawlDelay Delay between requests in milliseconds
+     * @param detectLogos Logo detection flag
+     * @param fetchMode How pages are fetched
+     * @param extractMode How images and links are extracted
+     * @param dedupeMode How visited URLs are remembered
+     * @param linkFilterRate False-positive rate of the link filter, 0 if disabled
+     * @param priority Scheduling priority
+     * @param budget The crawl budget
+     * @param checkpoint Whether the crawl is checkpointed
+     * @return A composite in-flight key
+     */
+    private String createFlightKey(String url, int maxPages, int threadCount, int crawlDelay, boolean detectLogos,
+            FetchMode fetchMode, ExtractMode extractMode, DedupeMode dedupeMode, double linkFilterRate,
+            int priority, CrawlBudget budget, boolean checkpoint) {
+        return WebCrawler.canonicalizeUrl(url) + "_maxPages_" + maxPages + "_threadCount_" + threadCount
+                + "_crawlDelay_" + crawlDelay + "_detectLogos_" + detectLogos + "_fetchMode_" + fetchMode
+                + "_extractMode_" + extractMode + "_dedupe_" + dedupeMode + "_linkFilterRate_" + linkFilterRate
+                + "_priority_" + priority + "_budget_" + budget + "_checkpoint_" + checkpoint;
+    }
+
+    /**
+     * Convert crawler output to the image results returned to clients
+     * 
+     * @param imageUrls The image URLs found
+     * @param metadataMap Metadata for the images, keyed by URL
+     * @param detectLogos Logo detection flag
+     * @return List of image results
+     */
+    static List<ImageResult> buildResults(List<String> imageUrls, Map<String, ImageMetadata> metadataMap, boolean detectLogos) {
+        List<ImageResult> results = new ArrayList<>();
+        for (String imageUrl : imageUrls) {
+            results.add(toResult(imageUrl, metadataMap.get(imageUrl), detectLogos));
+        }
+        return results;
+    }
+
+    /**
+     * Convert a single image to the result returned to clients
+     * 
+     * @param imageUrl The image URL
+     * @param metadata The image metadata, or null if none was recorded
+     * @param detectLogos Logo detection flag
+     * @return The image result
+     */
+    static ImageResult toResult(String imageUrl, ImageMetadata metadata, boolean detectLogos) {
+        return metadata != null 
+            ? new ImageResult(
+                imageUrl, 
+                detectLogos && metadata.isLogo(), // Only set as logo if detection was enabled
+                metadata.getAltText(), 
+                metadata.getWidth(), 
+                metadata.getHeight(), 
+                metadata.getPageFound()
+            )
+            : createFallbackResult(imageUrl, detectLogos);
+    }
+
+    /**
+     * Store the results of a completed crawl in the results cache
+     * 
+     * @param cacheKey The composite cache key
+     * @param results The results to cache
+     */
+    static void cacheResults(String cacheKey, List<ImageResult> results) {
+        resultsCache.put(cacheKey, results);
+    }
+
+    private static ImageResult createFallbackResult(String imageUrl, boolean detectLogos) {
         ImageResult result = new ImageResult(imageUrl);
         if (detectLogos) {
             result.setLogo(LogoDetector.isLikelyLogo(imageUrl));
@@ -166,27 +303,21 @@ public class ImageFinder extends HttpServlet {
 
     private void handleStatusRequest(String url, HttpServletResponse resp) throws IOException {
         Map<String, Object> status = new HashMap<>();
-        WebCrawler crawler = activeCrawlers.get(url);
+        CrawlJob job = jobManager.findActive(url);
+        WebCrawler crawler = job != null ? job.getCrawler() : null;
         
         if (crawler != null && crawler.isRunning()) {
             status.put("status", "running");
             status.put("pagesCrawled", crawler.getPagesCrawled());
+            status.put("requestCount", crawler.getRequestCount());
+            status.put("bytesDownloaded", crawler.getBytesDownloaded());
         } else {
             // Check if any cache entries exist for this URL (regardless of logo detection setting)
-            boolean foundInCache = false;
-            int resultCount = 0;
+            List<ImageResult> cached = resultsCache.find(key -> key.startsWith(url + "_detectLogos_"));
             
-            for (String key : resultsCache.keySet()) {
-                if (key.startsWith(url + "_detectLogos_")) {
-                    foundInCache = true;
-                    resultCount = resultsCache.get(key).size();
-                    break;
-                }
-            }
-            
-            if (foundInCache) {
+            if (cached != null) {
                 status.put("status", "completed");
-                status.put("resultsCount", resultCount);
+                status.put("resultsCount", cached.size());
             } else {
                 status.put("status", "not_found");
             }
@@ -195,12 +326,282 @@ public class ImageFinder extends HttpServlet {
         resp.getWriter().print(GSON.toJson(status));
     }
 
+    /**
+     * Submit a crawl as a background job, or create a completed job from the cache
+     * 
+     * @return The submitted job
+     */
+    private CrawlJob submitJob(String url, String cacheKey, boolean refresh, int maxPages,
+            int threadCount, int crawlDelay, boolean detectLogos, FetchMode fetchMode, ExtractMode extractMode,
+            DedupeMode dedupeMode, double linkFilterRate, int priority, CrawlBudget budget, boolean checkpoint) {
+        CrawlJob job;
+        List<ImageResult> cached = refresh ? null : resultsCache.get(cacheKey);
+        if (cached != null) {
+            job = CrawlJob.completed(url, cacheKey, detectLogos, cached);
+            return jobManager.submit(job);
+        }
+        String flightKey = createFlightKey(url, maxPages, threadCount, crawlDelay, detectLogos, fetchMode,
+                extractMode, dedupeMode, linkFilterRate, priority, budget, checkpoint);
+        return jobManager.submitOrJoin(flightKey, () -> {
+            WebCrawler crawler = createCrawler(url, maxPages, threadCount, crawlDelay, detectLogos,
+                    fetchMode, extractMode, dedupeMode, linkFilterRate, priority, budget);
+            CrawlJob created = new CrawlJob(url, cacheKey, detectLogos, crawler);
+            if (checkpoint) {
+                Properties parameters = new Properties();
+                parameters.setProperty("url", url);
+                parameters.setProperty("maxPages", String.valueOf(maxPages));
+                parameters.setProperty("threadCount", String.valueOf(threadCount));
+                parameters.setProperty("crawlDelay", String.valueOf(crawlDelay));
+                parameters.setProperty("detectLogos", String.valueOf(detectLogos));
+                parameters.setProperty("fetchMode", fetchMode.name());
+                parameters.setProperty("extractMode", extractMode.name());
+                parameters.setProperty("dedupeMode", dedupeMode.name());
+                parameters.setProperty("linkFilterRate", String.valueOf(linkFilterRate));
+                parameters.setProperty("priority", String.valueOf(priority));
+                parameters.setProperty("maxDurationMs", String.valueOf(budget.getMaxDurationMs()));
+                parameters.setProperty("maxBytes", String.valueOf(budget.getMaxBytes()));
+                parameters.setProperty("maxRequests", String.valueOf(budget.getMaxRequests()));
+                parameters.setProperty("maxImages", String.valueOf(budget.getMaxImages()));
+                try {
+                    created.setCheckpoint(CrawlCheckpoint.create(created.getId(), parameters), false);
+                } catch (IOException e) {
+                    // The crawl itself does not depend on the checkpoint
+                    System.err.println("Could not create checkpoint for job " + created.getId() + ": " + e.getMessage());
+                }
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Create a crawler with the given options
+     * 
+     * @return The crawler, not started yet
+     */
+    private static WebCrawler createCrawler(String url, int maxPages, int threadCount, int crawlDelay,
+            boolean detectLogos, FetchMode fetchMode, ExtractMode extractMode, DedupeMode dedupeMode,
+            double linkFilterRate, int priority, CrawlBudget budget) {
+        WebCrawler crawler = new WebCrawler(url, maxPages, threadCount, crawlDelay, detectLogos);
+        crawler.setFetchMode(fetchMode);
+        crawler.setExtractMode(extractMode);
+        crawler.setDedupeMode(dedupeMode);
+        crawler.setLinkFilter(linkFilterRate);
+        crawler.setPriority(priority);
+        crawler.setBudget(budget);
+        return crawler;
+    }
+
+    /**
+     * Continue a checkpointed job that did not complete, e.g. because the server
+     * was restarted. The job keeps its ID and skips the pages it already crawled.
+     */
+    private synchronized void handleJobResumeRequest(String jobId, HttpServletResponse resp) throws IOException {
+        CrawlJob existing = jobManager.get(jobId);
+        if (existing != null && !existing.getStatus().isFinished()) {
+            // Already running, possibly resumed by an earlier request
+            resp.getWriter().print(GSON.toJson(describeJob(existing)));
+            return;
+        }
+        
+        CrawlCheckpoint checkpoint;
+        try {
+            checkpoint = CrawlCheckpoint.open(jobId);
+        } catch (IllegalArgumentException e) {
+            checkpoint = null;
+        }
+        if (checkpoint == null) {
+            sendJobNotFound(resp, jobId);
+            return;
+        }
+        
+        Properties parameters = checkpoint.readParameters();
+        String url = parameters.getProperty("url");
+        boolean detectLogos = Boolean.parseBoolean(parameters.getProperty("detectLogos"));
+        WebCrawler crawler;
+        try {
+            crawler = createCrawler(url,
+                    Integer.parseInt(parameters.getProperty("maxPages")),
+                    Integer.parseInt(parameters.getProperty("threadCount")),
+                    Integer.parseInt(parameters.getProperty("crawlDelay")),
+                    detectLogos,
+                    FetchMode.valueOf(parameters.getProperty("fetchMode")),
+                    ExtractMode.valueOf(parameters.getProperty("extractMode")),
+                    DedupeMode.valueOf(parameters.getProperty("dedupeMode")),
+                    Double.parseDouble(parameters.getProperty("linkFilterRate")),
+                    Integer.parseInt(parameters.getProperty("priority")),
+                    new CrawlBudget(
+                            Long.parseLong(parameters.getProperty("maxDurationMs", "0")),
+                            Long.parseLong(parameters.getProperty("maxBytes", "0")),
+                            Long.parseLong(parameters.getProperty("maxRequests", "0")),
+                            Integer.parseInt(parameters.getProperty("maxImages", "0"))));
+        } catch (RuntimeException e) {
+            checkpoint.close();
+            sendErrorResponse(resp, "Checkpoint of job " + jobId + " is unreadable");
+            return;
+        }
+        
+        CrawlJob job = new CrawlJob(jobId, url, createCacheKey(url, detectLogos), detectLogos, crawler);
+        job.setCheckpoint(checkpoint, true);
+        jobManager.submit(job);
+        resp.setStatus(job.getStatus() == CrawlJob.Status.REJECTED
+                ? HttpServletResponse.SC_SERVICE_UNAVAILABLE : HttpServletResponse.SC_ACCEPTED);
+        resp.getWriter().print(GSON.toJson(describeJob(job)));
+    }
+
+    private void handleJobStatusRequest(String jobId, HttpServletResponse resp) throws IOException {
+        CrawlJob job = jobManager.get(jobId);
+        if (job == null) {
+            sendJobNotFound(resp, jobId);
+            return;
+        }
+        resp.getWriter().print(GSON.toJson(describeJob(job)));
+    }
+
+    private void handleJobResultsRequest(String jobId, HttpServletResponse resp) throws IOException {
+        CrawlJob job = jobManager.get(jobId);
+        if (job == null) {
+            sendJobNotFound(resp, jobId);
+            return;
+        }
+        Map<String, Object> result = describeJob(job);
+        result.put("results", job.getResults());
+        resp.getWriter().print(GSON.toJson(result));
+    }
+
+    /**
+     * Stream a job's images as they are found, either as newline-delimited JSON
+     * (default) or as Server-Sent Events when format=sse. Images found before the
+     * request arrived are sent first. The response ends when the job finishes.
+     * A running job is streamed asynchronously, so the request does not hold a
+     * container thread for the length of the crawl.
+     */
+    private void handleJobStreamRequest(CrawlJob job, String jobId, HttpServletRequest req, HttpServletResponse resp)
+            throws IOException {
+        if (job == null) {
+            sendJobNotFound(resp, jobId);
+            return;
+        }
+        boolean sse = "sse".equals(req.getParameter("format"));
+        resp.setContentType(sse ? "text/event-stream" : "application/x-ndjson");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setHeader("X-Job-Id", job.getId());
+
+        PrintWriter writer = resp.getWriter();
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.setLenient(true); // Allow one top-level value per line
+        
+        if (job.getCrawler() == null) {
+            // Served from the cache, nothing left to wait for
+            for (ImageResult result : job.getResults()) {
+                writeStreamEvent(writer, jsonWriter, result, sse);
+            }
+            writeStreamEnd(writer, jsonWriter, job, sse);
+            writer.flush();
+            return;
+        }
+
+        AsyncContext context = req.startAsync();
+        context.setTimeout(getMaxWaitMs(job));
+        new ImageStream(job, context, writer, jsonWriter, sse).start(STREAM_HEARTBEAT_MS);
+    }
+
+    /**
+     * Get how long a client may wait for a job to finish
+     * 
+     * @param job The job
+     * @return The wait in milliseconds
+     */
+    private static long getMaxWaitMs(CrawlJob job) {
+        WebCrawler crawler = job.getCrawler();
+        return (crawler != null ? crawler.getTimeLimitMs() : 0) + JOB_WAIT_SLACK_MS;
+    }
+
+    /**
+     * Write a single image result as one NDJSON line or one SSE event
+     */
+    static void writeStreamEvent(PrintWriter writer, JsonWriter jsonWriter, ImageResult result, boolean sse)
+            throws IOException {
+        if (sse) {
+            writer.print("data: ");
+        }
+        GSON.toJson(result, ImageResult.class, jsonWriter);
+        writer.print(sse ? "\n\n" : "\n");
+    }
+
+    /**
+     * Write the end of a stream, which for SSE is a done event with the job status
+     */
+    static void writeStreamEnd(PrintWriter writer, JsonWriter jsonWriter, CrawlJob job, boolean sse)
+            throws IOException {
+        if (sse) {
+            writer.print("event: done\ndata: ");
+            GSON.toJson(describeJob(job), Map.class, jsonWriter);
+            writer.print("\n\n");
+        }
+    }
+
+    private void handleJobStopRequest(String jobId, HttpServletResponse resp) throws IOException {
+        CrawlJob job = jobManager.get(jobId);
+        if (job == null) {
+            sendJobNotFound(resp, jobId);
+            return;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("jobId", jobId);
+        result.put("status", job.stop() ? "stopped" : "not_running");
+        resp.getWriter().print(GSON.toJson(result));
+    }
+
+    /**
+     * Build the status document for a job
+     * 
+     * @param job The job
+     * @return Map of status fields
+     */
+    private static Map<String, Object> describeJob(CrawlJob job) {
+        Map<String, Object> status = new HashMap<>();
+        status.put("jobId", job.getId());
+        status.put("url", job.getUrl());
+        status.put("status", job.getStatus().name().toLowerCase());
+        WebCrawler crawler = job.getCrawler();
+        if (crawler != null) {
+            status.put("pagesCrawled", crawler.getPagesCrawled());
+            status.put("imagesFound", crawler.getImageCount());
+            status.put("requestCount", crawler.getRequestCount());
+            status.put("bytesDownloaded", crawler.getBytesDownloaded());
+            status.put("urlsSeen", crawler.getSeenUrlCount());
+            status.put("duplicateLinksSkipped", crawler.getDuplicateLinksSkipped());
+            status.put("pagesNotModified", crawler.getPagesNotModified());
+            status.put("concurrencyLimit", crawler.getConcurrencyLimit());
+            status.put("circuitState", crawler.getCircuitState());
+            status.put("pagesRequeued", crawler.getPagesRequeued());
+            status.put("sitemapUrlsQueued", crawler.getSitemapUrlsQueued());
+            status.put("pagesUnchanged", crawler.getPagesUnchanged());
+            status.put("seenCollisionProbability", crawler.getSeenCollisionProbability());
+            if (crawler.getStopReason() != null) {
+                status.put("stopReason", crawler.getStopReason().name().toLowerCase());
+            }
+        }
+        if (job.getError() != null) {
+            status.put("error", job.getError());
+        }
+        return status;
+    }
+
+    private void sendJobNotFound(HttpServletResponse resp, String jobId) throws IOException {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Unknown job: " + jobId);
+        error.put("status", "not_found");
+        resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        resp.getWriter().print(GSON.toJson(error));
+    }
+
     private void handleStopRequest(String url, HttpServletResponse resp) throws IOException {
         Map<String, Object> result = new HashMap<>();
-        WebCrawler crawler = activeCrawlers.get(url);
+        CrawlJob job = jobManager.findActive(url);
         
-        if (crawler != null && crawler.isRunning()) {
-            crawler.stop();
+        if (job != null && job.stop()) {
             result.put("status", "stopped");
         } else {
             result.put("status", "not_running");
@@ -213,25 +614,13 @@ public class ImageFinder extends HttpServlet {
         Map<String, Object> result = new HashMap<>();
         
         if ("all".equals(url)) {
-            resultsCache.clear();
+            resultsCache.invalidateAll();
             result.put("status", "success");
         } else {
             // Clear all cache entries for this URL (regardless of logo detection setting)
-            boolean removed = false;
-            List<String> keysToRemove = new ArrayList<>();
-            
-            for (String key : resultsCache.keySet()) {
-                if (key.startsWith(url + "_detectLogos_")) {
-                    keysToRemove.add(key);
-                    removed = true;
-                }
-            }
-            
-            for (String key : keysToRemove) {
-                resultsCache.remove(key);
-            }
+            int removed = resultsCache.invalidateIf(key -> key.startsWith(url + "_detectLogos_"));
             
-            if (removed) {
+            if (removed > 0) {
                 result.put("status", "success");
             } else {
                 result.put("status", "not_found");
@@ -241,6 +630,12 @@ public class ImageFinder extends HttpServlet {
         resp.getWriter().print(GSON.toJson(result));
     }
 
+    @Override
+    public void destroy() {
+        jobManager.shutdown();
+        super.destroy();
+    }
+
     private boolean isValidUrl(String url) {
         try {
             if (!url.startsWith("http://") && !url.startsWith("https://")) {
@@ -260,6 +655,54 @@ public class ImageFinder extends HttpServlet {
         resp.getWriter().print(GSON.toJson(error));
     }
 
+    /**
+     * Read the link filter settings: linkFilter=true turns it on, linkFilterFpp
+     * sets its false-positive rate
+     * 
+     * @return The false-positive rate, or 0 if the filter is off
+     */
+    private double parseLinkFilterRate(HttpServletRequest req) {
+        if (!Boolean.parseBoolean(req.getParameter("linkFilter"))) {
+            return 0;
+        }
+        String rate = req.getParameter("linkFilterFpp");
+        if (rate != null && !rate.isEmpty()) {
+            try {
+                double value = Double.parseDouble(rate);
+                if (value > 0 && value < 1) {
+                    return value;
+                }
+            } catch (NumberFormatException e) {
+                // Fall back to the default rate
+            }
+        }
+        return DEFAULT_LINK_FILTER_RATE;
+    }
+
+    /**
+     * Read the crawl budget from the maxSeconds, maxBytes, maxRequests and
+     * maxImages parameters. Missing parameters mean no limit.
+     * 
+     * @param req The request
+     * @return The budget, or null if a parameter is not a non-negative number
+     */
+    private CrawlBudget parseBudget(HttpServletRequest req) {
+        try {
+            return new CrawlBudget(
+                    TimeUnit.SECONDS.toMillis(parseLongParam(req, "maxSeconds")),
+                    parseLongParam(req, "maxBytes"),
+                    parseLongParam(req, "maxRequests"),
+                    Math.toIntExact(parseLongParam(req, "maxImages")));
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private long parseLongParam(HttpServletRequest req, String paramName) {
+        String paramValue = req.getParameter(paramName);
+        return paramValue != null && !paramValue.isEmpty() ? Long.parseLong(paramValue) : 0;
+    }
+
     private int parseIntParam(HttpServletRequest req, String paramName, int defaultValue) {
         String paramValue = req.getParameter(paramName);
         if (paramValue != null && !paramValue.isEmpty()) {
@@ -0,0 +1,223 @@
+package com.eulerity.hackathon.imagefinder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import com.eulerity.hackathon.imagefinder.crawler.CrawlListener;
+import com.eulerity.hackathon.imagefinder.crawler.ImageMetadata;
+import com.eulerity.hackathon.imagefinder.crawler.WebCrawler;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streams the images of a running job over an asynchronous response, so no
+ * container thread waits for the crawl. The crawler calls its listeners on
+ * crawl workers while holding the crawl's lock, so the callbacks only queue
+ * the images and a small shared pool of writer threads writes them out.
+ */
+class ImageStream implements CrawlListener {
+    private static final int WRITER_THREADS = Integer.getInteger("imagefinder.stream.writerThreads", 4);
+
+    private static final ScheduledExecutorService WRITERS;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        WRITERS = Executors.newScheduledThreadPool(WRITER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "image-stream-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final CrawlJob job;
+    private final WebCrawler crawler;
+    private final AsyncContext context;
+    private final PrintWriter writer;
+    private final JsonWriter jsonWriter;
+    private final boolean sse;
+    private final Queue<ImageMetadata> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private volatile boolean crawlFinished;
+
+    // Guarded by the stream's monitor
+    private boolean closed;
+    private ScheduledFuture<?> heartbeat;
+
+    /**
+     * Constructor for ImageStream
+     *
+     * @param job The job whose images are streamed
+     * @param context The started asynchronous context of the request
+     * @param writer The response writer
+     * @param jsonWriter Lenient JSON writer on top of the response writer
+     * @param sse true for Server-Sent Events, false for newline-delimited JSON
+     */
+    ImageStream(CrawlJob job, AsyncContext context, PrintWriter writer, JsonWriter jsonWriter, boolean sse) {
+        this.job = job;
+        this.crawler = job.getCrawler();
+        this.context = context;
+        this.writer = writer;
+        this.jsonWriter = jsonWriter;
+        this.sse = sse;
+    }
+
+    /**
+     * Start streaming. Images found before the call are sent first, and the
+     * response is completed once the crawl finishes.
+     *
+     * @param heartbeatMs How often an idle stream is flushed to detect clients that went away
+     */
+    void start(long heartbeatMs) {
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                release();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                finish();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                release();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        synchronized (this) {
+            heartbeat = WRITERS.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        }
+        crawler.addListener(this);
+    }
+
+    @Override
+    public void onImage(ImageMetadata metadata) {
+        pending.add(metadata);
+        scheduleDrain();
+    }
+
+    @Override
+    public void onComplete() {
+        crawlFinished = true;
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            WRITERS.execute(this::drain);
+        }
+    }
+
+    /**
+     * Write the queued images, and end the response once the crawl has finished
+     */
+    private synchronized void drain() {
+        drainScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        if (crawlFinished) {
+            finish();
+            return;
+        }
+        writePending();
+        writer.flush();
+        if (writer.checkError()) {
+            close(); // Client went away
+        }
+    }
+
+    /**
+     * Flush an idle stream, and end it if the job finished without its crawl
+     * ever running
+     */
+    private synchronized void heartbeat() {
+        if (closed) {
+            return;
+        }
+        if (job.getStatus().isFinished() && !crawler.isRunning()) {
+            finish(); // Stopped before the crawl started
+            return;
+        }
+        if (sse) {
+            writer.print(": keep-alive\n\n");
+        }
+        writer.flush();
+        if (writer.checkError()) {
+            close(); // Client went away
+        }
+    }
+
+    /**
+     * Write what is left and the closing event, then complete the response
+     */
+    private synchronized void finish() {
+        if (closed) {
+            return;
+        }
+        writePending();
+        try {
+            ImageFinder.writeStreamEnd(writer, jsonWriter, job, sse);
+        } catch (IOException e) {
+            // The client went away, there is nobody left to tell
+        }
+        writer.flush();
+        close();
+    }
+
+    private void writePending() {
+        boolean detectLogos = job.isDetectLogos();
+        ImageMetadata metadata;
+        try {
+            while ((metadata = pending.poll()) != null) {
+                ImageFinder.writeStreamEvent(writer, jsonWriter,
+                        ImageFinder.toResult(metadata.getUrl(), metadata, detectLogos), sse);
+            }
+        } catch (IOException e) {
+            pending.clear();
+        }
+    }
+
+    private synchronized void close() {
+        if (release()) {
+            try {
+                context.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+    }
+
+    /**
+     * Stop listening to the crawl
+     *
+     * @return true if the stream was still open
+     */
+    private synchronized boolean release() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+        crawler.removeListener(this);
+        pending.clear();
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+package com.eulerity.hackathon.imagefinder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Size-aware results cache with least-recently-used eviction and a time-to-live.
+ * Every entry has a weight (for crawl results, one plus the number of images) and
+ * the cache evicts the least recently used entries whenever the total weight
+ * goes over the limit. Entries older than the TTL are dropped when accessed, and
+ * all expired entries are dropped before any live entry is evicted.
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class LruResultsCache<K, V> implements ResultsCache<K, V> {
+    private final long maxWeight;
+    private final long ttlMs;
+    private final ToIntFunction<V> weigher;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalWeight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Constructor for LruResultsCache
+     * 
+     * @param maxWeight Maximum total weight of all entries
+     * @param ttlMs Time-to-live of an entry in milliseconds
+     * @param weigher Function computing the weight of a value
+     */
+    public LruResultsCache(long maxWeight, long ttlMs, ToIntFunction<V> weigher) {
+        this(maxWeight, ttlMs, weigher, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor for a cache with its own clock, e.g. for tests
+     * 
+     * @param maxWeight Maximum total weight of all entries
+     * @param ttlMs Time-to-live of an entry in milliseconds
+     * @param weigher Function computing the weight of a value
+     * @param clock Source of the current time in milliseconds
+     */
+    LruResultsCache(long maxWeight, long ttlMs, ToIntFunction<V> weigher, LongSupplier clock) {
+        this.maxWeight = maxWeight;
+        this.ttlMs = ttlMs;
+        this.weigher = weigher;
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (isExpired(entry, clock.getAsLong())) {
+            remove(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        remove(key);
+        
+        int weight = weigher.applyAsInt(value);
+        if (weight > maxWeight) {
+            // Would evict everything else and still not fit
+            evictions.incrementAndGet();
+            return;
+        }
+        
+        long now = clock.getAsLong();
+        entries.put(key, new Entry<>(value, weight, now + ttlMs));
+        totalWeight += weight;
+        if (totalWeight <= maxWeight) {
+            return;
+        }
+        
+        // Expired entries can sit anywhere in access order, and must not push out live ones
+        purgeExpired(now);
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (totalWeight > maxWeight && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            totalWeight -= eldest.getValue().weight;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove every expired entry and release its weight
+     * 
+     * @param now The current time in milliseconds
+     */
+    private void purgeExpired(long now) {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+            if (isExpired(entry, now)) {
+                totalWeight -= entry.weight;
+                iterator.remove();
+                expirations.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public synchronized int invalidateIf(Predicate<K> predicate) {
+        int removed = 0;
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (predicate.test(entry.getKey())) {
+                totalWeight -= entry.getValue().weight;
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized void invalidateAll() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    @Override
+    public synchronized V find(Predicate<K> predicate) {
+        long now = clock.getAsLong();
+        // Iterating does not change the access order
+        for (Map.Entry<K, Entry<V>> entry : entries.entrySet()) {
+            if (!isExpired(entry.getValue(), now) && predicate.test(entry.getKey())) {
+                return entry.getValue().value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        stats.put("entries", (long) entries.size());
+        stats.put("weight", totalWeight);
+        stats.put("maxWeight", maxWeight);
+        return stats;
+    }
+
+    /**
+     * Remove an entry and release its weight
+     * 
+     * @param key The key to remove
+     */
+    private void remove(K key) {
+        Entry<V> previous = entries.remove(key);
+        if (previous != null) {
+            totalWeight -= previous.weight;
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return now >= entry.expiresAt;
+    }
+
+    /**
+     * A cached value with its weight and expiry time
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final int weight;
+        private final long expiresAt;
+
+        Entry(V value, int weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
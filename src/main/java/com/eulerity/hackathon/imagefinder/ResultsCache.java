@@ -0,0 +1,57 @@
+package com.eulerity.hackathon.imagefinder;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Cache for crawl results, keyed by the composite cache key built by the servlet.
+ * 
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public interface ResultsCache<K, V> {
+
+    /**
+     * Get a cached value
+     * 
+     * @param key The key
+     * @return The value, or null if absent or expired
+     */
+    V get(K key);
+
+    /**
+     * Store a value, evicting other entries if the cache is over its limit
+     * 
+     * @param key The key
+     * @param value The value
+     */
+    void put(K key, V value);
+
+    /**
+     * Remove all entries whose key matches a predicate
+     * 
+     * @param predicate The predicate to test keys against
+     * @return The number of entries removed
+     */
+    int invalidateIf(Predicate<K> predicate);
+
+    /**
+     * Remove all entries
+     */
+    void invalidateAll();
+
+    /**
+     * Find the first live entry whose key matches a predicate
+     * 
+     * @param predicate The predicate to test keys against
+     * @return The value, or null if none matches
+     */
+    V find(Predicate<K> predicate);
+
+    /**
+     * Get hit, miss and eviction counters along with the current size
+     * 
+     * @return Map of statistic names to values
+     */
+    Map<String, Long> stats();
+}
@@ -0,0 +1,154 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.Arrays;
+
+/**
+ * Additive-increase, multiplicative-decrease limit on the number of concurrent
+ * fetches to one host. The limit starts low and doubles after each round of
+ * successful fetches until the host first pushes back, then grows by one per
+ * round while latency stays flat. It is halved when the host answers 429, 502,
+ * 503 or 504, sends Retry-After, times out, or when the 95th percentile latency
+ * rises well above the best one seen.
+ *
+ * A round is as many completed fetches as the current limit, so the limit moves
+ * about once per round trip. Congestion signals from requests sent before the
+ * last decrease are ignored, so one burst of errors only cuts the limit once.
+ *
+ * Not thread-safe: {@link PolitenessScheduler} calls it under its own lock.
+ */
+class AdaptiveConcurrencyLimit {
+    static final int INITIAL_LIMIT = 2;
+    private static final int LATENCY_WINDOW = 32;
+    private static final int MIN_LATENCY_SAMPLES = 8;
+    // p95 latency above baseline * tolerance + slack counts as a slowdown
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final long LATENCY_SLACK_MS = 50;
+    private static final double DECREASE_FACTOR = 0.5;
+
+    private final int maxLimit;
+    private double limit;
+    private boolean slowStart = true;
+    private int inFlight;
+    private int completedThisRound;
+    private long lastDecreaseAt;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount;
+    private int nextLatency;
+    private long baselineP95 = -1;
+
+    /**
+     * Constructor for AdaptiveConcurrencyLimit
+     *
+     * @param maxLimit The highest the limit may grow
+     */
+    AdaptiveConcurrencyLimit(int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.min(this.maxLimit, INITIAL_LIMIT);
+    }
+
+    /**
+     * Take a fetch slot if the host is below its limit
+     *
+     * @return true if the fetch may start
+     */
+    boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Give back a fetch slot
+     */
+    void release() {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+    }
+
+    /**
+     * @return The current number of concurrent fetches allowed
+     */
+    int getLimit() {
+        return Math.max(1, (int) limit);
+    }
+
+    /**
+     * @return The number of fetches holding a slot
+     */
+    int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return The best 95th percentile latency seen in milliseconds, or -1
+     *         before enough responses were recorded
+     */
+    long getBaselineP95() {
+        return baselineP95;
+    }
+
+    /**
+     * Record a response that was not a sign of overload
+     *
+     * @param startedAt When the request was sent, in milliseconds
+     * @param latencyMs How long the response took
+     */
+    void onSuccess(long startedAt, long latencyMs) {
+        latencies[nextLatency] = latencyMs;
+        nextLatency = (nextLatency + 1) % LATENCY_WINDOW;
+        latencyCount = Math.min(LATENCY_WINDOW, latencyCount + 1);
+        if (++completedThisRound < getLimit()) {
+            return;
+        }
+        completedThisRound = 0;
+
+        if (latencyCount >= MIN_LATENCY_SAMPLES) {
+            long p95 = latencyP95();
+            if (baselineP95 >= 0 && p95 > baselineP95 * LATENCY_TOLERANCE + LATENCY_SLACK_MS) {
+                if (getLimit() > 1) {
+                    onOverload(startedAt, startedAt + latencyMs);
+                    return;
+                }
+                // Nothing left to cut, this is how fast the host is now
+                baselineP95 = p95;
+            } else {
+                baselineP95 = baselineP95 < 0 ? p95 : Math.min(baselineP95, p95);
+            }
+        }
+
+        limit = Math.min(maxLimit, slowStart ? limit * 2 : limit + 1);
+    }
+
+    /**
+     * Record a sign that the host is overloaded and cut the limit, unless the
+     * request was sent before the last cut. A request sent in the same
+     * millisecond as the cut counts as sent before it.
+     *
+     * @param startedAt When the request was sent, in milliseconds
+     * @param now The current time in milliseconds
+     */
+    void onOverload(long startedAt, long now) {
+        if (startedAt <= lastDecreaseAt) {
+            return;
+        }
+        limit = Math.max(1, limit * DECREASE_FACTOR);
+        slowStart = false;
+        lastDecreaseAt = now;
+        completedThisRound = 0;
+        // Latencies from before the cut say nothing about the new limit
+        latencyCount = 0;
+        nextLatency = 0;
+    }
+
+    /**
+     * @return The 95th percentile of the recent latencies
+     */
+    private long latencyP95() {
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        return sorted[Math.min(latencyCount - 1, (int) Math.ceil(latencyCount * 0.95) - 1)];
+    }
+}
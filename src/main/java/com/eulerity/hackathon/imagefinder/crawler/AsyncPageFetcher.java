@@ -0,0 +1,271 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jsoup.HttpStatusException;
+
+/**
+ * Non-blocking page fetcher built on the JDK HTTP client. Retries, redirects and
+ * redirect loop detection follow the same rules as the Jsoup path in
+ * {@link WebCrawler}, but every step is chained on futures so no thread waits
+ * for the network. All crawls share one client and its small thread pool.
+ */
+class AsyncPageFetcher {
+    private static final ExecutorService CLIENT_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+                Thread thread = new Thread(runnable, "async-fetcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NEVER) // Handle redirects manually
+            .connectTimeout(Duration.ofMillis(WebCrawler.CONNECTION_TIMEOUT_MS))
+            .executor(CLIENT_EXECUTOR)
+            .build();
+
+    private final AtomicLong requestCount;
+    private final AtomicLong bytesDownloaded;
+    private final CrawlBudget budget;
+    private final ValidatorStore validators;
+    private final PolitenessScheduler scheduler;
+
+    /**
+     * Constructor for AsyncPageFetcher
+     * 
+     * @param requestCount Counter incremented for every request sent
+     * @param bytesDownloaded Counter incremented with every body received
+     * @param budget Request and byte budget checked before every request
+     * @param validators Validators to send with conditional requests
+     * @param scheduler Frontier whose host concurrency limits are fed every response
+     */
+    AsyncPageFetcher(AtomicLong requestCount, AtomicLong bytesDownloaded, CrawlBudget budget,
+            ValidatorStore validators, PolitenessScheduler scheduler) {
+        this.requestCount = requestCount;
+        this.bytesDownloaded = bytesDownloaded;
+        this.budget = budget;
+        this.validators = validators;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Fetch a page, following redirects and retrying as needed
+     * 
+     * @param url The URL to fetch
+     * @return A future with the final page, or null if the redirect limit was reached
+     */
+    CompletableFuture<FetchedPage> fetch(String url) {
+        Set<String> redirectsVisited = new HashSet<>();
+        redirectsVisited.add(WebCrawler.normalizeUrl(url));
+        return fetchHop(url, 0, 0, redirectsVisited);
+    }
+
+    /**
+     * Fetch one hop of a redirect chain
+     */
+    private CompletableFuture<FetchedPage> fetchHop(String url, int attempt, int redirectCount,
+            Set<String> redirectsVisited) {
+        return execute(url, WebCrawler.CONNECTION_TIMEOUT_MS * (attempt + 1))
+            .handle((page, error) -> {
+                if (error != null) {
+                    IOException e = unwrap(error);
+                    int attempts = attempt + 1;
+                    System.err.println("Request failed (attempt " + attempts + "/" + WebCrawler.MAX_RETRIES + "): " + e.getMessage());
+                    // Client errors will not change on retry, a host whose circuit is open
+                    // is down, and a crawl out of budget is over
+                    if (attempts >= WebCrawler.MAX_RETRIES || WebCrawler.isClientError(e)
+                            || e instanceof CircuitOpenException || e instanceof BudgetExhaustedException) {
+                        return CompletableFuture.<FetchedPage>failedFuture(e);
+                    }
+                    long retryAfterMs = e instanceof RetryAfterException ? ((RetryAfterException) e).getRetryAfterMs() : 0;
+                    return later(Math.max(WebCrawler.retryBackoffMs(attempts), retryAfterMs))
+                        .thenCompose(ignored -> fetchHop(url, attempts, redirectCount, redirectsVisited));
+                }
+                return followRedirect(url, page, redirectCount, redirectsVisited);
+            })
+            .thenCompose(future -> future);
+    }
+
+    /**
+     * Decide whether a response is final or a redirect to follow
+     */
+    private CompletionStage<FetchedPage> followRedirect(String url, FetchedPage page, int redirectCount,
+            Set<String> redirectsVisited) {
+        int statusCode = page.getStatusCode();
+        if (!(statusCode >= 300 && statusCode < 400) || page.isNotModified() || page.getLocation() == null) {
+            return CompletableFuture.completedFuture(page);
+        }
+        
+        int redirects = redirectCount + 1;
+        if (redirects > WebCrawler.MAX_REDIRECTS) {
+            System.err.println("Maximum redirects reached for URL: " + url);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        String redirectUrl;
+        try {
+            redirectUrl = new URL(new URL(url), page.getLocation()).toString();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        
+        if (!redirectsVisited.add(WebCrawler.normalizeUrl(redirectUrl))) {
+            System.out.println("Potential redirect loop detected. Stopping at: " + redirectUrl);
+            return CompletableFuture.completedFuture(page);
+        }
+        
+        return later(Math.min(200 * redirects, 2000))
+            .thenCompose(ignored -> fetchHop(redirectUrl, 0, redirects, redirectsVisited));
+    }
+
+    /**
+     * Send a single request and record it in the crawl statistics
+     */
+    private CompletableFuture<FetchedPage> execute(String url, int timeoutMs) {
+        if (!scheduler.allowRequest(url)) {
+            return CompletableFuture.failedFuture(new CircuitOpenException(url));
+        }
+        // Revalidate pages downloaded before instead of downloading them again
+        ValidatorStore.Entry cached = validators.get(WebCrawler.canonicalizeUrl(url));
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(timeoutMs))
+                    .header("User-Agent", WebCrawler.USER_AGENT)
+                    .GET();
+            if (cached != null) {
+                if (cached.getEtag() != null) {
+                    builder.header("If-None-Match", cached.getEtag());
+                }
+                if (cached.getLastModified() != null) {
+                    builder.header("If-Modified-Since", cached.getLastModified());
+                }
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IOException("Invalid URL: " + url, e));
+        }
+        
+        try {
+            budget.reserveRequest(requestCount, bytesDownloaded);
+        } catch (BudgetExhaustedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        int maxBodySize = budget.capBodySize(WebCrawler.MAX_BODY_SIZE, bytesDownloaded.get());
+        long startedAt = System.currentTimeMillis();
+        return CLIENT.sendAsync(request, responseInfo -> new LimitedBodySubscriber(maxBodySize))
+            .whenComplete((response, error) -> {
+                if (error == null) {
+                    return;
+                }
+                if (unwrap(error) instanceof HttpTimeoutException) {
+                    scheduler.recordTimeout(url, startedAt);
+                } else {
+                    scheduler.recordFailure(url);
+                }
+            })
+            .thenCompose(response -> {
+                bytesDownloaded.addAndGet(response.body().length);
+                int statusCode = response.statusCode();
+                long retryAfterMs = WebCrawler.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null));
+                scheduler.recordResponse(url, startedAt, statusCode, retryAfterMs);
+                if (statusCode < 200 || statusCode >= 400) {
+                    return CompletableFuture.failedFuture(retryAfterMs > 0
+                            ? new RetryAfterException(statusCode, url, retryAfterMs)
+                            : new HttpStatusException("HTTP error fetching URL", statusCode, url));
+                }
+                return CompletableFuture.completedFuture(new FetchedPage(
+                        response.uri().toString(),
+                        statusCode,
+                        response.headers().firstValue("Content-Type").orElse(null),
+                        response.headers().firstValue("Location").orElse(null),
+                        response.body(),
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null),
+                        cached));
+            });
+    }
+
+    /**
+     * A future that completes after a delay without holding a thread
+     */
+    private static CompletableFuture<Void> later(long delayMs) {
+        return CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, CLIENT_EXECUTOR));
+    }
+
+    private static IOException unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+    }
+
+    /**
+     * Collects a response body up to a size limit and truncates the rest,
+     * the same way Jsoup's maxBodySize does
+     */
+    private static class LimitedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final int maxBytes;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        LimitedBodySubscriber(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            for (ByteBuffer item : items) {
+                int length = Math.min(item.remaining(), maxBytes - buffer.size());
+                byte[] bytes = new byte[length];
+                item.get(bytes);
+                buffer.write(bytes, 0, length);
+            }
+            if (buffer.size() >= maxBytes) {
+                subscription.cancel();
+                result.complete(buffer.toByteArray());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(buffer.toByteArray());
+        }
+    }
+}
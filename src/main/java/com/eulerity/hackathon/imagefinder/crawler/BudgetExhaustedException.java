@@ -0,0 +1,29 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.IOException;
+
+/**
+ * A request that was not sent because the crawl has used up its budget
+ */
+class BudgetExhaustedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final StopReason reason;
+
+    /**
+     * Constructor for BudgetExhaustedException
+     *
+     * @param reason The budget that ran out
+     */
+    BudgetExhaustedException(StopReason reason) {
+        super("Crawl budget exhausted: " + reason);
+        this.reason = reason;
+    }
+
+    /**
+     * @return The budget that ran out
+     */
+    StopReason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,441 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * A canonicalized http(s) URL together with the parts the crawler needs, so a
+ * discovered link is parsed once instead of once per check.
+ *
+ * Ordinary URLs are handled by a single pass over the characters. Anything
+ * unusual (user info, IPv6 hosts, dot segments, whitespace, uppercase schemes,
+ * missing schemes) goes through the original java.net.URL based code, so both
+ * paths always agree on the canonical form.
+ */
+public final class CanonicalUrl {
+    // Tracking and session parameters that do not change the page
+    private static final String[] IGNORED_QUERY_PARAMS = {
+        "utm_source", "utm_medium", "utm_campaign", "utm_term", "utm_content",
+        "fbclid", "gclid", "msclkid", "ref", "source", "session", "timestamp"};
+
+    // Default documents that are equivalent to their directory
+    private static final String[] DEFAULT_PAGES = {
+        "/index.html", "/index.php", "/index.asp", "/index.jsp",
+        "/default.html", "/default.php", "/default.asp", "/default.jsp",
+        "/home.html", "/home.php", "/home.asp", "/home.jsp"};
+
+    private final String url;
+    private final String scheme;
+    private final String host;
+    private final int port;
+    private final int pathStart;
+    private final int queryStart;
+    private final int depth;
+
+    private CanonicalUrl(String url, String scheme, String host, int port, int pathStart, int queryStart, int depth) {
+        this.url = url;
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+        this.pathStart = pathStart;
+        this.queryStart = queryStart;
+        this.depth = depth;
+    }
+
+    /**
+     * Parse and canonicalize an absolute URL
+     *
+     * @param url The URL to parse
+     * @return The canonical URL, or null if it is not a valid http or https URL
+     */
+    public static CanonicalUrl parse(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        CanonicalUrl parsed = parseSimple(url);
+        return parsed != null ? parsed : parseWithUrlClass(url);
+    }
+
+    /**
+     * Canonicalize URL to ensure consistent representation. Unlike {@link #parse},
+     * a missing scheme defaults to https and unparseable input is normalized
+     * as well as possible.
+     *
+     * @param url The URL to canonicalize
+     * @return Canonicalized URL
+     */
+    public static String canonicalize(String url) {
+        if (url == null || url.isEmpty()) {
+            return "";
+        }
+        CanonicalUrl parsed = parseSimple(url);
+        return parsed != null ? parsed.url : canonicalizeWithUrlClass(url);
+    }
+
+    /**
+     * Single-pass parse for ordinary URLs
+     *
+     * @param url The URL to parse
+     * @return The canonical URL, or null if the input needs the general parser
+     */
+    private static CanonicalUrl parseSimple(String url) {
+        String scheme;
+        int authorityStart;
+        if (url.startsWith("https://")) {
+            scheme = "https";
+            authorityStart = 8;
+        } else if (url.startsWith("http://")) {
+            scheme = "http";
+            authorityStart = 7;
+        } else {
+            return null;
+        }
+
+        int length = url.length();
+        int limit = url.indexOf('#', authorityStart);
+        if (limit < 0) {
+            limit = length;
+        }
+
+        // Authority: host and optional port, limited to plain host names
+        int colon = -1;
+        int authorityEnd = authorityStart;
+        for (; authorityEnd < limit; authorityEnd++) {
+            char c = url.charAt(authorityEnd);
+            if (c == '/' || c == '?') {
+                break;
+            }
+            if (c == ':') {
+                if (colon >= 0) {
+                    return null;
+                }
+                colon = authorityEnd;
+            } else if (!isHostChar(c)) {
+                return null;
+            }
+        }
+        int hostEnd = colon >= 0 ? colon : authorityEnd;
+        if (hostEnd == authorityStart) {
+            return null;
+        }
+
+        int port = -1;
+        if (colon >= 0 && colon + 1 < authorityEnd) {
+            if (authorityEnd - colon - 1 > 5) {
+                return null;
+            }
+            port = 0;
+            for (int i = colon + 1; i < authorityEnd; i++) {
+                char c = url.charAt(i);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                port = port * 10 + (c - '0');
+            }
+        }
+
+        // Path up to the query or fragment
+        int query = url.indexOf('?', authorityEnd);
+        if (query >= limit) {
+            query = -1;
+        }
+        int pathEnd = query >= 0 ? query : limit;
+        int depth = 0;
+        for (int i = authorityEnd; i < pathEnd; i++) {
+            char c = url.charAt(i);
+            if (c <= ' ') {
+                return null;
+            }
+            if (c == '/') {
+                depth++;
+                // java.net.URL rewrites some dot segments, leave those to it
+                if (i + 1 < pathEnd && url.charAt(i + 1) == '.') {
+                    return null;
+                }
+            }
+        }
+        if (pathEnd - authorityEnd == 1) {
+            depth = 0; // Just "/"
+        }
+        for (int i = pathEnd; i < length; i++) {
+            if (url.charAt(i) <= ' ') {
+                return null;
+            }
+        }
+
+        // Canonical path: directory for default pages, no trailing slash
+        int canonicalPathEnd = pathEnd;
+        if (pathEnd > authorityEnd) {
+            for (String page : DEFAULT_PAGES) {
+                if (url.startsWith(page, pathEnd - page.length()) && pathEnd - page.length() >= authorityEnd) {
+                    canonicalPathEnd = pathEnd - page.length() + 1;
+                    break;
+                }
+            }
+            if (canonicalPathEnd - authorityEnd > 1 && url.charAt(canonicalPathEnd - 1) == '/') {
+                canonicalPathEnd--;
+            }
+        }
+
+        // Build the canonical URL
+        StringBuilder result = new StringBuilder(length + 1);
+        result.append(scheme).append("://");
+        int canonicalHostStart = result.length();
+        if (url.startsWith("www.", authorityStart)) {
+            result.append(url, authorityStart + 4, hostEnd);
+        } else {
+            result.append(url, authorityStart, hostEnd);
+        }
+        String host = result.substring(canonicalHostStart);
+
+        int canonicalPort = port != 80 && port != 443 ? port : -1;
+        if (canonicalPort != -1) {
+            result.append(':').append(canonicalPort);
+        }
+
+        int canonicalPathStart = result.length();
+        if (canonicalPathEnd == authorityEnd) {
+            result.append('/');
+        } else {
+            result.append(url, authorityEnd, canonicalPathEnd);
+        }
+
+        int canonicalQueryStart = -1;
+        if (query >= 0) {
+            canonicalQueryStart = result.length();
+            appendCleanQuery(result, url, query + 1, limit);
+            if (result.length() == canonicalQueryStart) {
+                canonicalQueryStart = -1;
+            }
+        }
+
+        return new CanonicalUrl(result.toString(), scheme, host, canonicalPort,
+                canonicalPathStart, canonicalQueryStart, depth);
+    }
+
+    /**
+     * Append the query without tracking parameters or empty pairs, preceded by
+     * '?' if anything is left
+     */
+    private static void appendCleanQuery(StringBuilder result, String url, int start, int end) {
+        boolean first = true;
+        int pairStart = start;
+        while (pairStart <= end) {
+            int pairEnd = url.indexOf('&', pairStart);
+            if (pairEnd < 0 || pairEnd > end) {
+                pairEnd = end;
+            }
+            if (pairEnd > pairStart) {
+                int nameEnd = url.indexOf('=', pairStart);
+                if (nameEnd < 0 || nameEnd > pairEnd) {
+                    nameEnd = pairEnd;
+                }
+                if (!isIgnoredParameter(url, pairStart, nameEnd)) {
+                    result.append(first ? '?' : '&').append(url, pairStart, pairEnd);
+                    first = false;
+                }
+            }
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    private static boolean isIgnoredParameter(String url, int start, int end) {
+        int length = end - start;
+        for (String ignored : IGNORED_QUERY_PARAMS) {
+            if (ignored.length() == length && url.regionMatches(true, start, ignored, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isHostChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '_';
+    }
+
+    /**
+     * General parse through java.net.URL for inputs the single pass does not handle
+     *
+     * @param url The URL to parse
+     * @return The canonical URL, or null if it is not a valid http or https URL
+     */
+    private static CanonicalUrl parseWithUrlClass(String url) {
+        int depth;
+        try {
+            URL original = new URL(url);
+            String protocol = original.getProtocol().toLowerCase();
+            if (!protocol.equals("http") && !protocol.equals("https")) {
+                return null;
+            }
+            depth = getDepth(original.getPath());
+        } catch (MalformedURLException e) {
+            return null;
+        }
+
+        String canonical = canonicalizeWithUrlClass(url);
+        try {
+            URL canonicalUrl = new URL(canonical);
+            int pathStart = canonical.indexOf('/', canonical.indexOf("://") + 3);
+            if (pathStart < 0) {
+                pathStart = canonical.length();
+            }
+            int queryStart = canonical.indexOf('?', pathStart);
+            return new CanonicalUrl(canonical, canonicalUrl.getProtocol(), canonicalUrl.getHost(),
+                    canonicalUrl.getPort(), pathStart, queryStart, depth);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the depth of a path (number of path segments)
+     */
+    private static int getDepth(String path) {
+        if (path == null || path.isEmpty() || path.equals("/")) {
+            return 0;
+        }
+
+        // Count slashes in the path
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Canonicalize through java.net.URL
+     *
+     * @param url The URL to canonicalize
+     * @return Canonicalized URL
+     */
+    private static String canonicalizeWithUrlClass(String url) {
+        try {
+            // Ensure URL has protocol
+            if (!url.startsWith("http://") && !url.startsWith("https://")) {
+                url = "https://" + url;
+            }
+
+            // Parse URL
+            URL urlObj = new URL(url);
+            String protocol = urlObj.getProtocol();
+            String host = normalizeHost(urlObj.getHost());
+            int port = urlObj.getPort();
+            String path = urlObj.getPath();
+            String query = urlObj.getQuery();
+
+            // Normalize path: ensure it starts with / and handle default pages
+            if (path == null || path.isEmpty()) {
+                path = "/";
+            } else {
+                for (String page : DEFAULT_PAGES) {
+                    if (path.endsWith(page)) {
+                        // Replace with directory root
+                        path = path.substring(0, path.lastIndexOf('/') + 1);
+                        break;
+                    }
+                }
+            }
+
+            // Remove trailing slash from path except for root
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+
+            // Build canonicalized URL
+            StringBuilder result = new StringBuilder();
+            result.append(protocol).append("://").append(host);
+
+            if (port != -1 && port != 80 && port != 443) {
+                result.append(":").append(port);
+            }
+
+            result.append(path);
+
+            // Clean query parameters
+            if (query != null && !query.isEmpty()) {
+                appendCleanQuery(result, query, 0, query.length());
+            }
+
+            return result.toString();
+
+        } catch (MalformedURLException e) {
+            // If parsing fails, return normalized version
+            return WebCrawler.normalizeUrl(url);
+        }
+    }
+
+    /**
+     * Normalize hostname (e.g., remove www prefix)
+     *
+     * @param host The hostname to normalize
+     * @return Normalized hostname
+     */
+    static String normalizeHost(String host) {
+        if (host.startsWith("www.")) {
+            return host.substring(4);
+        }
+        return host;
+    }
+
+    /**
+     * @return The scheme, "http" or "https"
+     */
+    public String getScheme() {
+        return scheme;
+    }
+
+    /**
+     * @return The host without a leading "www."
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return The port if it is not the default one, otherwise -1
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return The canonical path, never empty
+     */
+    public String getPath() {
+        return url.substring(pathStart, queryStart >= 0 ? queryStart : url.length());
+    }
+
+    /**
+     * @return The cleaned query without '?', or null if there is none
+     */
+    public String getQuery() {
+        return queryStart >= 0 ? url.substring(queryStart + 1) : null;
+    }
+
+    /**
+     * @return The path and query, as matched by robots.txt rules
+     */
+    public String getPathAndQuery() {
+        return url.substring(pathStart);
+    }
+
+    /**
+     * @return Number of path segments of the URL as it was found, before
+     *         canonicalization
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return The canonical URL
+     */
+    @Override
+    public String toString() {
+        return url;
+    }
+}
@@ -0,0 +1,166 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * Circuit breaker for one host. After FAILURE_THRESHOLD consecutive timeouts,
+ * connection errors or 5xx responses the circuit opens: no page of the host is
+ * handed out and requests already in progress fail fast, so workers are not tied
+ * up waiting on a dying site. Once the open period is over, one page is let
+ * through as a trial. A response below 500 to the trial closes the circuit
+ * again, a failure of the trial reopens it for twice as long, up to MAX_OPEN_MS.
+ * Responses to requests sent before the circuit opened are ignored until then.
+ * A host whose circuit has opened MAX_TRIPS times without a response in between
+ * is given up on.
+ *
+ * Not thread-safe: {@link PolitenessScheduler} calls it under its own lock.
+ */
+class CircuitBreaker {
+    private static final int FAILURE_THRESHOLD = Integer.getInteger("imagefinder.breaker.failureThreshold", 5);
+    private static final long BASE_OPEN_MS = Long.getLong("imagefinder.breaker.openMs", 30000);
+    private static final long MAX_OPEN_MS = 5 * 60 * 1000;
+    private static final int MAX_TRIPS = Integer.getInteger("imagefinder.breaker.maxTrips", 3);
+
+    /**
+     * The states of a circuit breaker
+     */
+    enum State {
+        /** Requests flow normally */
+        CLOSED,
+        /** Requests fail fast until the open period is over */
+        OPEN,
+        /** One trial page decides whether to close or reopen */
+        HALF_OPEN
+    }
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int trips;
+    private long openDurationMs = BASE_OPEN_MS;
+    private long openUntil;
+    private String trialUrl;
+
+    /**
+     * Check whether a page of the host may be handed out now
+     *
+     * @param now The current time in milliseconds
+     * @return true if the circuit is closed, or a trial may start
+     */
+    boolean canDispatch(long now) {
+        switch (state) {
+            case OPEN:
+                return now >= openUntil;
+            case HALF_OPEN:
+                return trialUrl == null;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Record that a page was handed out. The first page after the open period
+     * becomes the trial.
+     *
+     * @param url The URL handed out
+     */
+    void onDispatch(String url) {
+        if (state != State.CLOSED && trialUrl == null) {
+            state = State.HALF_OPEN;
+            trialUrl = url;
+        }
+    }
+
+    /**
+     * Check whether a request may be sent now
+     *
+     * @return false while the circuit is open
+     */
+    boolean allowRequest() {
+        return state != State.OPEN;
+    }
+
+    /**
+     * Record that the fetch of a page is over, successful or not
+     *
+     * @param url The URL that was handed out
+     */
+    void release(String url) {
+        if (url.equals(trialUrl)) {
+            trialUrl = null;
+        }
+    }
+
+    /**
+     * Record a response that shows the host is up. While the circuit is not
+     * closed, only the trial's response counts.
+     *
+     * @param url The URL that was requested
+     */
+    void onSuccess(String url) {
+        if (state != State.CLOSED && !url.equals(trialUrl)) {
+            return;
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trips = 0;
+        openDurationMs = BASE_OPEN_MS;
+        trialUrl = null;
+    }
+
+    /**
+     * Record a timeout, connection error or 5xx response
+     *
+     * @param url The URL that was requested
+     * @param now The current time in milliseconds
+     * @return true if this failure opened the circuit
+     */
+    boolean onFailure(String url, long now) {
+        switch (state) {
+            case HALF_OPEN:
+                if (!url.equals(trialUrl)) {
+                    // A request sent before the circuit opened
+                    return false;
+                }
+                // The trial failed, stay away for longer this time
+                openDurationMs = Math.min(MAX_OPEN_MS, openDurationMs * 2);
+                open(now);
+                return true;
+            case CLOSED:
+                if (++consecutiveFailures >= FAILURE_THRESHOLD) {
+                    open(now);
+                    return true;
+                }
+                return false;
+            default:
+                // Requests sent before the circuit opened
+                return false;
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openUntil = now + openDurationMs;
+        trialUrl = null;
+        trips++;
+    }
+
+    /**
+     * @return true if the circuit has opened MAX_TRIPS times in a row and the
+     *         host should be given up on
+     */
+    boolean isExhausted() {
+        return trips >= MAX_TRIPS;
+    }
+
+    /**
+     * @return The current state
+     */
+    State getState() {
+        return state;
+    }
+
+    /**
+     * @return When the open period ends, in milliseconds
+     */
+    long getOpenUntil() {
+        return openUntil;
+    }
+}
@@ -0,0 +1,19 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.IOException;
+
+/**
+ * A request that was not sent because the circuit of its host is open
+ */
+class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor for CircuitOpenException
+     *
+     * @param url The URL that would have been requested
+     */
+    CircuitOpenException(String url) {
+        super("Circuit open for host of " + url);
+    }
+}
@@ -0,0 +1,154 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on how much a crawl may spend: elapsed time, bytes downloaded, requests
+ * sent (including retries and redirects) and images found. A limit of 0 means
+ * no limit. The checks only read counters the crawler keeps anyway, so they are
+ * cheap enough to run before every page and every request.
+ *
+ * The byte budget is checked before a request is sent, and the body of the
+ * response is capped at what is left of it. Requests in flight together may
+ * each use up what is left, so a crawl can overshoot its byte budget by up to
+ * one response per concurrent fetch.
+ */
+public final class CrawlBudget {
+    /**
+     * A budget without limits
+     */
+    public static final CrawlBudget UNLIMITED = new CrawlBudget(0, 0, 0, 0);
+
+    private final long maxDurationMs;
+    private final long maxBytes;
+    private final long maxRequests;
+    private final int maxImages;
+
+    /**
+     * Constructor for CrawlBudget
+     *
+     * @param maxDurationMs Maximum elapsed time in milliseconds, 0 for no limit
+     * @param maxBytes Maximum response body bytes downloaded, 0 for no limit
+     * @param maxRequests Maximum HTTP requests including retries and redirects, 0 for no limit
+     * @param maxImages Maximum images found, 0 for no limit
+     * @throws IllegalArgumentException If a limit is negative
+     */
+    public CrawlBudget(long maxDurationMs, long maxBytes, long maxRequests, int maxImages) {
+        if (maxDurationMs < 0 || maxBytes < 0 || maxRequests < 0 || maxImages < 0) {
+            throw new IllegalArgumentException("Budget limits must not be negative");
+        }
+        this.maxDurationMs = maxDurationMs;
+        this.maxBytes = maxBytes;
+        this.maxRequests = maxRequests;
+        this.maxImages = maxImages;
+    }
+
+    /**
+     * Check whether a new page may be started
+     *
+     * @param deadline When the time budget runs out, or Long.MAX_VALUE
+     * @param requestCount Requests sent so far
+     * @param bytesDownloaded Bytes downloaded so far
+     * @param imageCount Images found so far
+     * @return The budget that ran out, or null if there is budget left
+     */
+    StopReason check(long deadline, long requestCount, long bytesDownloaded, int imageCount) {
+        if (maxRequests > 0 && requestCount >= maxRequests) {
+            return StopReason.REQUEST_BUDGET;
+        }
+        if (maxBytes > 0 && bytesDownloaded >= maxBytes) {
+            return StopReason.BYTE_BUDGET;
+        }
+        if (maxImages > 0 && imageCount >= maxImages) {
+            return StopReason.IMAGE_BUDGET;
+        }
+        if (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline) {
+            return StopReason.TIME_BUDGET;
+        }
+        return null;
+    }
+
+    /**
+     * Count a request against the budget before it is sent
+     *
+     * @param requestCount Requests sent so far, incremented if the request may be sent
+     * @param bytesDownloaded Bytes downloaded so far
+     * @throws BudgetExhaustedException If the request or byte budget has run out
+     */
+    void reserveRequest(AtomicLong requestCount, AtomicLong bytesDownloaded) throws BudgetExhaustedException {
+        if (maxBytes > 0 && bytesDownloaded.get() >= maxBytes) {
+            throw new BudgetExhaustedException(StopReason.BYTE_BUDGET);
+        }
+        long requests = requestCount.incrementAndGet();
+        if (maxRequests > 0 && requests > maxRequests) {
+            requestCount.decrementAndGet();
+            throw new BudgetExhaustedException(StopReason.REQUEST_BUDGET);
+        }
+    }
+
+    /**
+     * Cap the body of a response about to be requested at what is left of the
+     * byte budget
+     *
+     * @param maxBodySize The largest body the crawler reads without a budget
+     * @param bytesDownloaded Bytes downloaded so far
+     * @return The number of body bytes to read, at least 1
+     */
+    int capBodySize(int maxBodySize, long bytesDownloaded) {
+        if (maxBytes <= 0) {
+            return maxBodySize;
+        }
+        return (int) Math.max(1, Math.min(maxBodySize, maxBytes - bytesDownloaded));
+    }
+
+    /**
+     * Check whether one more image may be added to the results
+     *
+     * @param imageCount Images found so far
+     * @return true if the image budget has room for another image
+     */
+    boolean allowsImage(int imageCount) {
+        return maxImages == 0 || imageCount < maxImages;
+    }
+
+    /**
+     * @return Maximum elapsed time in milliseconds, 0 for no limit
+     */
+    public long getMaxDurationMs() {
+        return maxDurationMs;
+    }
+
+    /**
+     * @return Maximum response body bytes downloaded, 0 for no limit
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return Maximum HTTP requests including retries and redirects, 0 for no limit
+     */
+    public long getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * @return Maximum images found, 0 for no limit
+     */
+    public int getMaxImages() {
+        return maxImages;
+    }
+
+    /**
+     * @return true if any limit is set
+     */
+    public boolean isLimited() {
+        return maxDurationMs > 0 || maxBytes > 0 || maxRequests > 0 || maxImages > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "maxDurationMs=" + maxDurationMs + ",maxBytes=" + maxBytes
+                + ",maxRequests=" + maxRequests + ",maxImages=" + maxImages;
+    }
+}
@@ -0,0 +1,437 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * On-disk record of a crawl's progress, so a crawl cut short by a restart can
+ * continue where it stopped instead of starting over from the seed URL.
+ *
+ * A checkpoint is a directory per job holding three append-only logs: every URL
+ * queued (seen.log), every page processed and every redirect target (done.log),
+ * and every image found (images.log). The frontier is not written separately,
+ * it is whatever was queued but not processed. Recording only adds the record
+ * to a lock-free queue; a shared background thread writes the queued records
+ * every few seconds, so the crawl itself never waits for the disk or for the
+ * thread writing it. At most the last few seconds of progress are lost, and
+ * pages whose completion was lost are simply fetched again.
+ *
+ * Once most of seen.log describes pages that are done, the flush compacts it by
+ * rewriting it with only the URLs still waiting to be crawled. Only the flush,
+ * the loads and closing hold the checkpoint's monitor, never recording.
+ */
+public class CrawlCheckpoint {
+    private static final Path ROOT = Paths.get(System.getProperty("imagefinder.checkpoint.dir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "imagefinder-checkpoints").toString()));
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("imagefinder.checkpoint.flushIntervalMs", 5000);
+
+    // Compact once this many done pages are still listed in seen.log, and they
+    // make up at least half of it
+    private static final int MIN_COMPACTION_RECORDS = 10000;
+
+    private static final String PARAMETERS_FILE = "crawl.properties";
+    private static final String SEEN_LOG = "seen.log";
+    private static final String DONE_LOG = "done.log";
+    private static final String IMAGES_LOG = "images.log";
+
+    // done.log records are prefixed with the kind of URL
+    private static final char PAGE = 'P';
+    private static final char REDIRECT = 'R';
+
+    private static final Gson GSON = new Gson();
+    private static final Set<CrawlCheckpoint> OPEN = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        FLUSHER.scheduleWithFixedDelay(CrawlCheckpoint::flushAll, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private final String jobId;
+    private final Path directory;
+
+    // Records waiting to be written, in the order they were recorded
+    private final Queue<String> pendingSeen = new ConcurrentLinkedQueue<>();
+    private final Queue<String> pendingDone = new ConcurrentLinkedQueue<>();
+    private final Queue<String> pendingImages = new ConcurrentLinkedQueue<>();
+
+    // Guarded by the checkpoint's monitor
+    private BufferedWriter seenLog;
+    private BufferedWriter doneLog;
+    private BufferedWriter imagesLog;
+    private long seenRecords;
+    private long pagesSinceCompaction;
+    private volatile boolean closed;
+
+    private CrawlCheckpoint(String jobId, Path directory) {
+        this.jobId = jobId;
+        this.directory = directory;
+    }
+
+    /**
+     * Start a new, empty checkpoint for a job
+     *
+     * @param jobId The job ID, a UUID
+     * @param parameters The crawl parameters needed to resume the job
+     * @return The checkpoint
+     * @throws IOException If the checkpoint cannot be written
+     */
+    public static CrawlCheckpoint create(String jobId, Properties parameters) throws IOException {
+        Path directory = directoryFor(jobId);
+        Files.createDirectories(directory);
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(PARAMETERS_FILE), StandardCharsets.UTF_8)) {
+            parameters.store(writer, "Crawl " + jobId);
+        }
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(jobId, directory);
+        for (String log : new String[] {SEEN_LOG, DONE_LOG, IMAGES_LOG}) {
+            Files.deleteIfExists(directory.resolve(log));
+        }
+        checkpoint.openLogs();
+        return checkpoint;
+    }
+
+    /**
+     * Open the checkpoint of an earlier run of a job
+     *
+     * @param jobId The job ID
+     * @return The checkpoint, or null if the job has none
+     * @throws IOException If the checkpoint cannot be read
+     */
+    public static CrawlCheckpoint open(String jobId) throws IOException {
+        Path directory = directoryFor(jobId);
+        if (!Files.isRegularFile(directory.resolve(PARAMETERS_FILE))) {
+            return null;
+        }
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(jobId, directory);
+        checkpoint.seenRecords = countLines(directory.resolve(SEEN_LOG));
+        checkpoint.openLogs();
+        return checkpoint;
+    }
+
+    /**
+     * Resolve the directory of a job, refusing anything that is not a UUID so a
+     * job ID from a request can never point outside the checkpoint root
+     */
+    private static Path directoryFor(String jobId) {
+        if (jobId == null || !UUID.fromString(jobId).toString().equals(jobId)) {
+            throw new IllegalArgumentException("Invalid job ID: " + jobId);
+        }
+        return ROOT.resolve(jobId);
+    }
+
+    /**
+     * @return The ID of the job this checkpoint belongs to
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * Read the crawl parameters stored when the checkpoint was created
+     *
+     * @return The parameters
+     * @throws IOException If they cannot be read
+     */
+    public Properties readParameters() throws IOException {
+        Properties parameters = new Properties();
+        try (Reader reader = Files.newBufferedReader(directory.resolve(PARAMETERS_FILE), StandardCharsets.UTF_8)) {
+            parameters.load(reader);
+        }
+        return parameters;
+    }
+
+    /**
+     * Record that a URL was queued
+     *
+     * @param url The canonical URL
+     */
+    void recordQueued(String url) {
+        enqueue(pendingSeen, url);
+    }
+
+    /**
+     * Record that a page was processed, whether or not the fetch succeeded
+     *
+     * @param url The canonical URL
+     */
+    void recordPage(String url) {
+        enqueue(pendingDone, PAGE + url);
+    }
+
+    /**
+     * Record a redirect target, which counts as visited but is never queued
+     *
+     * @param url The canonical URL
+     */
+    void recordRedirect(String url) {
+        enqueue(pendingDone, REDIRECT + url);
+    }
+
+    /**
+     * Record a new image
+     *
+     * @param metadata The image
+     */
+    void recordImage(ImageMetadata metadata) {
+        enqueue(pendingImages, GSON.toJson(metadata));
+    }
+
+    private void enqueue(Queue<String> pending, String record) {
+        // Records are lines; the rare URL with a raw line break is not recorded
+        if (!closed && record.indexOf('\n') < 0 && record.indexOf('\r') < 0) {
+            pending.add(record);
+        }
+    }
+
+    /**
+     * Restore the processed pages and redirect targets into the visited set
+     *
+     * @param visited The visited set to fill
+     * @return Number of pages that were processed
+     * @throws IOException If the log cannot be read
+     */
+    synchronized int loadDone(SeenSet visited) throws IOException {
+        flushLogs();
+        int pages = 0;
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(DONE_LOG), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 1) {
+                    visited.add(line.substring(1));
+                    if (line.charAt(0) == PAGE) {
+                        pages++;
+                    }
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Restore the frontier: queued URLs that are not yet in the visited set, in
+     * the order they were queued. Call after {@link #loadDone}.
+     *
+     * @param visited The visited set, with the processed pages already in it
+     * @param frontier Receives each URL still waiting to be crawled
+     * @throws IOException If the log cannot be read
+     */
+    synchronized void loadFrontier(SeenSet visited, Consumer<String> frontier) throws IOException {
+        flushLogs();
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(SEEN_LOG), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && visited.add(line)) {
+                    frontier.accept(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Restore the images found so far
+     *
+     * @param images Receives each image
+     * @throws IOException If the log cannot be read
+     */
+    synchronized void loadImages(Consumer<ImageMetadata> images) throws IOException {
+        flushLogs();
+        try (BufferedReader reader = Files.newBufferedReader(directory.resolve(IMAGES_LOG), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    ImageMetadata metadata = GSON.fromJson(line, ImageMetadata.class);
+                    if (metadata != null && metadata.getUrl() != null) {
+                        images.accept(metadata);
+                    }
+                } catch (JsonParseException e) {
+                    // A record cut off by the crash, everything before it is intact
+                }
+            }
+        }
+    }
+
+    /**
+     * Write buffered records to disk, compacting seen.log if it is mostly done pages
+     */
+    synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            flushLogs();
+            if (pagesSinceCompaction >= MIN_COMPACTION_RECORDS && 2 * pagesSinceCompaction >= seenRecords) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not flush checkpoint for job " + jobId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrite seen.log with only the URLs that have not been processed. The new
+     * log replaces the old one in a single rename, so a crash leaves one or the
+     * other.
+     */
+    private void compact() throws IOException {
+        // Fingerprints keep the memory needed small even for very large crawls
+        FingerprintSeenSet done = new FingerprintSeenSet();
+        loadDone(done);
+
+        Path seen = directory.resolve(SEEN_LOG);
+        Path compacted = directory.resolve(SEEN_LOG + ".compact");
+        long kept = 0;
+        seenLog.close();
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(seen, StandardCharsets.UTF_8);
+                    BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty() && done.add(line)) {
+                        writer.write(line);
+                        writer.newLine();
+                        kept++;
+                    }
+                }
+            }
+            Files.move(compacted, seen, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(compacted);
+            seenLog = openLog(SEEN_LOG);
+        }
+        System.out.println("Compacted checkpoint " + jobId + ": " + seenRecords + " queued URLs down to " + kept);
+        seenRecords = kept;
+        pagesSinceCompaction = 0;
+    }
+
+    /**
+     * Flush and stop writing. The files stay on disk for a later resume.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flushLogs();
+            seenLog.close();
+            doneLog.close();
+            imagesLog.close();
+        } catch (IOException e) {
+            System.err.println("Could not close checkpoint for job " + jobId + ": " + e.getMessage());
+        }
+        closed = true;
+        OPEN.remove(this);
+    }
+
+    /**
+     * Close the checkpoint and delete its files, once the crawl has completed
+     */
+    public synchronized void delete() {
+        close();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.err.println("Could not delete checkpoint for job " + jobId + ": " + e.getMessage());
+        }
+    }
+
+    private void openLogs() throws IOException {
+        seenLog = openLog(SEEN_LOG);
+        doneLog = openLog(DONE_LOG);
+        imagesLog = openLog(IMAGES_LOG);
+        OPEN.add(this);
+    }
+
+    private BufferedWriter openLog(String name) throws IOException {
+        return Files.newBufferedWriter(directory.resolve(name), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Write the queued records and flush the writers. A page's links and images
+     * are recorded before the page itself, so the done records are taken first
+     * and written last: a page is never on disk as done while something it
+     * found is not.
+     */
+    private void flushLogs() throws IOException {
+        if (closed) {
+            return;
+        }
+        List<String> done = new ArrayList<>();
+        String record;
+        while ((record = pendingDone.poll()) != null) {
+            done.add(record);
+        }
+        while ((record = pendingSeen.poll()) != null) {
+            write(seenLog, record);
+            seenRecords++;
+        }
+        while ((record = pendingImages.poll()) != null) {
+            write(imagesLog, record);
+        }
+        seenLog.flush();
+        imagesLog.flush();
+        for (String page : done) {
+            write(doneLog, page);
+            if (page.charAt(0) == PAGE) {
+                pagesSinceCompaction++;
+            }
+        }
+        doneLog.flush();
+    }
+
+    private static void write(BufferedWriter log, String record) throws IOException {
+        log.write(record);
+        log.newLine();
+    }
+
+    private static long countLines(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        }
+    }
+
+    private static void flushAll() {
+        for (CrawlCheckpoint checkpoint : OPEN) {
+            checkpoint.flush();
+        }
+    }
+}
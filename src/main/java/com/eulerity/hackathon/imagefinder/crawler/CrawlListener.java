@@ -0,0 +1,21 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * Callback interface for receiving crawl results while the crawl is running.
+ * Callbacks are invoked on crawler worker threads and must not block.
+ */
+public interface CrawlListener {
+
+    /**
+     * Called once for every new image accepted by the crawler
+     * 
+     * @param metadata The metadata of the image
+     */
+    void onImage(ImageMetadata metadata);
+
+    /**
+     * Called once when the crawl has finished, after all images have been reported
+     */
+    default void onComplete() {
+    }
+}
@@ -0,0 +1,353 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Node-wide scheduler that runs the work of every active crawl on one bounded
+ * worker pool. Crawls hand out small tasks (usually one page each) and the
+ * scheduler picks the next crawl using stride scheduling, so crawls share the
+ * pool fairly in proportion to their priority. When too many crawls are active,
+ * new ones wait in an admission queue, and when that queue is full they are rejected.
+ */
+public class CrawlScheduler {
+    private static final int DEFAULT_WORKERS = Integer.getInteger("imagefinder.scheduler.workers", 32);
+    private static final int DEFAULT_MAX_ACTIVE = Integer.getInteger("imagefinder.scheduler.maxActiveCrawls", 8);
+    private static final int DEFAULT_MAX_QUEUED = Integer.getInteger("imagefinder.scheduler.maxQueuedCrawls", 32);
+    
+    // Stride scheduling: a crawl's pass advances by STRIDE / priority per task
+    private static final long STRIDE = 1 << 20;
+    
+    public static final int MIN_PRIORITY = 1;
+    public static final int DEFAULT_PRIORITY = 5;
+    public static final int MAX_PRIORITY = 10;
+
+    private static final CrawlScheduler INSTANCE =
+            new CrawlScheduler(DEFAULT_WORKERS, DEFAULT_MAX_ACTIVE, DEFAULT_MAX_QUEUED);
+
+    /**
+     * A crawl whose work is run by the scheduler
+     */
+    interface Crawl {
+        /**
+         * Get the next task that can run now. Must not block.
+         * 
+         * @return The task, or null if nothing is eligible right now
+         */
+        Runnable pollTask();
+
+        /**
+         * @return true once the crawl will not produce any more tasks
+         */
+        boolean isFinished();
+
+        /**
+         * Called once after the crawl is finished and none of its tasks are running
+         */
+        void onDetached();
+
+        /**
+         * @return Maximum number of this crawl's tasks that may run at once
+         */
+        int getMaxConcurrency();
+
+        /**
+         * @return Priority between MIN_PRIORITY and MAX_PRIORITY
+         */
+        int getPriority();
+
+        /**
+         * Get how long until a task may become eligible through the passage of
+         * time alone, such as a host's crawl delay running out. Anything else that
+         * makes a task eligible must be followed by {@link CrawlScheduler#signalWork()}
+         * unless it happens inside one of the crawl's tasks.
+         * 
+         * @return The delay in milliseconds, or Long.MAX_VALUE if only a signal can
+         *         make a task eligible
+         */
+        long getNextTaskDelayMs();
+    }
+
+    private final int workerCount;
+    private final int maxActive;
+    private final int maxQueued;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final List<Entry> active = new ArrayList<>();
+    private final PriorityQueue<Entry> waiting = new PriorityQueue<>(
+            Comparator.comparingInt((Entry entry) -> -entry.priority).thenComparingLong(entry -> entry.sequence));
+    private final Map<Crawl, Entry> entries = new LinkedHashMap<>();
+    private long sequence;
+    private long virtualTime;
+    private int busyWorkers;
+
+    /**
+     * Constructor for CrawlScheduler
+     * 
+     * @param workerCount Number of worker threads shared by all crawls
+     * @param maxActive Maximum number of crawls running at once
+     * @param maxQueued Maximum number of crawls waiting for admission
+     */
+    CrawlScheduler(int workerCount, int maxActive, int maxQueued) {
+        this.workerCount = workerCount;
+        this.maxActive = maxActive;
+        this.maxQueued = maxQueued;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "crawl-worker-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Get the node-wide scheduler
+     * 
+     * @return The shared scheduler
+     */
+    public static CrawlScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Admit a crawl. It starts right away if there is capacity, otherwise it
+     * waits in the admission queue.
+     * 
+     * @param crawl The crawl to schedule
+     * @throws RejectedExecutionException If the node is saturated
+     */
+    void submit(Crawl crawl) {
+        lock.lock();
+        try {
+            if (entries.containsKey(crawl)) {
+                return;
+            }
+            Entry entry = new Entry(crawl, sequence++);
+            if (active.size() < maxActive) {
+                activate(entry);
+            } else if (waiting.size() < maxQueued) {
+                waiting.add(entry);
+                System.out.println("Crawl queued for admission (" + waiting.size() + " waiting)");
+            } else {
+                throw new RejectedExecutionException("Crawler is at capacity ("
+                        + active.size() + " active, " + waiting.size() + " queued), try again later");
+            }
+            entries.put(crawl, entry);
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Interrupt the tasks a crawl is currently running. The crawl is expected to
+     * report itself finished so that it is detached afterwards.
+     * 
+     * @param crawl The crawl to cancel
+     */
+    void cancel(Crawl crawl) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(crawl);
+            if (entry == null) {
+                return;
+            }
+            for (Thread thread : entry.threads) {
+                thread.interrupt();
+            }
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wake idle workers because a crawl has new work that did not come from a
+     * finished task, e.g. a response to an asynchronous fetch
+     */
+    void signalWork() {
+        lock.lock();
+        try {
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get queue depth and utilization statistics
+     * 
+     * @return Map of statistic names to values
+     */
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("workers", workerCount);
+            stats.put("busyWorkers", busyWorkers);
+            stats.put("utilization", workerCount == 0 ? 0.0 : (double) busyWorkers / workerCount);
+            stats.put("activeCrawls", active.size());
+            stats.put("queuedCrawls", waiting.size());
+            stats.put("maxActiveCrawls", maxActive);
+            stats.put("maxQueuedCrawls", maxQueued);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Worker loop: repeatedly pick a task from the most deserving crawl and run it
+     */
+    private void runWorker() {
+        while (true) {
+            Entry entry;
+            Runnable task;
+            lock.lock();
+            try {
+                while (true) {
+                    detachFinished();
+                    entry = null;
+                    task = null;
+                    long waitMs = Long.MAX_VALUE;
+                    for (Entry candidate : eligibleByPass()) {
+                        task = candidate.crawl.pollTask();
+                        if (task != null) {
+                            entry = candidate;
+                            break;
+                        }
+                        waitMs = Math.min(waitMs, candidate.crawl.getNextTaskDelayMs());
+                    }
+                    if (task != null) {
+                        break;
+                    }
+                    // Sleep until signalled, or until the earliest host becomes eligible
+                    try {
+                        if (waitMs == Long.MAX_VALUE) {
+                            workAvailable.await();
+                        } else {
+                            workAvailable.await(Math.max(1, waitMs), TimeUnit.MILLISECONDS);
+                        }
+                    } catch (InterruptedException e) {
+                        // Interrupts are only used to cancel tasks, keep serving
+                    }
+                }
+                entry.running++;
+                entry.threads.add(Thread.currentThread());
+                entry.pass += STRIDE / entry.priority;
+                busyWorkers++;
+            } finally {
+                lock.unlock();
+            }
+            
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Unexpected error in crawl task: " + e.getMessage());
+            } finally {
+                lock.lock();
+                try {
+                    entry.running--;
+                    entry.threads.remove(Thread.currentThread());
+                    busyWorkers--;
+                    workAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                // Do not let a cancellation leak into the next task. cancel() only
+                // interrupts under the lock, so once this thread has left the
+                // crawl's threads no new interrupt can arrive for it.
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Get the crawls that may run another task, lowest pass first
+     * 
+     * @return The eligible crawls in scheduling order
+     */
+    private List<Entry> eligibleByPass() {
+        List<Entry> candidates = new ArrayList<>();
+        for (Entry entry : active) {
+            if (entry.running < entry.maxConcurrency && !entry.crawl.isFinished()) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(entry -> entry.pass));
+        return candidates;
+    }
+
+    /**
+     * Detach finished crawls that have no running tasks and admit waiting crawls in their place
+     */
+    private void detachFinished() {
+        Iterator<Entry> iterator = active.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.running == 0 && entry.crawl.isFinished()) {
+                iterator.remove();
+                entries.remove(entry.crawl);
+                entry.crawl.onDetached();
+            }
+        }
+        while (active.size() < maxActive && !waiting.isEmpty()) {
+            activate(waiting.poll());
+        }
+        // Crawls that finish while waiting (e.g. stopped) never start
+        Iterator<Entry> waitingIterator = waiting.iterator();
+        while (waitingIterator.hasNext()) {
+            Entry entry = waitingIterator.next();
+            if (entry.crawl.isFinished()) {
+                waitingIterator.remove();
+                entries.remove(entry.crawl);
+                entry.crawl.onDetached();
+            }
+        }
+    }
+
+    /**
+     * Start scheduling a crawl. It joins at the lowest pass of the active crawls
+     * so it neither starves others nor catches up on time it was not active.
+     */
+    private void activate(Entry entry) {
+        if (!active.isEmpty()) {
+            virtualTime = Long.MAX_VALUE;
+            for (Entry other : active) {
+                virtualTime = Math.min(virtualTime, other.pass);
+            }
+        }
+        entry.pass = virtualTime;
+        active.add(entry);
+    }
+
+    /**
+     * Scheduling state of a crawl
+     */
+    private static class Entry {
+        private final Crawl crawl;
+        private final long sequence;
+        private final int priority;
+        private final int maxConcurrency;
+        private final Set<Thread> threads = new HashSet<>();
+        private long pass;
+        private int running;
+
+        Entry(Crawl crawl, long sequence) {
+            this.crawl = crawl;
+            this.sequence = sequence;
+            this.priority = Math.max(MIN_PRIORITY, Math.min(MAX_PRIORITY, crawl.getPriority()));
+            this.maxConcurrency = Math.max(1, crawl.getMaxConcurrency());
+        }
+    }
+}
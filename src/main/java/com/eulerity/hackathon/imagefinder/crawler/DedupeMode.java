@@ -0,0 +1,17 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * Ways the crawler can remember which URLs it has already queued
+ */
+public enum DedupeMode {
+    /**
+     * Keep every URL string in a concurrent hash set
+     */
+    EXACT,
+
+    /**
+     * Keep only a 64-bit fingerprint of each URL in a primitive hash table,
+     * accepting a tiny chance that a page is skipped as already seen
+     */
+    FINGERPRINT
+}
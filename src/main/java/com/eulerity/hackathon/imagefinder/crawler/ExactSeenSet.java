@@ -0,0 +1,40 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Seen set that keeps the full URL strings
+ */
+class ExactSeenSet implements SeenSet {
+    private final Set<String> urls = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    @Override
+    public boolean add(String url) {
+        return urls.add(url);
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return urls.contains(url);
+    }
+
+    @Override
+    public int size() {
+        return urls.size();
+    }
+
+    @Override
+    public void clear() {
+        urls.clear();
+    }
+
+    /**
+     * @return A copy of the URLs in the set
+     */
+    Set<String> snapshot() {
+        return new HashSet<>(urls);
+    }
+}
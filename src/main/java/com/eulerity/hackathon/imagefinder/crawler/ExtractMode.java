@@ -0,0 +1,16 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * Ways the crawler can find images and links in a fetched page
+ */
+public enum ExtractMode {
+    /**
+     * Parse a full Jsoup DOM and select each kind of element from it
+     */
+    DOM,
+
+    /**
+     * Scan the tags of the raw HTML in one pass without building a DOM
+     */
+    STREAMING
+}
@@ -0,0 +1,17 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * HTTP engines the crawler can use to fetch pages
+ */
+public enum FetchMode {
+    /**
+     * Blocking Jsoup requests, one per worker thread
+     */
+    JSOUP,
+
+    /**
+     * Non-blocking requests on the JDK HTTP client, so many fetches can be
+     * in flight while only parsing occupies worker threads
+     */
+    ASYNC
+}
@@ -0,0 +1,265 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * A downloaded page, independent of the HTTP engine that fetched it
+ */
+public class FetchedPage {
+    // How much of the body is searched for a meta charset, as in Jsoup
+    private static final int META_SNIFF_BYTES = 5 * 1024;
+    private static final Pattern META_CHARSET = Pattern.compile(
+            "<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    private final String url;
+    private final int statusCode;
+    private final String contentType;
+    private final String location;
+    private final byte[] body;
+    private final String etag;
+    private final String lastModified;
+    private final ValidatorStore.Entry revalidated;
+
+    /**
+     * Constructor for FetchedPage
+     * 
+     * @param url The final URL of the page, after redirects
+     * @param statusCode The HTTP status code
+     * @param contentType The Content-Type header, or null if missing
+     * @param location The Location header, or null if missing
+     * @param body The response body
+     */
+    public FetchedPage(String url, int statusCode, String contentType, String location, byte[] body) {
+        this(url, statusCode, contentType, location, body, null, null);
+    }
+
+    /**
+     * Constructor for FetchedPage with the validators used to revalidate it later
+     * 
+     * @param url The final URL of the page, after redirects
+     * @param statusCode The HTTP status code
+     * @param contentType The Content-Type header, or null if missing
+     * @param location The Location header, or null if missing
+     * @param body The response body
+     * @param etag The ETag header, or null if missing
+     * @param lastModified The Last-Modified header, or null if missing
+     */
+    public FetchedPage(String url, int statusCode, String contentType, String location, byte[] body,
+            String etag, String lastModified) {
+        this(url, statusCode, contentType, location, body, etag, lastModified, null);
+    }
+
+    /**
+     * Constructor for FetchedPage answering a conditional request
+     * 
+     * @param url The final URL of the page, after redirects
+     * @param statusCode The HTTP status code
+     * @param contentType The Content-Type header, or null if missing
+     * @param location The Location header, or null if missing
+     * @param body The response body
+     * @param etag The ETag header, or null if missing
+     * @param lastModified The Last-Modified header, or null if missing
+     * @param revalidated The stored validators the request was sent with, or null if it was unconditional
+     */
+    FetchedPage(String url, int statusCode, String contentType, String location, byte[] body,
+            String etag, String lastModified, ValidatorStore.Entry revalidated) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.location = location;
+        this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.revalidated = revalidated;
+    }
+
+    /**
+     * Create a page from a Jsoup response
+     * 
+     * @param response The response
+     * @param revalidated The stored validators the request was sent with, or null if it was unconditional
+     * @return The page
+     */
+    static FetchedPage from(Connection.Response response, ValidatorStore.Entry revalidated) {
+        return new FetchedPage(response.url().toString(), response.statusCode(),
+                response.contentType(), response.header("Location"), response.bodyAsBytes(),
+                response.header("ETag"), response.header("Last-Modified"), revalidated);
+    }
+
+    /**
+     * Parse the body as HTML, using the charset from the Content-Type header
+     * or detecting it from the document if the header has none
+     * 
+     * @return The parsed document
+     * @throws IOException If the body cannot be parsed
+     */
+    public Document parse() throws IOException {
+        return Jsoup.parse(new ByteArrayInputStream(body), getCharset(), url);
+    }
+
+    /**
+     * Open the body as text without parsing it. The charset comes from a byte
+     * order mark, then the Content-Type header, then a meta tag in the first few
+     * kilobytes, and defaults to UTF-8, in the same order Jsoup uses.
+     * 
+     * @return A reader that decodes the body as it is read
+     */
+    public Reader openReader() {
+        String charset = getCharset();
+        int offset = 0;
+        if (body.length >= 3 && (body[0] & 0xFF) == 0xEF && (body[1] & 0xFF) == 0xBB && (body[2] & 0xFF) == 0xBF) {
+            charset = "UTF-8";
+            offset = 3;
+        } else if (body.length >= 2 && (body[0] & 0xFF) == 0xFE && (body[1] & 0xFF) == 0xFF) {
+            charset = "UTF-16BE";
+            offset = 2;
+        } else if (body.length >= 2 && (body[0] & 0xFF) == 0xFF && (body[1] & 0xFF) == 0xFE) {
+            charset = "UTF-16LE";
+            offset = 2;
+        } else if (charset == null) {
+            charset = sniffMetaCharset();
+        }
+        return new InputStreamReader(new ByteArrayInputStream(body, offset, body.length - offset),
+                Charset.forName(charset));
+    }
+
+    /**
+     * Look for a charset in a meta tag near the start of the document
+     * 
+     * @return The declared charset, or UTF-8 if none is usable
+     */
+    private String sniffMetaCharset() {
+        String head = new String(body, 0, Math.min(body.length, META_SNIFF_BYTES), StandardCharsets.ISO_8859_1);
+        Matcher matcher = META_CHARSET.matcher(head);
+        if (matcher.find()) {
+            String charset = matcher.group(1);
+            try {
+                if (Charset.isSupported(charset)) {
+                    return charset;
+                }
+            } catch (IllegalArgumentException e) {
+                // Illegal charset name, fall back to UTF-8
+            }
+        }
+        return "UTF-8";
+    }
+
+    /**
+     * Get the charset declared in the Content-Type header
+     * 
+     * @return The charset name, or null if missing or unsupported
+     */
+    public String getCharset() {
+        if (contentType == null) {
+            return null;
+        }
+        int index = contentType.toLowerCase().indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + "charset=".length()).trim();
+        int end = charset.indexOf(';');
+        if (end >= 0) {
+            charset = charset.substring(0, end).trim();
+        }
+        charset = charset.replace("\"", "").replace("'", "");
+        try {
+            return Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalArgumentException e) {
+            return null; // Illegal charset name
+        }
+    }
+
+    /**
+     * Get the final URL of the page
+     * 
+     * @return The URL after redirects
+     */
+    public String getUrl() {
+        return url;
+    }
+    
+    /**
+     * Get the HTTP status code
+     * 
+     * @return The status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+    
+    /**
+     * Get the Content-Type header
+     * 
+     * @return The content type, or null if missing
+     */
+    public String getContentType() {
+        return contentType;
+    }
+    
+    /**
+     * Get the Location header of a redirect response
+     * 
+     * @return The location, or null if missing or empty
+     */
+    public String getLocation() {
+        return location == null || location.isEmpty() ? null : location;
+    }
+    
+    /**
+     * Get the response body
+     * 
+     * @return The body bytes
+     */
+    public byte[] getBody() {
+        return body;
+    }
+    
+    /**
+     * Check whether the server answered a conditional request with 304 Not Modified
+     * 
+     * @return true if the page has not changed since it was last downloaded
+     */
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+    
+    /**
+     * Get the stored validators sent with the request. A 304 response refers to
+     * these, whatever the store holds by the time the page is processed.
+     * 
+     * @return The entry the request was made conditional on, or null if it was unconditional
+     */
+    ValidatorStore.Entry getRevalidated() {
+        return revalidated;
+    }
+    
+    /**
+     * Get the ETag header
+     * 
+     * @return The entity tag, or null if missing or empty
+     */
+    public String getEtag() {
+        return etag == null || etag.isEmpty() ? null : etag;
+    }
+    
+    /**
+     * Get the Last-Modified header
+     * 
+     * @return The modification date, or null if missing or empty
+     */
+    public String getLastModified() {
+        return lastModified == null || lastModified.isEmpty() ? null : lastModified;
+    }
+}
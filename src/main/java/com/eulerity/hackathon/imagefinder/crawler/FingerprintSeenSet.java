@@ -0,0 +1,173 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Seen set that stores a 64-bit fingerprint per URL instead of the URL itself.
+ * A String in a ConcurrentHashMap-backed set costs well over 100 bytes once the
+ * string, its character array and the map node are counted; here a URL costs
+ * one long in an open-addressing table kept between three eighths and three
+ * quarters full, 11 to 22 bytes depending on how full the table is.
+ *
+ * The table is split into stripes, each with its own lock, so concurrent workers
+ * rarely contend and a resize only copies one stripe. Two URLs with the same
+ * fingerprint are treated as one; with n URLs the chance of that happening at
+ * all is about n^2 / 2^65, under one in a million for five million URLs.
+ */
+class FingerprintSeenSet implements SeenSet {
+    // Stripes are picked by the top bits of the fingerprint, slots by the low bits
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Constructor for FingerprintSeenSet
+     */
+    FingerprintSeenSet() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public boolean add(String url) {
+        long fingerprint = fingerprint(url);
+        Stripe stripe = stripes[(int) (fingerprint >>> (64 - STRIPE_BITS))];
+        synchronized (stripe) {
+            if (!stripe.add(fingerprint)) {
+                return false;
+            }
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        long fingerprint = fingerprint(url);
+        Stripe stripe = stripes[(int) (fingerprint >>> (64 - STRIPE_BITS))];
+        synchronized (stripe) {
+            return stripe.contains(fingerprint);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        size.set(0);
+    }
+
+    /**
+     * Birthday bound for n fingerprints: 1 - e^(-n(n-1) / 2^65)
+     */
+    @Override
+    public double getCollisionProbability() {
+        double n = size.get();
+        return -Math.expm1(-n * (n - 1) / 0x1p65);
+    }
+
+    /**
+     * @return Bytes used by the fingerprint tables
+     */
+    long getTableBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                bytes += 8L * stripe.table.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, followed by the MurmurHash3 finalizer so
+     * that every bit depends on the whole URL. Zero marks an empty slot, so it is
+     * never returned.
+     *
+     * @param url The URL
+     * @return The fingerprint
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * One open-addressing table with linear probing, guarded by its own monitor
+     */
+    private static class Stripe {
+        private long[] table = new long[INITIAL_STRIPE_CAPACITY];
+        private int count;
+
+        boolean add(long fingerprint) {
+            // Keep the table at most three quarters full
+            if (4 * (count + 1) > 3 * table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == fingerprint) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = fingerprint;
+            count++;
+            return true;
+        }
+
+        boolean contains(long fingerprint) {
+            int mask = table.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == fingerprint) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        void clear() {
+            table = new long[INITIAL_STRIPE_CAPACITY];
+            count = 0;
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long fingerprint : old) {
+                if (fingerprint != 0) {
+                    int slot = (int) fingerprint & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = fingerprint;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * Queue of URLs waiting to be crawled. Implementations decide the order, either
+ * first-in first-out or by a {@link FrontierOrder}. Implementations are not
+ * thread-safe; {@link PolitenessScheduler} guards every frontier with its own
+ * lock.
+ */
+public interface Frontier {
+    /**
+     * Add a URL to the queue
+     *
+     * @param entry The URL and its priority
+     */
+    void add(FrontierEntry entry);
+
+    /**
+     * Take the URL at the head of the queue
+     *
+     * @return The URL and its priority, or null if the queue is empty
+     */
+    FrontierEntry poll();
+
+    /**
+     * @return The number of URLs in the queue
+     */
+    int size();
+
+    /**
+     * @return true if the queue is empty
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Remove every URL and release any resources held by the queue
+     */
+    void clear();
+}
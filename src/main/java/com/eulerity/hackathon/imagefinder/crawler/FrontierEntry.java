@@ -0,0 +1,61 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * A URL waiting in the crawl frontier, with what is needed to order it: how
+ * many links away from the seed it was found, a score for how likely it is to
+ * lead to images, and the order in which it was queued.
+ */
+public final class FrontierEntry {
+    private final String url;
+    private final int depth;
+    private final double score;
+    private final long sequence;
+
+    /**
+     * Constructor for FrontierEntry
+     *
+     * @param url The URL
+     * @param depth Number of links followed from the seed URL to reach it
+     * @param score How likely the page is to have images, higher is better
+     * @param sequence Position in the order URLs were queued
+     */
+    public FrontierEntry(String url, int depth, double score, long sequence) {
+        this.url = url;
+        this.depth = depth;
+        this.score = score;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return The URL
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return Number of links followed from the seed URL to reach it
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return How likely the page is to have images, higher is better
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return Position in the order URLs were queued
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return url + " (depth " + depth + ", score " + score + ")";
+    }
+}
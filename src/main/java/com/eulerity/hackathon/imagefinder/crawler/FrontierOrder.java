@@ -0,0 +1,97 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders in which the crawl frontier hands out URLs, and the cheap score the
+ * default order uses to guess which pages have images. The score only looks at
+ * the URL and at the page the link was found on, so it costs nothing to compute
+ * while queueing links.
+ */
+public final class FrontierOrder {
+    /**
+     * URLs in the order they were queued
+     */
+    public static final Comparator<FrontierEntry> FIFO = Comparator.comparingLong(FrontierEntry::getSequence);
+
+    /**
+     * Breadth-first by link depth, where every point of score makes a URL count
+     * as one link closer to the seed. URLs with the same priority keep the order
+     * they were queued in.
+     */
+    public static final Comparator<FrontierEntry> DEPTH_AND_SCORE = Comparator
+            .comparingDouble((FrontierEntry entry) -> entry.getDepth() - entry.getScore())
+            .thenComparingLong(FrontierEntry::getSequence);
+
+    // Path words of pages that tend to list many images
+    private static final Set<String> IMAGE_HINTS = new HashSet<>(Arrays.asList(
+            "gallery", "galleries", "photo", "photos", "photography", "image", "images", "img",
+            "picture", "pictures", "portfolio", "album", "albums", "product", "products",
+            "shop", "store", "collection", "collections", "catalog", "media"));
+
+    // Path words of listing, account and boilerplate pages that rarely add images
+    private static final Set<String> LOW_VALUE_HINTS = new HashSet<>(Arrays.asList(
+            "tag", "tags", "category", "categories", "page", "archive", "archives", "author",
+            "search", "login", "signin", "register", "account", "cart", "checkout", "feed",
+            "rss", "comments", "privacy", "terms", "contact"));
+
+    // Parent pages with this many images give their links the full bonus
+    private static final int PARENT_IMAGES_FOR_FULL_BONUS = 20;
+
+    // Pages changed this long ago get half the freshness bonus
+    private static final long FRESHNESS_HALF_LIFE_MS = TimeUnit.DAYS.toMillis(30);
+
+    private FrontierOrder() {
+    }
+
+    /**
+     * Score a link by its path and by how many images the page it was found on
+     * had. A path word that suggests a gallery or product page adds 1, a word
+     * that suggests a tag, archive or account page subtracts 1, and the parent's
+     * images add up to 1 more, growing slower the more there are.
+     *
+     * @param pathAndQuery The path and query of the link
+     * @param parentImageCount Number of images on the page the link was found on
+     * @return The score, higher is better
+     */
+    public static double score(String pathAndQuery, int parentImageCount) {
+        double score = 0;
+        if (pathAndQuery != null) {
+            String lower = pathAndQuery.toLowerCase(Locale.ROOT);
+            int query = lower.indexOf('?');
+            boolean imageHint = false;
+            boolean lowValueHint = query >= 0 && (lower.indexOf("page=", query) >= 0 || lower.indexOf("sort=", query) >= 0);
+            for (String word : (query >= 0 ? lower.substring(0, query) : lower).split("[^a-z0-9]+")) {
+                imageHint |= IMAGE_HINTS.contains(word);
+                lowValueHint |= LOW_VALUE_HINTS.contains(word);
+            }
+            score += (imageHint ? 1 : 0) - (lowValueHint ? 1 : 0);
+        }
+        if (parentImageCount > 0) {
+            score += Math.min(1.0, Math.log1p(parentImageCount) / Math.log1p(PARENT_IMAGES_FOR_FULL_BONUS));
+        }
+        return score;
+    }
+
+    /**
+     * Score how recently a page changed, for URLs seeded from a sitemap. A page
+     * changed today gets 1, one changed FRESHNESS_HALF_LIFE_MS ago gets 0.5, and
+     * the bonus keeps shrinking with age.
+     *
+     * @param lastModified When the page last changed in milliseconds, or -1 if unknown
+     * @param now The current time in milliseconds
+     * @return The bonus to add to the score, 0 if the date is unknown
+     */
+    public static double freshness(long lastModified, long now) {
+        if (lastModified < 0) {
+            return 0;
+        }
+        long age = Math.max(0, now - lastModified);
+        return 1.0 / (1.0 + (double) age / FRESHNESS_HALF_LIFE_MS);
+    }
+}
@@ -0,0 +1,378 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.jsoup.nodes.Attributes;
+import org.jsoup.parser.Parser;
+
+/**
+ * Streaming scanner that reports start tags and their attributes without
+ * building a DOM or holding the whole document in memory. It reads through a
+ * small buffer and follows the tokenization rules of the HTML spec closely
+ * enough to agree with Jsoup on real pages: comments, doctypes and processing
+ * instructions are skipped, the contents of raw text elements such as script
+ * and style are never scanned for tags, names are lowercased, the first of
+ * duplicate attributes wins, character references in attribute values are
+ * decoded and a tag cut off by the end of the document is dropped.
+ *
+ * Attributes are only collected for the tags the handler asks for; for every
+ * other tag only a style attribute is kept, and nothing else is copied.
+ */
+class HtmlTagScanner {
+    private static final int BUFFER_SIZE = 8192;
+
+    // Tag and attribute names repeat constantly, so equal names share one String
+    private static final int NAME_CACHE_SIZE = 512;
+    private static final int MAX_NAME_LENGTH = 64;
+
+    /**
+     * Receives the start tags found by the scanner
+     */
+    interface TagHandler {
+        /**
+         * @param tagName The lowercased tag name
+         * @return true if all attributes of this tag should be collected
+         */
+        boolean wantsAttributes(String tagName);
+
+        /**
+         * Called for each start tag
+         *
+         * @param tagName The lowercased tag name
+         * @param attributes All attributes if requested, otherwise only a style attribute
+         */
+        void onStartTag(String tagName, Attributes attributes);
+
+        /**
+         * Called for each end tag
+         *
+         * @param tagName The lowercased tag name
+         */
+        default void onEndTag(String tagName) {
+        }
+    }
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLimit;
+
+    private final char[] name = new char[MAX_NAME_LENGTH];
+    private final String[] nameCache = new String[NAME_CACHE_SIZE];
+    private final StringBuilder value = new StringBuilder();
+
+    /**
+     * Constructor for HtmlTagScanner
+     *
+     * @param reader The decoded HTML
+     */
+    HtmlTagScanner(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Scan the whole document and report start tags to the handler
+     *
+     * @param handler The handler
+     * @throws IOException If reading fails
+     */
+    void scan(TagHandler handler) throws IOException {
+        while (skipPast('<')) {
+            int c = peek();
+            if (isAsciiLetter(c)) {
+                String tagName = readName(false);
+                if (!readStartTag(tagName, handler)) {
+                    return; // End of document inside the tag
+                }
+                if (tagName.equals("plaintext")) {
+                    return; // Everything after <plaintext> is text
+                }
+                if (isRawText(tagName)) {
+                    skipRawText(tagName);
+                }
+            } else if (c == '!') {
+                read();
+                if (peek() == '-') {
+                    read();
+                    if (peek() == '-') {
+                        read();
+                        skipComment();
+                        continue;
+                    }
+                }
+                skipPast('>'); // Doctype, CDATA or bogus comment
+            } else if (c == '/') {
+                read();
+                if (isAsciiLetter(peek())) {
+                    handler.onEndTag(readName(false));
+                }
+                skipPast('>');
+            } else if (c == '?') {
+                skipPast('>'); // Processing instruction
+            }
+            // Anything else is a literal '<' in text
+        }
+    }
+
+    /**
+     * Read the attributes of a start tag up to and including its closing '>', or
+     * up to a '<' that Jsoup takes as the start of the next tag
+     *
+     * @return false if the document ended before the tag was closed
+     */
+    private boolean readStartTag(String tagName, TagHandler handler) throws IOException {
+        boolean wantsAll = handler.wantsAttributes(tagName);
+        Attributes attributes = null;
+        // After a name without a value a '<' starts the next name, anywhere
+        // else Jsoup takes it as the start of the next tag
+        boolean afterName = false;
+
+        while (true) {
+            int c = peek();
+            if (c == -1) {
+                return false;
+            }
+            if (c == '>') {
+                read();
+                break;
+            }
+            if (c == '<' && !afterName) {
+                break;
+            }
+            if (isWhitespace(c) || c == '/') {
+                read();
+                afterName = false;
+                continue;
+            }
+
+            // Attribute name; a leading '=' is part of the name
+            String attributeName = readName(true);
+            boolean keep = wantsAll || "style".equals(attributeName);
+
+            // Optional value
+            skipWhitespace();
+            String attributeValue = "";
+            afterName = true;
+            if (peek() == '=') {
+                read();
+                skipWhitespace();
+                attributeValue = readAttributeValue(keep);
+                afterName = false;
+            }
+
+            if (keep) {
+                if (attributes == null) {
+                    attributes = new Attributes();
+                }
+                if (!attributes.hasKey(attributeName)) {
+                    attributes.put(attributeName, attributeValue.indexOf('&') >= 0
+                            ? Parser.unescapeEntities(attributeValue, true) : attributeValue);
+                }
+            }
+        }
+
+        handler.onStartTag(tagName, attributes != null ? attributes : new Attributes());
+        return true;
+    }
+
+    /**
+     * Read a lowercased tag or attribute name at the current position
+     *
+     * @param attribute true for an attribute name, which also ends at '=', false
+     *        for a tag name, which also ends at '<'
+     * @return The name, shared with earlier occurrences when short enough
+     */
+    private String readName(boolean attribute) throws IOException {
+        int count = 0;
+        int hash = 0;
+        StringBuilder longName = null;
+        while (true) {
+            int c = peek();
+            if (c == -1 || isWhitespace(c) || c == '/' || c == '>' || (c == '=' && attribute && count > 0)
+                    || (c == '<' && !attribute)) {
+                break;
+            }
+            read();
+            char lower = (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : (char) c;
+            if (count < MAX_NAME_LENGTH) {
+                name[count] = lower;
+                hash = 31 * hash + lower;
+            } else {
+                if (longName == null) {
+                    longName = new StringBuilder().append(name, 0, MAX_NAME_LENGTH);
+                }
+                longName.append(lower);
+            }
+            count++;
+        }
+        if (longName != null) {
+            return longName.toString();
+        }
+
+        int index = hash & (NAME_CACHE_SIZE - 1);
+        String cached = nameCache[index];
+        if (cached != null && cached.length() == count) {
+            boolean equal = true;
+            for (int i = 0; i < count && equal; i++) {
+                equal = cached.charAt(i) == name[i];
+            }
+            if (equal) {
+                return cached;
+            }
+        }
+        String result = new String(name, 0, count);
+        nameCache[index] = result;
+        return result;
+    }
+
+    /**
+     * Read a quoted or unquoted attribute value; entities are still encoded
+     *
+     * @param keep false to skip the value without copying it
+     * @return The raw value, or an empty string if not kept
+     */
+    private String readAttributeValue(boolean keep) throws IOException {
+        value.setLength(0);
+        int quote = peek();
+        if (quote == '"' || quote == '\'') {
+            read();
+            int c;
+            while ((c = read()) != -1 && c != quote) {
+                if (keep) {
+                    value.append((char) c);
+                }
+            }
+        } else {
+            int c;
+            while ((c = peek()) != -1 && !isWhitespace(c) && c != '>') {
+                read();
+                if (keep) {
+                    value.append((char) c);
+                }
+            }
+        }
+        return keep ? value.toString() : "";
+    }
+
+    /**
+     * Skip the contents of a raw text element up to its end tag
+     */
+    private void skipRawText(String tagName) throws IOException {
+        while (skipPast('<')) {
+            if (peek() != '/') {
+                continue;
+            }
+            read();
+
+            // Match the element name case-insensitively; a mismatching character
+            // is left unread since it may start the real end tag
+            int matched = 0;
+            while (matched < tagName.length()) {
+                int c = peek();
+                int lower = (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+                if (lower != tagName.charAt(matched)) {
+                    break;
+                }
+                read();
+                matched++;
+            }
+            if (matched == tagName.length()) {
+                int c = peek();
+                if (c == -1 || isWhitespace(c) || c == '/' || c == '>') {
+                    skipPast('>');
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Skip a comment after its opening "<!--". "<!-->" and "<!--->" are complete
+     * comments, so the opening dashes count towards the closing "-->".
+     */
+    private void skipComment() throws IOException {
+        int dashes = 2;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '>' && dashes >= 2) {
+                return;
+            }
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+    }
+
+    /**
+     * Skip past the next occurrence of a character
+     *
+     * @return false if the document ended first
+     */
+    private boolean skipPast(char target) throws IOException {
+        while (true) {
+            for (int i = bufferPos; i < bufferLimit; i++) {
+                if (buffer[i] == target) {
+                    bufferPos = i + 1;
+                    return true;
+                }
+            }
+            bufferPos = bufferLimit;
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (isWhitespace(peek())) {
+            read();
+        }
+    }
+
+    private int peek() throws IOException {
+        if (bufferPos == bufferLimit && !fill()) {
+            return -1;
+        }
+        return buffer[bufferPos];
+    }
+
+    private int read() throws IOException {
+        if (bufferPos == bufferLimit && !fill()) {
+            return -1;
+        }
+        return buffer[bufferPos++];
+    }
+
+    private boolean fill() throws IOException {
+        int count = reader.read(buffer, 0, buffer.length);
+        bufferPos = 0;
+        bufferLimit = Math.max(count, 0);
+        return count > 0;
+    }
+
+    /**
+     * Elements whose contents the tokenizer treats as text rather than markup
+     */
+    private static boolean isRawText(String tagName) {
+        switch (tagName) {
+            case "script":
+            case "style":
+            case "textarea":
+            case "title":
+            case "xmp":
+            case "iframe":
+            case "noembed":
+            case "noframes":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isAsciiLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
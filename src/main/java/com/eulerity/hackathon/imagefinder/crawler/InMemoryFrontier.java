@@ -0,0 +1,30 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.ArrayDeque;
+
+/**
+ * First-in first-out frontier that keeps every URL on the heap
+ */
+class InMemoryFrontier implements Frontier {
+    private final ArrayDeque<FrontierEntry> urls = new ArrayDeque<>();
+
+    @Override
+    public void add(FrontierEntry entry) {
+        urls.add(entry);
+    }
+
+    @Override
+    public FrontierEntry poll() {
+        return urls.poll();
+    }
+
+    @Override
+    public int size() {
+        return urls.size();
+    }
+
+    @Override
+    public void clear() {
+        urls.clear();
+    }
+}
@@ -0,0 +1,168 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Image and link candidates extracted from one page. The candidates are kept in
+ * the order the DOM extraction has always produced them (img tags, then style
+ * attributes, then image links; and anchors, then iframes, then forms), so every
+ * extraction mode feeds the crawler identically.
+ */
+public class PageExtract {
+    private final List<ImageCandidate> images;
+    private final List<String> links;
+
+    /**
+     * Constructor for PageExtract
+     *
+     * @param images Image candidates in discovery order
+     * @param links Absolute link URLs in discovery order
+     */
+    PageExtract(List<ImageCandidate> images, List<String> links) {
+        this.images = Collections.unmodifiableList(images);
+        this.links = Collections.unmodifiableList(links);
+    }
+
+    /**
+     * Get the image candidates
+     *
+     * @return The images, in discovery order
+     */
+    public List<ImageCandidate> getImages() {
+        return images;
+    }
+
+    /**
+     * Get the links to crawl
+     *
+     * @return The absolute link URLs, in discovery order
+     */
+    public List<String> getLinks() {
+        return links;
+    }
+
+    /**
+     * An image URL with the attributes of the img tag it came from, if any
+     */
+    public static class ImageCandidate {
+        private final String url;
+        private final String altText;
+        private final String width;
+        private final String height;
+
+        /**
+         * Constructor for ImageCandidate
+         *
+         * @param url The absolute image URL
+         * @param altText The alt attribute, empty if missing
+         * @param width The width attribute, empty if missing
+         * @param height The height attribute, empty if missing
+         */
+        ImageCandidate(String url, String altText, String width, String height) {
+            this.url = url;
+            this.altText = altText;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * @return The absolute image URL
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return The alt attribute, empty if missing
+         */
+        public String getAltText() {
+            return altText;
+        }
+
+        /**
+         * @return The width attribute, empty if missing
+         */
+        public String getWidth() {
+            return width;
+        }
+
+        /**
+         * @return The height attribute, empty if missing
+         */
+        public String getHeight() {
+            return height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ImageCandidate)) {
+                return false;
+            }
+            ImageCandidate other = (ImageCandidate) o;
+            return url.equals(other.url) && altText.equals(other.altText)
+                    && width.equals(other.width) && height.equals(other.height);
+        }
+
+        @Override
+        public int hashCode() {
+            return url.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return url + " [alt=" + altText + ", " + width + "x" + height + "]";
+        }
+    }
+
+    /**
+     * Collects candidates per category and assembles them in DOM extraction order
+     */
+    static class Builder {
+        private final List<ImageCandidate> tagImages = new ArrayList<>();
+        private final List<ImageCandidate> styleImages = new ArrayList<>();
+        private final List<ImageCandidate> linkedImages = new ArrayList<>();
+        private final List<String> anchorLinks = new ArrayList<>();
+        private final List<String> frameLinks = new ArrayList<>();
+        private final List<String> formLinks = new ArrayList<>();
+
+        void addTagImage(String url, String altText, String width, String height) {
+            tagImages.add(new ImageCandidate(url, altText, width, height));
+        }
+
+        void addStyleImage(String url) {
+            styleImages.add(new ImageCandidate(url, "", "", ""));
+        }
+
+        void addLinkedImage(String url) {
+            linkedImages.add(new ImageCandidate(url, "", "", ""));
+        }
+
+        void addAnchorLink(String url) {
+            anchorLinks.add(url);
+        }
+
+        void addFrameLink(String url) {
+            frameLinks.add(url);
+        }
+
+        void addFormLink(String url) {
+            formLinks.add(url);
+        }
+
+        PageExtract build() {
+            List<ImageCandidate> images = new ArrayList<>(
+                    tagImages.size() + styleImages.size() + linkedImages.size());
+            images.addAll(tagImages);
+            images.addAll(styleImages);
+            images.addAll(linkedImages);
+
+            List<String> links = new ArrayList<>(anchorLinks.size() + frameLinks.size() + formLinks.size());
+            links.addAll(anchorLinks);
+            links.addAll(frameLinks);
+            links.addAll(formLinks);
+            return new PageExtract(images, links);
+        }
+    }
+}
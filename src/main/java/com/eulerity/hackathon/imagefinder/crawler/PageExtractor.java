@@ -0,0 +1,433 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+/**
+ * Finds image and link candidates in a page. The rules for each kind of tag are
+ * written once against its attributes, and the extraction modes only differ in
+ * how they walk the page: {@link #fromDocument} visits each element of a parsed
+ * Jsoup DOM once, {@link #fromHtml} streams over the tags of the raw HTML.
+ * Candidates go to per-category lists so both produce them in the same order.
+ */
+class PageExtractor {
+    // Attributes commonly used by lazy-loading scripts to hold the real image
+    private static final String[] LAZY_ATTRIBUTES = {"data-original", "data-lazy-src", "data-srcset", "data-lazy"};
+
+    private final String pageUrl;
+    private final PageExtract.Builder builder = new PageExtract.Builder();
+
+    /**
+     * Constructor for PageExtractor
+     *
+     * @param pageUrl The URL the page was requested as
+     */
+    private PageExtractor(String pageUrl) {
+        this.pageUrl = pageUrl;
+    }
+
+    /**
+     * Extract candidates from a parsed document in a single traversal. Each
+     * element is classified once and every URL attribute is resolved once.
+     *
+     * @param document The HTML document
+     * @param pageUrl The URL the page was requested as
+     * @return The extracted candidates
+     */
+    static PageExtract fromDocument(Document document, String pageUrl) {
+        PageExtractor extractor = new PageExtractor(pageUrl);
+        // The parser applies the first base tag to the whole document
+        String base = document.baseUri();
+
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (node instanceof Element) {
+                    extractor.onElement(base, (Element) node);
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+                // Nothing to do when leaving an element
+            }
+        }, document);
+        return extractor.builder.build();
+    }
+
+    /**
+     * Send an element to the rules for its kind
+     */
+    private void onElement(String base, Element element) {
+        Attributes attributes = element.attributes();
+        switch (element.normalName()) {
+            case "img":
+                onImg(base, attributes);
+                break;
+            case "a":
+                if (attributes.hasKeyIgnoreCase("href")) {
+                    onAnchor(base, attributes);
+                }
+                break;
+            case "iframe":
+                if (attributes.hasKeyIgnoreCase("src")) {
+                    onFrame(base, attributes);
+                }
+                break;
+            case "form":
+                if (attributes.hasKeyIgnoreCase("action")) {
+                    onForm(base, attributes);
+                }
+                break;
+            default:
+                break;
+        }
+        if (attributes.hasKeyIgnoreCase("style")) {
+            onStyle(attributes);
+        }
+    }
+
+    /**
+     * Extract candidates in one streaming pass over the HTML, without building a DOM
+     *
+     * @param html The decoded HTML
+     * @param baseUri The final URL of the page
+     * @param pageUrl The URL the page was requested as
+     * @return The extracted candidates
+     * @throws IOException If reading the HTML fails
+     */
+    static PageExtract fromHtml(Reader html, String baseUri, String pageUrl) throws IOException {
+        StreamingHandler handler = new StreamingHandler();
+        new HtmlTagScanner(html).scan(handler);
+
+        // Like Jsoup, the first base tag applies to the whole document
+        String base = baseUri;
+        if (handler.baseHref != null) {
+            String resolved = resolve(baseUri, handler.baseHref);
+            if (!resolved.isEmpty()) {
+                base = resolved;
+            }
+        }
+
+        PageExtractor extractor = new PageExtractor(pageUrl);
+        for (Attributes img : handler.images) {
+            extractor.onImg(base, img);
+        }
+        for (Attributes styled : handler.styled) {
+            extractor.onStyle(styled);
+        }
+        for (Attributes anchor : handler.anchors) {
+            extractor.onAnchor(base, anchor);
+        }
+        for (Attributes frame : handler.frames) {
+            extractor.onFrame(base, frame);
+        }
+        for (Attributes form : handler.forms) {
+            extractor.onForm(base, form);
+        }
+        return extractor.builder.build();
+    }
+
+    /**
+     * Images of an img tag: src, lazy-loading attributes and srcset
+     */
+    private void onImg(String base, Attributes img) {
+        String alt = img.getIgnoreCase("alt");
+        String width = img.getIgnoreCase("width");
+        String height = img.getIgnoreCase("height");
+
+        String imageUrl = absUrl(base, img, "src");
+        if (!imageUrl.isEmpty()) {
+            builder.addTagImage(imageUrl, alt, width, height);
+        }
+
+        // Check for lazy-loaded images in data attributes
+        String dataSrc = img.getIgnoreCase("data-src");
+        if (!dataSrc.isEmpty()) {
+            String fullDataSrc = resolveUrl(pageUrl, dataSrc);
+            if (!fullDataSrc.isEmpty()) {
+                builder.addTagImage(fullDataSrc, alt, width, height);
+            }
+        }
+
+        // Check other common data attributes for images
+        for (String attr : LAZY_ATTRIBUTES) {
+            String attrValue = img.getIgnoreCase(attr);
+            if (!attrValue.isEmpty()) {
+                String fullAttrSrc = resolveUrl(pageUrl, attrValue);
+                if (!fullAttrSrc.isEmpty()) {
+                    builder.addTagImage(fullAttrSrc, alt, width, height);
+                }
+            }
+        }
+
+        // Check srcset attribute
+        String srcset = img.getIgnoreCase("srcset");
+        if (!srcset.isEmpty()) {
+            // Split by commas (separates different image definitions)
+            for (String part : srcset.split(",")) {
+                // Extract the URL (ignoring the descriptor)
+                String[] spaceSplit = part.trim().split("\\s+");
+                if (spaceSplit.length > 0) {
+                    String fullImageUrl = resolveUrl(pageUrl, spaceSplit[0].trim());
+                    if (!fullImageUrl.isEmpty()) {
+                        builder.addTagImage(fullImageUrl, alt, width, height);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * CSS background images (limited to style attributes for simplicity)
+     */
+    private void onStyle(Attributes element) {
+        String style = element.getIgnoreCase("style");
+        if (!style.contains("background-image")) {
+            return;
+        }
+
+        // Simple scan for the first url() in the style
+        int startIndex = style.indexOf("url(");
+        if (startIndex != -1) {
+            startIndex += 4;
+            int endIndex = style.indexOf(")", startIndex);
+            if (endIndex != -1) {
+                String url = style.substring(startIndex, endIndex).trim();
+                // Remove quotes if present
+                if ((url.startsWith("\"") && url.endsWith("\"")) ||
+                    (url.startsWith("'") && url.endsWith("'"))) {
+                    url = url.substring(1, url.length() - 1);
+                }
+                if (!url.isEmpty() && (url.startsWith("http") || url.startsWith("/") || url.startsWith("./") || url.startsWith("../"))) {
+                    // Convert relative URLs to absolute
+                    String fullUrl = resolveUrl(pageUrl, url);
+                    if (!fullUrl.isEmpty()) {
+                        builder.addStyleImage(fullUrl);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Anchors are either links to images or pages to crawl
+     */
+    private void onAnchor(String base, Attributes link) {
+        String linkUrl = absUrl(base, link, "href");
+
+        // Check if the link points to an image file
+        if (isImageUrl(linkUrl)) {
+            builder.addLinkedImage(linkUrl);
+            return;
+        }
+
+        // Skip empty links, javascript:, mailto:, tel:, etc.
+        if (linkUrl.isEmpty() || linkUrl.startsWith("javascript:") ||
+            linkUrl.startsWith("mailto:") || linkUrl.startsWith("tel:") ||
+            linkUrl.startsWith("#")) {
+            return;
+        }
+        builder.addAnchorLink(linkUrl);
+    }
+
+    /**
+     * Iframe sources are crawled like links
+     */
+    private void onFrame(String base, Attributes iframe) {
+        String srcUrl = absUrl(base, iframe, "src");
+        if (!srcUrl.isEmpty()) {
+            builder.addFrameLink(srcUrl);
+        }
+    }
+
+    /**
+     * Form actions are crawled like links
+     */
+    private void onForm(String base, Attributes form) {
+        String actionUrl = absUrl(base, form, "action");
+        if (!actionUrl.isEmpty()) {
+            builder.addFormLink(actionUrl);
+        }
+    }
+
+    /**
+     * Resolve an attribute against the base URI, like Jsoup's Element.absUrl
+     *
+     * @return The absolute URL, or empty if the attribute is missing or invalid
+     */
+    private static String absUrl(String base, Attributes attributes, String key) {
+        if (!attributes.hasKeyIgnoreCase(key)) {
+            return "";
+        }
+        return resolve(base, attributes.getIgnoreCase(key));
+    }
+
+    /**
+     * Resolve a URL against a base URI the way Jsoup resolves absUrl and base
+     * tags, so both extraction modes match what the parser does with the DOM
+     *
+     * @param baseUri The base URI
+     * @param relativeUrl The URL to resolve, relative or absolute
+     * @return The absolute URL, or empty if it cannot be resolved
+     */
+    static String resolve(String baseUri, String relativeUrl) {
+        try {
+            URL base;
+            try {
+                base = new URL(baseUri);
+            } catch (MalformedURLException e) {
+                // The URL may still be absolute on its own
+                return new URL(relativeUrl).toExternalForm();
+            }
+            // java.net.URL resolves "?q" against "/dir/page" to "/dir/?q"
+            if (relativeUrl.startsWith("?")) {
+                relativeUrl = base.getPath() + relativeUrl;
+            }
+            // and "./page" against "http://host" to "http://host/./page"
+            if (relativeUrl.indexOf('.') == 0 && base.getFile().indexOf('/') != 0) {
+                base = new URL(base.getProtocol(), base.getHost(), base.getPort(), "/" + base.getFile());
+            }
+            return new URL(base, relativeUrl).toExternalForm();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Resolve a relative URL against a base URL
+     *
+     * @param baseUrl The base URL
+     * @param relativeUrl The relative URL
+     * @return The resolved URL or empty string if invalid
+     */
+    static String resolveUrl(String baseUrl, String relativeUrl) {
+        if (relativeUrl == null || relativeUrl.isEmpty()) {
+            return "";
+        }
+
+        // Already absolute
+        if (relativeUrl.startsWith("http")) {
+            return relativeUrl;
+        }
+
+        try {
+            URL base = new URL(baseUrl);
+            URL resolved = new URL(base, relativeUrl);
+            return resolved.toString();
+        } catch (MalformedURLException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Check if a URL points to an image file
+     *
+     * @param url The URL to check
+     * @return true if it's an image URL, false otherwise
+     */
+    static boolean isImageUrl(String url) {
+        if (url == null || url.isEmpty()) {
+            return false;
+        }
+
+        String lowerUrl = url.toLowerCase();
+        return lowerUrl.endsWith(".jpg") ||
+               lowerUrl.endsWith(".jpeg") ||
+               lowerUrl.endsWith(".png") ||
+               lowerUrl.endsWith(".gif") ||
+               lowerUrl.endsWith(".webp") ||
+               lowerUrl.endsWith(".svg") ||
+               lowerUrl.endsWith(".bmp") ||
+               lowerUrl.endsWith(".ico");
+    }
+
+    /**
+     * Collects the tags the DOM extraction selects, in document order. Like
+     * Jsoup's tree builder, it treats "image" as an alias for img and ignores a
+     * form tag inside an open form.
+     */
+    private static class StreamingHandler implements HtmlTagScanner.TagHandler {
+        private final List<Attributes> images = new ArrayList<>();
+        private final List<Attributes> styled = new ArrayList<>();
+        private final List<Attributes> anchors = new ArrayList<>();
+        private final List<Attributes> frames = new ArrayList<>();
+        private final List<Attributes> forms = new ArrayList<>();
+        private String baseHref;
+        private boolean inForm;
+
+        @Override
+        public boolean wantsAttributes(String tagName) {
+            switch (tagName) {
+                case "img":
+                case "image":
+                case "a":
+                case "iframe":
+                case "form":
+                case "base":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void onStartTag(String tagName, Attributes attributes) {
+            if (tagName.equals("form")) {
+                if (inForm) {
+                    return;
+                }
+                inForm = true;
+            }
+            switch (tagName) {
+                case "img":
+                case "image":
+                    images.add(attributes);
+                    break;
+                case "a":
+                    if (attributes.hasKey("href")) {
+                        anchors.add(attributes);
+                    }
+                    break;
+                case "iframe":
+                    if (attributes.hasKey("src")) {
+                        frames.add(attributes);
+                    }
+                    break;
+                case "form":
+                    if (attributes.hasKey("action")) {
+                        forms.add(attributes);
+                    }
+                    break;
+                case "base":
+                    if (baseHref == null && attributes.hasKey("href")) {
+                        baseHref = attributes.get("href");
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (attributes.hasKey("style")) {
+                styled.add(attributes);
+            }
+        }
+
+        @Override
+        public void onEndTag(String tagName) {
+            if (tagName.equals("form")) {
+                inForm = false;
+            }
+        }
+    }
+}
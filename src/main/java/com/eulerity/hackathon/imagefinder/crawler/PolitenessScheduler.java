@@ -0,0 +1,502 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Crawl frontier that enforces a minimum delay between fetches to the same host.
+ * URLs are grouped into per-host queues, and a host is only handed out once its
+ * next allowed fetch time has passed. Workers never sleep between pages: they
+ * either get a URL for an eligible host or are told how long until the earliest
+ * host becomes eligible. Fetches of URLs that are not in the frontier, such as
+ * sitemaps, take their turn with {@link #reserveFetch}.
+ *
+ * Each host's URLs are kept in a {@link Frontier} made by a factory, so a crawl
+ * too large for the heap can spill them to disk, or a host's URLs can be handed
+ * out by priority instead of in the order they were found.
+ *
+ * With adaptive concurrency enabled, each host also gets an
+ * {@link AdaptiveConcurrencyLimit}. A host with as many fetches in flight as its
+ * limit allows is parked until one of them is released. The limit is fed by
+ * {@link #recordResponse} and {@link #recordTimeout}, and a Retry-After header
+ * holds back the host's next fetch.
+ *
+ * Every host also has a {@link CircuitBreaker} fed by the same calls. While a
+ * host's circuit is open none of its URLs are handed out, and after that only
+ * one trial URL until the host has answered. The URLs of a host whose circuit
+ * keeps reopening are dropped.
+ */
+public class PolitenessScheduler {
+    private static final int MAX_JITTER_MS = 200;
+
+    private final ToIntFunction<String> crawlDelayForHost;
+    private final LongSupplier clock;
+    private Supplier<Frontier> frontierFactory = InMemoryFrontier::new;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final DelayQueue<HostQueue> readyHosts = new DelayQueue<>();
+    private final Random random = new Random();
+    private int size;
+    private long nextSequence;
+    private int maxConcurrencyPerHost;
+
+    /**
+     * Constructor for PolitenessScheduler
+     * 
+     * @param crawlDelayForHost Returns the crawl delay in milliseconds for a host
+     */
+    public PolitenessScheduler(ToIntFunction<String> crawlDelayForHost) {
+        this(crawlDelayForHost, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor for PolitenessScheduler with its own clock, for tests
+     * 
+     * @param crawlDelayForHost Returns the crawl delay in milliseconds for a host
+     * @param clock Returns the current time in milliseconds
+     */
+    PolitenessScheduler(ToIntFunction<String> crawlDelayForHost, LongSupplier clock) {
+        this.crawlDelayForHost = crawlDelayForHost;
+        this.clock = clock;
+    }
+
+    /**
+     * Set how the URL queue of each host is created. Applies to hosts added after
+     * the next {@link #clear()}.
+     * 
+     * @param frontierFactory Creates an empty frontier for a host
+     */
+    public synchronized void setFrontierFactory(Supplier<Frontier> frontierFactory) {
+        this.frontierFactory = frontierFactory;
+    }
+
+    /**
+     * Limit the concurrent fetches to each host with an adaptive limit. Applies
+     * to hosts added after the next {@link #clear()}.
+     * 
+     * @param maxConcurrencyPerHost The highest the limit of a host may grow, or 0
+     *        to leave concurrency to the caller
+     */
+    public synchronized void setAdaptiveConcurrency(int maxConcurrencyPerHost) {
+        this.maxConcurrencyPerHost = maxConcurrencyPerHost;
+    }
+
+    /**
+     * Add a URL to the frontier at the seed's depth, without a score
+     * 
+     * @param url The URL to add
+     */
+    public void add(String url) {
+        add(url, 0, 0);
+    }
+
+    /**
+     * Add a URL to the frontier
+     * 
+     * @param url The URL to add
+     * @param depth Number of links followed from the seed URL to reach it
+     * @param score How likely the page is to have images, see {@link FrontierOrder#score}
+     */
+    public synchronized void add(String url, int depth, double score) {
+        HostQueue hostQueue = getOrAddHost(extractHost(url));
+        if (hostQueue.breaker.isExhausted()) {
+            return;
+        }
+        hostQueue.urls.add(new FrontierEntry(url, depth, score, nextSequence++));
+        size++;
+        
+        // An idle host becomes eligible again at its next allowed fetch time
+        if (!hostQueue.scheduled) {
+            hostQueue.scheduled = true;
+            readyHosts.add(hostQueue);
+        }
+    }
+
+    /**
+     * Get the queue of a host, creating it on first use
+     * 
+     * @param host The host
+     * @return The host's queue
+     */
+    private HostQueue getOrAddHost(String host) {
+        HostQueue hostQueue = hosts.get(host);
+        if (hostQueue == null) {
+            hostQueue = new HostQueue(host, frontierFactory.get(), clock);
+            if (maxConcurrencyPerHost > 0) {
+                hostQueue.concurrency = new AdaptiveConcurrencyLimit(maxConcurrencyPerHost);
+            }
+            hosts.put(host, hostQueue);
+        }
+        return hostQueue;
+    }
+
+    /**
+     * Fit a fetch of a URL that is not in the frontier, such as a sitemap, into
+     * the schedule of its host. The fetch takes the host's next slot, and the
+     * host's pages wait the crawl delay after it. The response should be fed to
+     * {@link #recordResponse} like any other.
+     * 
+     * @param url The URL about to be fetched
+     * @return How long to wait before fetching in milliseconds, or -1 if the
+     *         host's circuit is open
+     */
+    public synchronized long reserveFetch(String url) {
+        HostQueue hostQueue = getOrAddHost(extractHost(url));
+        if (hostQueue.breaker.getState() == CircuitBreaker.State.OPEN) {
+            return -1;
+        }
+        long now = clock.getAsLong();
+        long fetchAt = Math.max(now, hostQueue.nextFetchAt);
+        delayHost(hostQueue, fetchAt + nextDelay(hostQueue) - now);
+        return fetchAt - now;
+    }
+
+    /**
+     * Take the next URL whose host may be fetched now, without waiting
+     * 
+     * @return The next URL, or null if no host is eligible yet
+     */
+    public FrontierEntry poll() {
+        while (true) {
+            HostQueue hostQueue = readyHosts.poll();
+            if (hostQueue == null) {
+                return null;
+            }
+            FrontierEntry entry = take(hostQueue);
+            if (entry != null) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Take a URL from a host that has just become eligible and reschedule the host.
+     * A host at its concurrency limit is parked until a fetch is released.
+     * 
+     * @param hostQueue The eligible host
+     * @return The URL, or null if the host is at its concurrency limit
+     */
+    private FrontierEntry take(HostQueue hostQueue) {
+        synchronized (this) {
+            // The URLs of a host that was given up on have been dropped
+            if (hostQueue.urls.isEmpty()) {
+                hostQueue.scheduled = false;
+                return null;
+            }
+            long now = clock.getAsLong();
+            if (!hostQueue.breaker.canDispatch(now)) {
+                if (hostQueue.breaker.getState() == CircuitBreaker.State.OPEN) {
+                    // Come back when the open period is over
+                    hostQueue.nextFetchAt = Math.max(hostQueue.nextFetchAt, hostQueue.breaker.getOpenUntil());
+                    readyHosts.add(hostQueue);
+                } else {
+                    // Wait for the trial to finish
+                    hostQueue.parked = true;
+                }
+                return null;
+            }
+            if (hostQueue.concurrency != null && !hostQueue.concurrency.tryAcquire()) {
+                hostQueue.parked = true;
+                return null;
+            }
+            
+            FrontierEntry entry = hostQueue.urls.poll();
+            size--;
+            hostQueue.breaker.onDispatch(entry.getUrl());
+            
+            // Reserve the host's next slot before anyone fetches from it
+            hostQueue.nextFetchAt = now + nextDelay(hostQueue);
+            
+            if (hostQueue.urls.isEmpty()) {
+                hostQueue.scheduled = false;
+            } else {
+                readyHosts.add(hostQueue);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Get the time between two fetches of a host, with a small random jitter to
+     * be more natural
+     * 
+     * @param hostQueue The host
+     * @return The delay in milliseconds
+     */
+    private int nextDelay(HostQueue hostQueue) {
+        int delay = crawlDelayForHost.applyAsInt(hostQueue.host);
+        if (delay > 0) {
+            delay += random.nextInt(MAX_JITTER_MS);
+        }
+        return delay;
+    }
+
+    /**
+     * Release the concurrency slot taken when a URL was handed out, once its
+     * fetch is over
+     * 
+     * @param url The URL of the entry returned by {@link #poll()}
+     */
+    public synchronized void release(String url) {
+        HostQueue hostQueue = hosts.get(extractHost(url));
+        if (hostQueue == null) {
+            return;
+        }
+        hostQueue.breaker.release(url);
+        if (hostQueue.concurrency != null) {
+            hostQueue.concurrency.release();
+        }
+        if (hostQueue.parked) {
+            hostQueue.parked = false;
+            readyHosts.add(hostQueue);
+        }
+    }
+
+    /**
+     * Check whether a request to a host may be sent, so that fetches in progress
+     * fail fast once the host's circuit has opened
+     * 
+     * @param url The URL about to be requested
+     * @return false if the host's circuit is open
+     */
+    public synchronized boolean allowRequest(String url) {
+        HostQueue hostQueue = hosts.get(extractHost(url));
+        return hostQueue == null || hostQueue.breaker.allowRequest();
+    }
+
+    /**
+     * Feed a response to the concurrency limit and circuit breaker of its host.
+     * 429, 502, 503 and 504 responses and Retry-After headers cut the limit, and
+     * Retry-After also holds back the host's next fetch. 5xx responses count as
+     * failures for the circuit breaker.
+     * 
+     * @param url The URL that was requested
+     * @param startedAt When the request was sent, in milliseconds
+     * @param statusCode The HTTP status code
+     * @param retryAfterMs The Retry-After delay in milliseconds, or 0 if none
+     */
+    public synchronized void recordResponse(String url, long startedAt, int statusCode, long retryAfterMs) {
+        HostQueue hostQueue = hosts.get(extractHost(url));
+        if (hostQueue == null) {
+            return;
+        }
+        if (retryAfterMs > 0) {
+            delayHost(hostQueue, retryAfterMs);
+        }
+        if (statusCode >= 500) {
+            recordFailure(hostQueue, url);
+        } else {
+            hostQueue.breaker.onSuccess(url);
+        }
+        if (hostQueue.concurrency == null) {
+            return;
+        }
+        long now = clock.getAsLong();
+        if (retryAfterMs > 0 || isOverloadStatus(statusCode)) {
+            hostQueue.concurrency.onOverload(startedAt, now);
+        } else {
+            hostQueue.concurrency.onSuccess(startedAt, now - startedAt);
+        }
+    }
+
+    /**
+     * Feed a timed out request to the concurrency limit and circuit breaker of
+     * its host
+     * 
+     * @param url The URL that was requested
+     * @param startedAt When the request was sent, in milliseconds
+     */
+    public synchronized void recordTimeout(String url, long startedAt) {
+        HostQueue hostQueue = hosts.get(extractHost(url));
+        if (hostQueue == null) {
+            return;
+        }
+        recordFailure(hostQueue, url);
+        if (hostQueue.concurrency != null) {
+            hostQueue.concurrency.onOverload(startedAt, clock.getAsLong());
+        }
+    }
+
+    /**
+     * Feed a request that failed without a response, such as a refused
+     * connection, to the circuit breaker of its host
+     * 
+     * @param url The URL that was requested
+     */
+    public synchronized void recordFailure(String url) {
+        HostQueue hostQueue = hosts.get(extractHost(url));
+        if (hostQueue != null) {
+            recordFailure(hostQueue, url);
+        }
+    }
+
+    /**
+     * Count a failure against a host and hold back its URLs if the circuit opens
+     * 
+     * @param hostQueue The host
+     * @param url The URL that was requested
+     */
+    private void recordFailure(HostQueue hostQueue, String url) {
+        long now = clock.getAsLong();
+        if (!hostQueue.breaker.onFailure(url, now)) {
+            return;
+        }
+        if (hostQueue.breaker.isExhausted()) {
+            System.out.println("Giving up on host " + hostQueue.host + ", dropping "
+                    + hostQueue.urls.size() + " queued URLs");
+            size -= hostQueue.urls.size();
+            hostQueue.urls.clear();
+            return;
+        }
+        System.out.println("Circuit opened for host " + hostQueue.host + " for "
+                + (hostQueue.breaker.getOpenUntil() - now) + " ms");
+        delayHost(hostQueue, hostQueue.breaker.getOpenUntil() - now);
+    }
+
+    /**
+     * Get the state of a host's circuit breaker
+     * 
+     * @param url Any URL of the host
+     * @return The state name, or null if the host has not been queued
+     */
+    public synchronized String getCircuitState(String url) {
+        HostQueue hostQueue = hosts.get(extractHost(url));
+        return hostQueue != null ? hostQueue.breaker.getState().name() : null;
+    }
+
+    /**
+     * Get the concurrency limit of a host
+     * 
+     * @param url Any URL of the host
+     * @return The number of concurrent fetches allowed, or 0 if it is not limited
+     */
+    public synchronized int getConcurrencyLimit(String url) {
+        HostQueue hostQueue = hosts.get(extractHost(url));
+        return hostQueue != null && hostQueue.concurrency != null ? hostQueue.concurrency.getLimit() : 0;
+    }
+
+    /**
+     * Push back the next fetch time of a host
+     * 
+     * @param hostQueue The host
+     * @param delayMs How long to wait from now
+     */
+    private void delayHost(HostQueue hostQueue, long delayMs) {
+        long notBefore = clock.getAsLong() + delayMs;
+        if (notBefore <= hostQueue.nextFetchAt) {
+            return;
+        }
+        // The delay queue orders hosts when they are added, so move it
+        boolean queued = readyHosts.remove(hostQueue);
+        hostQueue.nextFetchAt = notBefore;
+        if (queued) {
+            readyHosts.add(hostQueue);
+        }
+    }
+
+    /**
+     * Check whether a status code means the server is overloaded
+     * 
+     * @param statusCode The HTTP status code
+     * @return true for 429, 502, 503 and 504
+     */
+    static boolean isOverloadStatus(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Get how long until the next host becomes eligible. Hosts at their
+     * concurrency limit or waiting for a trial are not counted, they become
+     * eligible when a fetch is released.
+     * 
+     * @return The delay in milliseconds, 0 if a host is eligible now, or
+     *         Long.MAX_VALUE if no host is waiting for its next fetch time
+     */
+    public long getNextReadyDelayMs() {
+        HostQueue next = readyHosts.peek();
+        return next == null ? Long.MAX_VALUE : Math.max(0, next.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @return true if no URLs are waiting to be fetched
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The number of URLs waiting to be fetched
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Remove all URLs and forget all host timings
+     */
+    public synchronized void clear() {
+        for (HostQueue hostQueue : hosts.values()) {
+            hostQueue.urls.clear();
+        }
+        hosts.clear();
+        readyHosts.clear();
+        size = 0;
+    }
+
+    /**
+     * Extract the host part of an absolute URL without parsing it fully
+     * 
+     * @param url The URL
+     * @return The host, with any "www." prefix removed
+     */
+    static String extractHost(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == ':' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        String host = url.substring(start, end);
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    /**
+     * URLs waiting for a single host, ordered by the host's next allowed fetch time
+     */
+    private static class HostQueue implements Delayed {
+        private final String host;
+        private final Frontier urls;
+        private final LongSupplier clock;
+        private long nextFetchAt;
+        private boolean scheduled;
+        private boolean parked;
+        private AdaptiveConcurrencyLimit concurrency;
+        private final CircuitBreaker breaker = new CircuitBreaker();
+
+        HostQueue(String host, Frontier urls, LongSupplier clock) {
+            this.host = host;
+            this.urls = urls;
+            this.clock = clock;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextFetchAt - clock.getAsLong(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(nextFetchAt, ((HostQueue) other).nextFetchAt);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Frontier that hands out URLs in the order of a comparator, such as
+ * {@link FrontierOrder#DEPTH_AND_SCORE}
+ */
+class PriorityFrontier implements Frontier {
+    private final PriorityQueue<FrontierEntry> entries;
+
+    /**
+     * Constructor for PriorityFrontier
+     *
+     * @param order Orders the URLs, the smallest is handed out first
+     */
+    PriorityFrontier(Comparator<FrontierEntry> order) {
+        this.entries = new PriorityQueue<>(order);
+    }
+
+    @Override
+    public void add(FrontierEntry entry) {
+        entries.add(entry);
+    }
+
+    @Override
+    public FrontierEntry poll() {
+        return entries.poll();
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+}
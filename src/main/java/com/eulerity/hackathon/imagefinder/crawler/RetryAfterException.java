@@ -0,0 +1,32 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import org.jsoup.HttpStatusException;
+
+/**
+ * An HTTP error response that told the crawler how long to wait with a
+ * Retry-After header
+ */
+class RetryAfterException extends HttpStatusException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMs;
+
+    /**
+     * Constructor for RetryAfterException
+     *
+     * @param statusCode The HTTP status code
+     * @param url The URL that was requested
+     * @param retryAfterMs The delay the server asked for, in milliseconds
+     */
+    RetryAfterException(int statusCode, String url, long retryAfterMs) {
+        super("HTTP error fetching URL", statusCode, url);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * @return The delay the server asked for, in milliseconds
+     */
+    long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -0,0 +1,268 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Allow/Disallow rules of one robots.txt group, compiled once when the file is
+ * parsed. Plain prefix rules are stored in a character trie so a lookup walks the
+ * path once, and rules containing '*' or a trailing '$' are precompiled into
+ * anchored regex patterns.
+ *
+ * Precedence follows RFC 9309: the matching rule with the longest pattern wins,
+ * and Allow wins when an Allow and a Disallow rule are equally long. Patterns and
+ * paths are compared after normalizing their percent-encoding the same way, so
+ * "/caf%C3%A9" and "/café" are the same path.
+ */
+class RobotsRuleMatcher {
+    // No rule matched
+    private static final int NO_MATCH = -1;
+
+    private final TrieNode root = new TrieNode();
+    private final List<WildcardRule> wildcardRules = new ArrayList<>();
+
+    /**
+     * Add a rule to the matcher
+     *
+     * @param pattern The path pattern from robots.txt
+     * @param allow true for an Allow rule, false for Disallow
+     */
+    void addRule(String pattern, boolean allow) {
+        if (pattern.isEmpty()) {
+            return;
+        }
+
+        boolean anchored = pattern.endsWith("$");
+        String body = normalize(anchored ? pattern.substring(0, pattern.length() - 1) : pattern, true);
+
+        if (body.indexOf('*') < 0) {
+            // Literal rule: the trie node at the end of the pattern holds the verdict
+            TrieNode node = root;
+            for (int i = 0; i < body.length(); i++) {
+                node = node.childOrCreate(body.charAt(i));
+            }
+            if (anchored) {
+                node.exactRule = merge(node.exactRule, allow);
+            } else {
+                node.prefixRule = merge(node.prefixRule, allow);
+            }
+        } else {
+            // Lengths are compared in octets of the normalized pattern, like the trie depth
+            wildcardRules.add(new WildcardRule(compile(body, anchored), body.length() + (anchored ? 1 : 0), allow));
+        }
+    }
+
+    /**
+     * Sort the wildcard rules so lookups can stop at the first rule that is too
+     * short to beat the best trie match. Called once after all rules are added.
+     */
+    void compact() {
+        wildcardRules.sort((a, b) -> b.length != a.length
+                ? Integer.compare(b.length, a.length)
+                : Boolean.compare(b.allow, a.allow));
+    }
+
+    /**
+     * Check whether a path (including its query) may be crawled
+     *
+     * @param rawPath The URL path and query to check
+     * @return true if allowed, false otherwise
+     */
+    boolean isAllowed(String rawPath) {
+        String path = normalize(rawPath, false);
+        int bestLength = NO_MATCH;
+        boolean bestAllow = true;
+
+        // Walk the trie along the path; deeper matches are longer patterns
+        TrieNode node = root;
+        int length = path.length();
+        if (length == 0 && root.exactRule != null) {
+            // A bare "$" only matches the empty path
+            bestLength = 1;
+            bestAllow = root.exactRule;
+        }
+        for (int i = 0; i < length && node != null; i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.prefixRule != null) {
+                bestLength = i + 1;
+                bestAllow = node.prefixRule;
+            }
+            if (i == length - 1 && node.exactRule != null) {
+                // "/foo$" is one octet longer than "/foo" and wins over it
+                bestLength = i + 2;
+                bestAllow = node.exactRule;
+            }
+        }
+
+        for (WildcardRule rule : wildcardRules) {
+            // Sorted longest first, so nothing after this rule can win
+            if (rule.length < bestLength || (rule.length == bestLength && (bestAllow || !rule.allow))) {
+                break;
+            }
+            if (rule.pattern.matcher(path).lookingAt()) {
+                bestLength = rule.length;
+                bestAllow = rule.allow;
+                break;
+            }
+        }
+
+        return bestLength == NO_MATCH || bestAllow;
+    }
+
+    /**
+     * Combine two rules with the same pattern; Allow wins the tie
+     */
+    private static Boolean merge(Boolean existing, boolean allow) {
+        return existing == null ? allow : existing || allow;
+    }
+
+    /**
+     * Normalize the percent-encoding of a path or pattern as RFC 9309 asks before
+     * they are compared: characters outside ASCII are UTF-8 encoded, escapes use
+     * upper case hex digits, and escaped unreserved characters are decoded. A '*'
+     * or '$' in a path, or a '$' inside a pattern, is a literal character and is
+     * escaped, so that it matches "%2A" or "%24" in a pattern.
+     *
+     * @param text The path or pattern, without a pattern's trailing '$'
+     * @param pattern true if '*' is a wildcard
+     * @return The normalized text
+     */
+    static String normalize(String text, boolean pattern) {
+        int length = text.length();
+        int i = 0;
+        while (i < length && isKeptAsIs(text.charAt(i), pattern)) {
+            i++;
+        }
+        if (i == length) {
+            return text; // Nearly every path takes this branch
+        }
+
+        StringBuilder normalized = new StringBuilder(length + 16).append(text, 0, i);
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isKeptAsIs(c, pattern)) {
+                normalized.append(c);
+                i++;
+            } else if (c == '%') {
+                int high = i + 2 < length ? Character.digit(text.charAt(i + 1), 16) : -1;
+                int low = high >= 0 ? Character.digit(text.charAt(i + 2), 16) : -1;
+                if (low < 0) {
+                    normalized.append(c); // Not an escape, compared as is
+                    i++;
+                    continue;
+                }
+                int octet = high * 16 + low;
+                if (isUnreserved(octet)) {
+                    normalized.append((char) octet);
+                } else {
+                    appendEscape(normalized, octet);
+                }
+                i += 3;
+            } else if (c < 0x80) {
+                appendEscape(normalized, c); // '*' in a path, or '$'
+                i++;
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < length ? i + 2 : i + 1;
+                for (byte octet : text.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    appendEscape(normalized, octet & 0xff);
+                }
+                i = end;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static boolean isKeptAsIs(char c, boolean pattern) {
+        return c < 0x80 && c != '%' && c != '$' && (pattern || c != '*');
+    }
+
+    private static boolean isUnreserved(int octet) {
+        return (octet >= 'a' && octet <= 'z') || (octet >= 'A' && octet <= 'Z') || (octet >= '0' && octet <= '9')
+                || octet == '-' || octet == '.' || octet == '_' || octet == '~';
+    }
+
+    private static void appendEscape(StringBuilder builder, int octet) {
+        builder.append('%').append(Character.toUpperCase(Character.forDigit(octet >> 4, 16)))
+                .append(Character.toUpperCase(Character.forDigit(octet & 0xf, 16)));
+    }
+
+    /**
+     * Translate a robots.txt pattern into an anchored regex
+     *
+     * @param body The normalized pattern without its trailing '$'
+     * @param anchored Whether the pattern must match the end of the path
+     * @return The compiled pattern
+     */
+    private static Pattern compile(String body, boolean anchored) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        int star;
+        while ((star = body.indexOf('*', start)) >= 0) {
+            if (star > start) {
+                regex.append(Pattern.quote(body.substring(start, star)));
+            }
+            regex.append(".*");
+            start = star + 1;
+        }
+        if (start < body.length()) {
+            regex.append(Pattern.quote(body.substring(start)));
+        }
+        if (anchored) {
+            regex.append('$');
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * Trie node keyed by character. Children are kept in small parallel arrays
+     * since robots.txt paths branch very little.
+     */
+    private static class TrieNode {
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private Boolean prefixRule;
+        private Boolean exactRule;
+
+        TrieNode child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        TrieNode childOrCreate(char c) {
+            TrieNode child = child(c);
+            if (child == null) {
+                child = new TrieNode();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                keys[keys.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    /**
+     * A rule containing wildcards, with the length of its original pattern
+     */
+    private static class WildcardRule {
+        private final Pattern pattern;
+        private final int length;
+        private final boolean allow;
+
+        WildcardRule(Pattern pattern, int length, boolean allow) {
+            this.pattern = pattern;
+            this.length = length;
+            this.allow = allow;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Node-wide cache of parsed robots.txt files, keyed by scheme, host and port.
+ * Crawls of a site that was crawled recently reuse the parsed rules without
+ * any network round trip, and concurrent crawls of a new site share a single
+ * fetch.
+ *
+ * Entries live as long as the response's Cache-Control max-age says, capped at
+ * 24 hours as RFC 9309 recommends. A 4xx response means there are no rules and
+ * is cached like a normal file. Network errors and 5xx responses are cached
+ * briefly so that a flaky server is retried soon.
+ */
+public class RobotsTxtCache {
+    private static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(24);
+    private static final long MIN_TTL_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long ERROR_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_ENTRIES = Integer.getInteger("imagefinder.robots.maxEntries", 10000);
+
+    // RFC 9309 lets crawlers stop reading after 500 KiB
+    private static final int MAX_ROBOTS_SIZE = 500 * 1024;
+    private static final int TIMEOUT_MS = 5000;
+    private static final String USER_AGENT = "Eulerity-Crawler";
+    private static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+    private static final RobotsTxtCache INSTANCE = new RobotsTxtCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ExecutorService fetchExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "robots-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Get the node-wide robots.txt cache
+     *
+     * @return The shared cache
+     */
+    public static RobotsTxtCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the robots.txt rules for a domain, fetching them in the background if
+     * they are not cached or have expired. Concurrent callers for the same domain
+     * share one fetch.
+     *
+     * @param domain Scheme, host and optional port, e.g. "https://example.com"
+     * @return Future completed with the parsed rules; never completes exceptionally
+     */
+    public CompletableFuture<RobotsTxtParser> getAsync(String domain) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.compute(domain, (key, existing) -> {
+            if (existing != null && (!existing.rules.isDone() || existing.expiresAt > now)) {
+                return existing;
+            }
+            Entry fresh = new Entry();
+            fetchExecutor.execute(() -> fetch(key, fresh));
+            return fresh;
+        });
+
+        if (entries.size() > MAX_ENTRIES) {
+            pruneExpired(now);
+        }
+        return entry.rules;
+    }
+
+    /**
+     * Drop every cached entry
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return Number of cached domains, including fetches in progress
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Fetch robots.txt and complete the entry with the parsed rules
+     *
+     * @param domain The domain to fetch robots.txt for
+     * @param entry The entry to complete
+     */
+    private void fetch(String domain, Entry entry) {
+        RobotsTxtParser rules;
+        long ttl;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(domain + "/robots.txt").openConnection();
+            connection.setRequestMethod("GET");
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+
+            try {
+                int responseCode = connection.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    rules = new RobotsTxtParser(domain, readBody(connection));
+                    ttl = getTtl(connection);
+                } else if (responseCode >= 400 && responseCode < 500) {
+                    // No robots.txt: everything is allowed, and that is worth caching too
+                    rules = RobotsTxtParser.allowAll(domain);
+                    ttl = getTtl(connection);
+                } else {
+                    // Server error, assume everything is allowed but ask again soon
+                    System.out.println("Could not fetch robots.txt: HTTP " + responseCode);
+                    rules = RobotsTxtParser.allowAll(domain);
+                    ttl = ERROR_TTL_MS;
+                }
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException | RuntimeException e) {
+            // If robots.txt can't be fetched, assume everything is allowed
+            System.out.println("Could not fetch robots.txt: " + e.getMessage());
+            rules = RobotsTxtParser.allowAll(domain);
+            ttl = ERROR_TTL_MS;
+        }
+
+        entry.expiresAt = System.currentTimeMillis() + ttl;
+        entry.rules.complete(rules);
+    }
+
+    /**
+     * Read the response body, up to MAX_ROBOTS_SIZE bytes
+     *
+     * @param connection The open connection
+     * @return The body as text
+     * @throws IOException If reading fails
+     */
+    private static String readBody(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while (out.size() < MAX_ROBOTS_SIZE && (read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, Math.min(read, MAX_ROBOTS_SIZE - out.size()));
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Work out how long a response may be cached from its Cache-Control or
+     * Expires header
+     *
+     * @param connection The connection with the response headers
+     * @return Time to live in milliseconds
+     */
+    private static long getTtl(HttpURLConnection connection) {
+        long ttl = DEFAULT_TTL_MS;
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            Matcher matcher = MAX_AGE.matcher(cacheControl.toLowerCase());
+            if (matcher.find()) {
+                try {
+                    ttl = TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1)));
+                } catch (NumberFormatException e) {
+                    // Absurdly large max-age, keep the default
+                }
+            } else if (cacheControl.toLowerCase().contains("no-cache")
+                    || cacheControl.toLowerCase().contains("no-store")) {
+                ttl = MIN_TTL_MS;
+            }
+        } else if (connection.getExpiration() > 0) {
+            ttl = connection.getExpiration() - System.currentTimeMillis();
+        }
+        return Math.max(MIN_TTL_MS, Math.min(DEFAULT_TTL_MS, ttl));
+    }
+
+    /**
+     * Remove expired entries once the cache has grown past MAX_ENTRIES
+     *
+     * @param now The current time
+     */
+    private void pruneExpired(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.rules.isDone() && entry.expiresAt <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * A cached or in-progress robots.txt fetch
+     */
+    private static class Entry {
+        private final CompletableFuture<RobotsTxtParser> rules = new CompletableFuture<>();
+        private volatile long expiresAt;
+    }
+}
@@ -2,133 +2,212 @@ package com.eulerity.hackathon.imagefinder.crawler;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
 
 /**
  * Parser for robots.txt files to ensure the crawler is "friendly"
  * and respects the website's crawling policies.
+ *
+ * Groups are selected as described in RFC 9309: the rules of every group naming
+ * this crawler are combined, and the "*" groups are only used when no group
+ * names it. Rules are compiled into a {@link RobotsRuleMatcher} once, so checking
+ * a URL does not build any regular expressions. Sitemap lines do not belong to
+ * any group and are collected wherever they appear.
  */
 public class RobotsTxtParser {
     private static final String USER_AGENT = "Eulerity-Crawler";
     private static final String WILDCARD_USER_AGENT = "*";
     
     private final String domain;
-    private final Map<String, List<String>> disallowedPaths;
-    private final Map<String, List<String>> allowedPaths;
-    private final Map<String, Integer> crawlDelays;
-    private boolean fetchFailed = false;
+    private final List<Group> groups;
+    private final List<String> sitemaps = new ArrayList<>();
+    private RobotsRuleMatcher matcher;
+    private int crawlDelay = -1;
+    private boolean allowAll = false;
     
     /**
-     * Constructor - fetches and parses robots.txt for the given domain
+     * Constructor - parses robots.txt content that has already been fetched.
+     * Use {@link RobotsTxtCache} to get the rules for a live site.
      * 
-     * @param domain The domain to parse robots.txt for
+     * @param domain The domain the robots.txt belongs to
+     * @param content The robots.txt content
      */
-    public RobotsTxtParser(String domain) {
+    public RobotsTxtParser(String domain, String content) {
         this.domain = domain;
-        this.disallowedPaths = new HashMap<>();
-        this.allowedPaths = new HashMap<>();
-        this.crawlDelays = new HashMap<>();
+        this.groups = new ArrayList<>();
         
         try {
-            fetchAndParseRobotsTxt();
+            parse(new BufferedReader(new StringReader(content)));
         } catch (IOException e) {
-            // If robots.txt doesn't exist or can't be fetched, assume everything is allowed
-            System.out.println("Could not fetch robots.txt: " + e.getMessage());
-            fetchFailed = true;
+            // Reading from a string cannot fail
+            allowAll = true;
         }
     }
     
     /**
-     * Fetch and parse the robots.txt file
+     * Rules for a domain without a usable robots.txt: everything is allowed
      * 
-     * @throws IOException If the robots.txt file can't be fetched
+     * @param domain The domain
+     * @return Rules that allow every URL
      */
-    private void fetchAndParseRobotsTxt() throws IOException {
-        URL robotsUrl = new URL(domain + "/robots.txt");
-        HttpURLConnection connection = (HttpURLConnection) robotsUrl.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("User-Agent", USER_AGENT);
-        connection.setConnectTimeout(5000);
-        connection.setReadTimeout(5000);
-        
-        int responseCode = connection.getResponseCode();
-        
-        // If robots.txt doesn't exist (404) or other error, assume everything is allowed
-        if (responseCode != HttpURLConnection.HTTP_OK) {
-            fetchFailed = true;
-            return;
-        }
-        
-        // Read and parse the robots.txt file
-        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+    static RobotsTxtParser allowAll(String domain) {
+        RobotsTxtParser parser = new RobotsTxtParser(domain, "");
+        parser.allowAll = true;
+        return parser;
+    }
+    
+    /**
+     * @return The scheme, host and port these rules apply to
+     */
+    public String getDomain() {
+        return domain;
+    }
+    
+    /**
+     * Parse robots.txt lines into groups and compile the rules that apply to
+     * this crawler
+     * 
+     * @param reader The robots.txt content
+     * @throws IOException If reading fails
+     */
+    private void parse(BufferedReader reader) throws IOException {
         String line;
-        String currentUserAgent = null;
+        Group currentGroup = null;
+        boolean inUserAgentLines = false;
         
         while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            
-            // Skip empty lines and comments
-            if (line.isEmpty() || line.startsWith("#")) {
-                continue;
+            // Strip comments, including trailing ones
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
             }
+            line = line.trim();
             
-            // Check for User-agent line
-            if (line.toLowerCase().startsWith("user-agent:")) {
-                String userAgent = line.substring("user-agent:".length()).trim();
-                currentUserAgent = userAgent;
-                
-                // Initialize collections for this user agent if needed
-                if (!disallowedPaths.containsKey(currentUserAgent)) {
-                    disallowedPaths.put(currentUserAgent, new ArrayList<>());
-                    allowedPaths.put(currentUserAgent, new ArrayList<>());
-                }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
                 continue;
             }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
             
-            // Skip lines if no user agent has been defined yet
-            if (currentUserAgent == null) {
+            // Sitemaps apply to every crawler, even before the first group
+            if (field.equals("sitemap")) {
+                addSitemap(value);
                 continue;
             }
             
-            // Check for Disallow directive
-            if (line.toLowerCase().startsWith("disallow:")) {
-                String path = line.substring("disallow:".length()).trim();
-                if (!path.isEmpty()) {
-                    disallowedPaths.get(currentUserAgent).add(path);
+            // Consecutive user-agent lines share one group
+            if (field.equals("user-agent")) {
+                if (!inUserAgentLines) {
+                    currentGroup = new Group();
+                    groups.add(currentGroup);
+                    inUserAgentLines = true;
                 }
+                currentGroup.userAgents.add(value.toLowerCase(Locale.ROOT));
                 continue;
             }
+            inUserAgentLines = false;
             
-            // Check for Allow directive
-            if (line.toLowerCase().startsWith("allow:")) {
-                String path = line.substring("allow:".length()).trim();
-                if (!path.isEmpty()) {
-                    allowedPaths.get(currentUserAgent).add(path);
-                }
+            // Skip lines if no user agent has been defined yet
+            if (currentGroup == null) {
                 continue;
             }
             
-            // Check for Crawl-delay directive
-            if (line.toLowerCase().startsWith("crawl-delay:")) {
-                try {
-                    int delay = Integer.parseInt(line.substring("crawl-delay:".length()).trim());
-                    crawlDelays.put(currentUserAgent, delay * 1000); // Convert to milliseconds
-                } catch (NumberFormatException e) {
-                    // Ignore invalid crawl delays
-                }
+            switch (field) {
+                case "disallow":
+                    if (!value.isEmpty()) {
+                        currentGroup.rules.add(new Rule(value, false));
+                    }
+                    break;
+                case "allow":
+                    if (!value.isEmpty()) {
+                        currentGroup.rules.add(new Rule(value, true));
+                    }
+                    break;
+                case "crawl-delay":
+                    try {
+                        // Convert to milliseconds
+                        currentGroup.crawlDelay = (int) (Double.parseDouble(value) * 1000);
+                    } catch (NumberFormatException e) {
+                        // Ignore invalid crawl delays
+                    }
+                    break;
+                default:
+                    break;
             }
         }
         
-        reader.close();
+        // Compile the rules once for the user agent we crawl as
+        matcher = new RobotsRuleMatcher();
+        for (Group group : selectGroups(USER_AGENT)) {
+            for (Rule rule : group.rules) {
+                matcher.addRule(rule.pattern, rule.allow);
+            }
+        }
+        matcher.compact();
+        crawlDelay = getCrawlDelay(USER_AGENT, -1);
+    }
+    
+    /**
+     * Add the URL of a Sitemap line, resolving it against the domain in case it
+     * is relative. Only http and https sitemaps on the host of the robots.txt
+     * are kept, so robots.txt cannot send the crawler to another server.
+     * 
+     * @param value The value of the Sitemap line
+     */
+    private void addSitemap(String value) {
+        if (value.isEmpty()) {
+            return;
+        }
+        try {
+            String sitemap = new URL(new URL(domain + "/"), value).toString();
+            CanonicalUrl origin = CanonicalUrl.parse(domain);
+            if (origin == null || !SitemapReader.isOnHost(sitemap, CanonicalUrl.normalizeHost(origin.getHost()))) {
+                System.out.println("Ignoring sitemap (not on the host of robots.txt): " + sitemap);
+                return;
+            }
+            if (!sitemaps.contains(sitemap)) {
+                sitemaps.add(sitemap);
+            }
+        } catch (MalformedURLException e) {
+            // Ignore invalid sitemap URLs
+        }
+    }
+    
+    /**
+     * Get the sitemaps listed in robots.txt
+     * 
+     * @return The absolute sitemap URLs in the order they were listed
+     */
+    public List<String> getSitemaps() {
+        return Collections.unmodifiableList(sitemaps);
+    }
+    
+    /**
+     * Select the groups that apply to a user agent: every group naming it, or the
+     * "*" groups if none does
+     * 
+     * @param userAgent The user agent product token
+     * @return The matching groups, possibly empty
+     */
+    private List<Group> selectGroups(String userAgent) {
+        String token = userAgent.toLowerCase(Locale.ROOT);
+        List<Group> specific = new ArrayList<>();
+        List<Group> wildcard = new ArrayList<>();
+        for (Group group : groups) {
+            if (group.userAgents.contains(token)) {
+                specific.add(group);
+            } else if (group.userAgents.contains(WILDCARD_USER_AGENT)) {
+                wildcard.add(group);
+            }
+        }
+        return specific.isEmpty() ? wildcard : specific;
     }
     
     /**
@@ -139,21 +218,20 @@ public class RobotsTxtParser {
      */
     public boolean isAllowed(String url) {
         // If robots.txt couldn't be fetched, assume everything is allowed
-        if (fetchFailed) {
+        if (allowAll || matcher == null) {
             return true;
         }
         
         try {
             URL urlObj = new URL(url);
             String path = urlObj.getPath();
-            
-            // First check specific user agent rules
-            if (isPathAllowed(path, USER_AGENT)) {
-                return true;
+            if (path.isEmpty()) {
+                path = "/";
             }
             
-            // Then check wildcard rules
-            return isPathAllowed(path, WILDCARD_USER_AGENT);
+            // Rules match against the path and query
+            String query = urlObj.getQuery();
+            return matcher.isAllowed(query != null ? path + "?" + query : path);
             
         } catch (MalformedURLException e) {
             return false;
@@ -161,60 +239,16 @@ public class RobotsTxtParser {
     }
     
     /**
-     * Check if a path is allowed for a specific user agent
-     * 
-     * @param path The path to check
-     * @param userAgent The user agent to check for
-     * @return true if allowed, false otherwise
+     * Check if a path is allowed to be crawled, for callers that already parsed the URL
+     *
+     * @param pathAndQuery The path, followed by '?' and the query if there is one
+     * @return true if the path is allowed, false otherwise
      */
-    private boolean isPathAllowed(String path, String userAgent) {
-        // If no rules for this user agent, it's allowed
-        if (!disallowedPaths.containsKey(userAgent)) {
+    public boolean isAllowedPath(String pathAndQuery) {
+        if (allowAll || matcher == null) {
             return true;
         }
-        
-        // Check allow rules first (they take precedence over disallow)
-        for (String allowPath : allowedPaths.getOrDefault(userAgent, new ArrayList<>())) {
-            if (pathMatches(path, allowPath)) {
-                return true;
-            }
-        }
-        
-        // Then check disallow rules
-        for (String disallowPath : disallowedPaths.getOrDefault(userAgent, new ArrayList<>())) {
-            if (pathMatches(path, disallowPath)) {
-                return false;
-            }
-        }
-        
-        // If no rules matched, it's allowed
-        return true;
-    }
-    
-    /**
-     * Check if a path matches a robots.txt path pattern
-     * 
-     * @param path The path to check
-     * @param pattern The pattern from robots.txt
-     * @return true if matches, false otherwise
-     */
-    private boolean pathMatches(String path, String pattern) {
-        // Convert robots.txt pattern to regex
-        String regex = pattern
-                .replace(".", "\\.")
-                .replace("?", "\\?")
-                .replace("*", ".*")
-                .replace("$", "\\$");
-        
-        // Ensure the pattern matches the entire path
-        if (!pattern.endsWith("$")) {
-            regex = "^" + regex;
-        }
-        
-        // Check if path matches the pattern
-        Pattern compiledPattern = Pattern.compile(regex);
-        Matcher matcher = compiledPattern.matcher(path);
-        return matcher.find();
+        return matcher.isAllowed(pathAndQuery.isEmpty() ? "/" : pathAndQuery);
     }
     
     /**
@@ -225,14 +259,10 @@ public class RobotsTxtParser {
      * @return The crawl delay in milliseconds
      */
     public int getCrawlDelay(String userAgent, int defaultDelay) {
-        // Check for specific user agent delay
-        if (crawlDelays.containsKey(userAgent)) {
-            return crawlDelays.get(userAgent);
-        }
-        
-        // Check for wildcard delay
-        if (crawlDelays.containsKey(WILDCARD_USER_AGENT)) {
-            return crawlDelays.get(WILDCARD_USER_AGENT);
+        for (Group group : selectGroups(userAgent)) {
+            if (group.crawlDelay != null) {
+                return group.crawlDelay;
+            }
         }
         
         // If no delay specified, return default
@@ -246,6 +276,29 @@ public class RobotsTxtParser {
      * @return The crawl delay in milliseconds
      */
     public int getCrawlDelay(int defaultDelay) {
-        return getCrawlDelay(USER_AGENT, defaultDelay);
+        // Resolved once at parse time, this is called for every fetch
+        return crawlDelay >= 0 ? crawlDelay : defaultDelay;
+    }
+    
+    /**
+     * A group of rules shared by one or more user-agent lines
+     */
+    private static class Group {
+        private final List<String> userAgents = new ArrayList<>();
+        private final List<Rule> rules = new ArrayList<>();
+        private Integer crawlDelay;
+    }
+    
+    /**
+     * A single Allow or Disallow line
+     */
+    private static class Rule {
+        private final String pattern;
+        private final boolean allow;
+        
+        Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+        }
     }
-}
\ No newline at end of file
+}
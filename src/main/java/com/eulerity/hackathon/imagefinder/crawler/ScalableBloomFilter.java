@@ -0,0 +1,154 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent Bloom filter over strings that grows as elements are added, so it
+ * does not need to know the final number of elements up front.
+ *
+ * It starts with one filter sized for the initial capacity. When that is full a
+ * new filter with twice the capacity and half the false-positive rate is added,
+ * and new elements go there. The rates form a geometric series, so the expected
+ * overall false-positive rate stays below the configured one however far the
+ * filter grows. Bits are set with compare-and-set, so adding and querying never block.
+ */
+class ScalableBloomFilter {
+    private final double falsePositiveRate;
+    private volatile Stage[] stages;
+
+    /**
+     * Constructor for ScalableBloomFilter
+     *
+     * @param initialCapacity Number of elements the first filter is sized for
+     * @param falsePositiveRate Maximum probability that a string that was never
+     *                          added is reported as present
+     */
+    ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+        if (initialCapacity < 1 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Invalid Bloom filter capacity or false-positive rate");
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        // Stage i gets rate p/2^(i+1), which sums to at most p
+        this.stages = new Stage[] {new Stage(initialCapacity, falsePositiveRate / 2)};
+    }
+
+    /**
+     * Check whether a string may have been added
+     *
+     * @param value The string
+     * @return false if the string was definitely never added
+     */
+    boolean mightContain(String value) {
+        long hash = FingerprintSeenSet.fingerprint(value);
+        for (Stage stage : stages) {
+            if (stage.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a string
+     *
+     * @param value The string
+     */
+    void put(String value) {
+        long hash = FingerprintSeenSet.fingerprint(value);
+        Stage[] current = stages;
+        Stage last = current[current.length - 1];
+        if (last.count.incrementAndGet() > last.capacity) {
+            last = grow(current);
+        }
+        last.put(hash);
+    }
+
+    /**
+     * @return The false-positive rate the filter was configured with
+     */
+    double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * @return Bytes used by the bit arrays
+     */
+    long getBitBytes() {
+        long bytes = 0;
+        for (Stage stage : stages) {
+            bytes += 8L * stage.bits.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Add a stage unless another thread already did
+     *
+     * @param seen The stages the caller saw
+     * @return The stage new elements go to
+     */
+    private synchronized Stage grow(Stage[] seen) {
+        Stage[] current = stages;
+        if (current == seen) {
+            Stage last = current[current.length - 1];
+            Stage next = new Stage((int) Math.min(Integer.MAX_VALUE / 2, 2L * last.capacity), last.rate / 2);
+            Stage[] grown = new Stage[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = next;
+            stages = grown;
+            current = grown;
+        }
+        return current[current.length - 1];
+    }
+
+    /**
+     * A fixed-size Bloom filter. The k bit positions come from one 64-bit hash
+     * by double hashing (Kirsch and Mitzenmacher).
+     */
+    private static class Stage {
+        private final int capacity;
+        private final double rate;
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicInteger count = new AtomicInteger();
+
+        Stage(int capacity, double rate) {
+            this.capacity = capacity;
+            this.rate = rate;
+            // m = -n ln p / (ln 2)^2 and k = m/n ln 2
+            long m = (long) Math.ceil(-capacity * Math.log(rate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64));
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = 64L * words;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        boolean mightContain(long hash) {
+            long h1 = hash;
+            long h2 = Long.rotateLeft(hash, 32) * 0x9e3779b97f4a7c15L;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long hash) {
+            long h1 = hash;
+            long h2 = Long.rotateLeft(hash, 32) * 0x9e3779b97f4a7c15L;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old;
+                while (((old = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, old, old | mask)) {
+                    // Another bit in this word changed, try again
+                }
+            }
+        }
+    }
+}
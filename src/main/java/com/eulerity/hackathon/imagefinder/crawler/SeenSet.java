@@ -0,0 +1,43 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * Set of URLs the crawler has already queued, used to visit each page once.
+ * Implementations must be safe for concurrent use.
+ */
+public interface SeenSet {
+    /**
+     * Add a URL
+     *
+     * @param url The canonical URL
+     * @return true if the URL was not in the set yet
+     */
+    boolean add(String url);
+
+    /**
+     * Check whether a URL has been added
+     *
+     * @param url The canonical URL
+     * @return true if the URL is in the set
+     */
+    boolean contains(String url);
+
+    /**
+     * @return Number of URLs added
+     */
+    int size();
+
+    /**
+     * Remove every URL
+     */
+    void clear();
+
+    /**
+     * Estimated probability that two different URLs in the set were treated as
+     * the same one
+     *
+     * @return A probability between 0 and 1, 0 for exact sets
+     */
+    default double getCollisionProbability() {
+        return 0;
+    }
+}
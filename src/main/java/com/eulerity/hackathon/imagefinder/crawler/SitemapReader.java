@@ -0,0 +1,364 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the page URLs listed in sitemap files, following sitemap index files to
+ * the sitemaps they list. Files are parsed with a streaming XML parser as they
+ * are downloaded, so a 50 MB sitemap never has to fit in memory, and gzipped
+ * files are recognized by their first bytes whether or not the server says so.
+ *
+ * Only http and https files on the crawled host are read, whatever robots.txt
+ * or a sitemap index lists. Every file takes a turn in the host's politeness
+ * schedule and feeds its circuit breaker like a page, counts as a request
+ * against the crawl's budget and its compressed size as downloaded bytes.
+ * Sitemaps of an index are read newest first, and reading stops once enough
+ * URLs have been collected.
+ */
+class SitemapReader {
+    // Limits set by the sitemap protocol
+    private static final int MAX_URLS_PER_FILE = 50000;
+    private static final long MAX_FILE_SIZE = 50L * 1024 * 1024;
+
+    private static final int MAX_FILES = Integer.getInteger("imagefinder.sitemap.maxFiles", 20);
+    private static final int TIMEOUT_MS = 10000;
+    private static final XMLInputFactory XML_INPUT_FACTORY = createInputFactory();
+
+    private final CrawlBudget budget;
+    private final AtomicLong requestCount;
+    private final AtomicLong bytesDownloaded;
+    private final PolitenessScheduler scheduler;
+    private final String host;
+    private int filesRead;
+
+    /**
+     * Constructor for SitemapReader
+     *
+     * @param budget The crawl's budget
+     * @param requestCount Requests sent by the crawl, incremented for every file
+     * @param bytesDownloaded Bytes downloaded by the crawl
+     * @param scheduler The crawl's frontier, whose host schedules and circuit breakers the files go through
+     * @param host The crawled host without a leading "www.", the only host sitemaps are read from
+     */
+    SitemapReader(CrawlBudget budget, AtomicLong requestCount, AtomicLong bytesDownloaded,
+            PolitenessScheduler scheduler, String host) {
+        this.budget = budget;
+        this.requestCount = requestCount;
+        this.bytesDownloaded = bytesDownloaded;
+        this.scheduler = scheduler;
+        this.host = host;
+    }
+
+    /**
+     * Read the page URLs of some sitemaps. A file that is not on the crawled
+     * host or cannot be fetched or parsed is skipped, and whatever was read
+     * before an error is kept.
+     *
+     * @param sitemapUrls The sitemap or sitemap index URLs, e.g. from robots.txt
+     * @param maxUrls Stop after this many page URLs
+     * @return The page URLs in the order they were listed
+     */
+    List<SitemapUrl> read(List<String> sitemapUrls, int maxUrls) {
+        List<SitemapUrl> pages = new ArrayList<>();
+        ArrayDeque<String> pending = new ArrayDeque<>(sitemapUrls);
+        Set<String> seen = new HashSet<>(sitemapUrls);
+
+        while (!pending.isEmpty() && pages.size() < maxUrls && filesRead < MAX_FILES) {
+            String sitemapUrl = pending.poll();
+            if (!isOnHost(sitemapUrl, host)) {
+                System.out.println("Skipping sitemap (not on the crawled host): " + sitemapUrl);
+                continue;
+            }
+            List<SitemapUrl> children = new ArrayList<>();
+            try {
+                fetch(sitemapUrl, pages, children, maxUrls);
+            } catch (BudgetExhaustedException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("Could not read sitemap " + sitemapUrl + ": " + e.getMessage());
+            }
+
+            // The newest sitemaps are the most likely to list changed pages
+            children.sort(Comparator.comparingLong(SitemapUrl::getLastModified).reversed());
+            for (SitemapUrl child : children) {
+                if (seen.add(child.getLoc())) {
+                    pending.add(child.getLoc());
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Check whether a sitemap may be read
+     *
+     * @param sitemapUrl The URL of the file
+     * @param host The crawled host without a leading "www."
+     * @return true for an http or https URL on the host
+     */
+    static boolean isOnHost(String sitemapUrl, String host) {
+        CanonicalUrl parsed = CanonicalUrl.parse(sitemapUrl);
+        return parsed != null && CanonicalUrl.normalizeHost(parsed.getHost()).equals(host);
+    }
+
+    /**
+     * Fetch and parse one sitemap file, once its host's next fetch slot has come
+     *
+     * @param sitemapUrl The http or https URL of the file
+     * @param pages Receives the page URLs of a sitemap
+     * @param children Receives the sitemap URLs of a sitemap index
+     * @param maxUrls Stop once pages holds this many URLs
+     * @throws IOException If the file cannot be fetched or parsed
+     * @throws CircuitOpenException If the host's circuit is open, without sending the request
+     */
+    private void fetch(String sitemapUrl, List<SitemapUrl> pages, List<SitemapUrl> children, int maxUrls)
+            throws IOException {
+        long waitMs = scheduler.reserveFetch(sitemapUrl);
+        if (waitMs < 0) {
+            throw new CircuitOpenException(sitemapUrl);
+        }
+        if (waitMs > 0) {
+            try {
+                Thread.sleep(waitMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the crawl delay");
+            }
+        }
+        budget.reserveRequest(requestCount, bytesDownloaded);
+        filesRead++;
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(sitemapUrl).openConnection();
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("User-Agent", WebCrawler.USER_AGENT);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        long startedAt = System.currentTimeMillis();
+        try {
+            int responseCode;
+            try {
+                responseCode = connection.getResponseCode();
+            } catch (SocketTimeoutException e) {
+                scheduler.recordTimeout(sitemapUrl, startedAt);
+                throw e;
+            } catch (IOException e) {
+                scheduler.recordFailure(sitemapUrl);
+                throw e;
+            }
+            scheduler.recordResponse(sitemapUrl, startedAt, responseCode,
+                    WebCrawler.parseRetryAfter(connection.getHeaderField("Retry-After")));
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + responseCode);
+            }
+            try (InputStream in = new CountingInputStream(connection.getInputStream(), bytesDownloaded, MAX_FILE_SIZE)) {
+                parse(in, pages, children, maxUrls);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Parse a sitemap or sitemap index, gzipped or not
+     *
+     * @param in The file content
+     * @param pages Receives the page URLs of a sitemap
+     * @param children Receives the sitemap URLs of a sitemap index
+     * @param maxUrls Stop once pages holds this many URLs
+     * @throws IOException If the file cannot be read or is not well-formed XML
+     */
+    static void parse(InputStream in, List<SitemapUrl> pages, List<SitemapUrl> children, int maxUrls)
+            throws IOException {
+        InputStream body = new BufferedInputStream(in);
+        body.mark(2);
+        int first = body.read();
+        int second = body.read();
+        body.reset();
+        if (first == 0x1f && second == 0x8b) {
+            // The limit applies to the uncompressed size as well
+            body = new CountingInputStream(new GZIPInputStream(body), new AtomicLong(), MAX_FILE_SIZE);
+        }
+
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(body);
+            int depth = 0;
+            int entries = 0;
+            List<SitemapUrl> target = null;
+            String loc = null;
+            String lastModified = null;
+
+            while (reader.hasNext() && entries < MAX_URLS_PER_FILE && pages.size() < maxUrls) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 2) {
+                        // <url> in a urlset, <sitemap> in a sitemapindex
+                        target = name.equals("url") ? pages : name.equals("sitemap") ? children : null;
+                        loc = null;
+                        lastModified = null;
+                    } else if (depth == 3 && target != null && name.equals("loc")) {
+                        // getElementText consumes the end tag too
+                        loc = reader.getElementText().trim();
+                        depth--;
+                    } else if (depth == 3 && target != null && name.equals("lastmod")) {
+                        lastModified = reader.getElementText().trim();
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 2 && target != null && loc != null && !loc.isEmpty()) {
+                        target.add(new SitemapUrl(loc, parseLastModified(lastModified)));
+                        entries++;
+                    }
+                    if (depth == 2) {
+                        target = null;
+                    }
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed sitemap: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // Nothing left to read
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a lastmod value in W3C datetime format: a year, a month, a date, or a
+     * date and time with a time zone
+     *
+     * @param value The lastmod value, or null
+     * @return Milliseconds since the epoch, or -1 if missing or invalid
+     */
+    static long parseLastModified(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            if (value.length() == 4) {
+                value = value + "-01-01";
+            } else if (value.length() == 7) {
+                value = value + "-01";
+            }
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Create a parser factory that does not load DTDs or external entities,
+     * since sitemaps come from untrusted servers
+     *
+     * @return The factory
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * A URL listed in a sitemap or sitemap index
+     */
+    static final class SitemapUrl {
+        private final String loc;
+        private final long lastModified;
+
+        SitemapUrl(String loc, long lastModified) {
+            this.loc = loc;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return The URL
+         */
+        String getLoc() {
+            return loc;
+        }
+
+        /**
+         * @return When the page last changed in milliseconds, or -1 if not listed
+         */
+        long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Adds the bytes read to a counter, and fails once more than a limit has been
+     * read
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+        private final long limit;
+        private long count;
+
+        CountingInputStream(InputStream in, AtomicLong counter, long limit) {
+            super(in);
+            this.counter = counter;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        private void count(int read) throws IOException {
+            count += read;
+            counter.addAndGet(read);
+            if (count > limit) {
+                throw new IOException("Sitemap larger than " + limit + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * First-in first-out frontier that keeps a small head of URLs on the heap and
+ * spills the rest to memory-mapped segment files, so the size of a crawl is
+ * bounded by disk rather than by -Xmx.
+ *
+ * While nothing is spilled, URLs go straight to the head. Once the head is full,
+ * every new URL is appended to the last segment until the spilled URLs have all
+ * been read back, which keeps the queue in order. Segments are written and read
+ * sequentially, and a segment file is deleted as soon as it has been read. If a
+ * segment cannot be created, the remaining URLs are kept on the heap instead.
+ */
+class SpillingFrontier implements Frontier {
+    private static final int DEFAULT_SEGMENT_SIZE = Integer.getInteger("imagefinder.frontier.segmentSize", 16 * 1024 * 1024);
+    // Length prefix, depth, score and sequence around the URL bytes
+    private static final int RECORD_OVERHEAD = 4 + 4 + 8 + 8;
+    private static final String SPILL_DIR = System.getProperty("imagefinder.frontier.dir", System.getProperty("java.io.tmpdir"));
+
+    private final int hotCapacity;
+    private final int segmentSize;
+    private final ArrayDeque<FrontierEntry> head = new ArrayDeque<>();
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ArrayDeque<FrontierEntry> overflow = new ArrayDeque<>();
+    private Path directory;
+    private int spilled;
+    private int nextSegmentId;
+
+    /**
+     * Constructor for SpillingFrontier
+     *
+     * @param hotCapacity Number of URLs kept on the heap before spilling to disk
+     */
+    SpillingFrontier(int hotCapacity) {
+        this(hotCapacity, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor for SpillingFrontier
+     *
+     * @param hotCapacity Number of URLs kept on the heap before spilling to disk
+     * @param segmentSize Size of each segment file in bytes
+     */
+    SpillingFrontier(int hotCapacity, int segmentSize) {
+        this.hotCapacity = Math.max(1, hotCapacity);
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void add(FrontierEntry entry) {
+        if (spilled == 0 && overflow.isEmpty() && head.size() < hotCapacity) {
+            head.add(entry);
+        } else if (!overflow.isEmpty() || !spill(entry)) {
+            overflow.add(entry);
+        }
+    }
+
+    @Override
+    public FrontierEntry poll() {
+        if (head.isEmpty()) {
+            refill();
+        }
+        return head.poll();
+    }
+
+    @Override
+    public int size() {
+        return head.size() + spilled + overflow.size();
+    }
+
+    @Override
+    public void clear() {
+        head.clear();
+        overflow.clear();
+        while (!segments.isEmpty()) {
+            segments.poll().delete();
+        }
+        spilled = 0;
+        if (directory != null) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (IOException e) {
+                System.err.println("Could not delete frontier directory " + directory + ": " + e.getMessage());
+            }
+            directory = null;
+        }
+    }
+
+    /**
+     * @return Number of URLs currently on disk
+     */
+    int getSpilledCount() {
+        return spilled;
+    }
+
+    /**
+     * Append a URL to the last segment, starting a new one if it is full
+     *
+     * @param entry The URL and its priority
+     * @return false if the URL could not be written
+     */
+    private boolean spill(FrontierEntry entry) {
+        byte[] bytes = entry.getUrl().getBytes(StandardCharsets.UTF_8);
+        Segment segment = segments.peekLast();
+        try {
+            if (segment == null || segment.buffer.remaining() < RECORD_OVERHEAD + bytes.length) {
+                segment = newSegment(Math.max(segmentSize, RECORD_OVERHEAD + bytes.length));
+                segments.add(segment);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not spill crawl frontier to disk, keeping it in memory: " + e.getMessage());
+            return false;
+        }
+        segment.buffer.putInt(bytes.length);
+        segment.buffer.put(bytes);
+        segment.buffer.putInt(entry.getDepth());
+        segment.buffer.putDouble(entry.getScore());
+        segment.buffer.putLong(entry.getSequence());
+        segment.written++;
+        spilled++;
+        return true;
+    }
+
+    /**
+     * Move up to half a head's worth of URLs from disk to the head, or take over
+     * the URLs kept on the heap once the disk is drained
+     */
+    private void refill() {
+        int batch = Math.max(1, hotCapacity / 2);
+        while (spilled > 0 && head.size() < batch) {
+            Segment segment = segments.peek();
+            if (segment.read == segment.written) {
+                // Fully read, and no longer written to since a later segment exists
+                segments.poll().delete();
+                continue;
+            }
+            int length = segment.reader.getInt();
+            byte[] bytes = new byte[length];
+            segment.reader.get(bytes);
+            segment.read++;
+            spilled--;
+            String url = new String(bytes, StandardCharsets.UTF_8);
+            head.add(new FrontierEntry(url, segment.reader.getInt(), segment.reader.getDouble(), segment.reader.getLong()));
+        }
+        if (spilled == 0) {
+            // Nothing left on disk, give the files back right away
+            while (!segments.isEmpty()) {
+                segments.poll().delete();
+            }
+            while (head.size() < batch && !overflow.isEmpty()) {
+                head.add(overflow.poll());
+            }
+        }
+    }
+
+    /**
+     * Create and map a new segment file
+     *
+     * @param size Size of the segment in bytes
+     * @return The segment
+     * @throws IOException If the file cannot be created or mapped
+     */
+    private Segment newSegment(int size) throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory(Paths.get(SPILL_DIR), "imagefinder-frontier");
+        }
+        Path file = directory.resolve("segment-" + (nextSegmentId++) + ".dat");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * One segment file with separate write and read positions
+     */
+    private static class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private final ByteBuffer reader;
+        private int written;
+        private int read;
+
+        Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            this.reader = buffer.duplicate();
+        }
+
+        /**
+         * Delete the file. The mapping itself is released when the buffer is
+         * garbage collected.
+         */
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Could not delete frontier segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+/**
+ * Why a crawl stopped
+ */
+public enum StopReason {
+    /**
+     * Every reachable page was crawled
+     */
+    COMPLETED,
+
+    /**
+     * The maxPages limit was reached
+     */
+    MAX_PAGES,
+
+    /**
+     * The crawl ran for as long as its budget allows
+     */
+    TIME_BUDGET,
+
+    /**
+     * The crawl downloaded as many bytes as its budget allows
+     */
+    BYTE_BUDGET,
+
+    /**
+     * The crawl sent as many requests as its budget allows, counting retries and redirects
+     */
+    REQUEST_BUDGET,
+
+    /**
+     * The crawl found as many images as its budget allows
+     */
+    IMAGE_BUDGET,
+
+    /**
+     * The crawl was stopped by a user
+     */
+    STOPPED;
+
+    /**
+     * @return true if a {@link CrawlBudget} ran out, so the results are partial
+     */
+    public boolean isBudget() {
+        return this == TIME_BUDGET || this == BYTE_BUDGET || this == REQUEST_BUDGET || this == IMAGE_BUDGET;
+    }
+}
@@ -0,0 +1,152 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Node-wide store of HTTP validators for crawled pages, keyed by canonical URL.
+ * A recrawl sends the stored ETag and Last-Modified as If-None-Match and
+ * If-Modified-Since, and a 304 response reuses the images and links that were
+ * extracted the last time the page was downloaded.
+ *
+ * Only pages that came with a validator are stored. The least recently used
+ * entries are dropped once the store holds more than MAX_ENTRIES pages.
+ */
+public class ValidatorStore {
+    private static final int MAX_ENTRIES = Integer.getInteger("imagefinder.validators.maxEntries", 100000);
+
+    private static final ValidatorStore INSTANCE = new ValidatorStore();
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, ValidatorStore.Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ValidatorStore.Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Get the node-wide validator store
+     *
+     * @return The shared store
+     */
+    public static ValidatorStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the validators stored for a page
+     *
+     * @param url The canonical URL of the page
+     * @return The entry, or null if the page has none
+     */
+    public synchronized Entry get(String url) {
+        return entries.get(url);
+    }
+
+    /**
+     * Store the validators and extraction of a downloaded page. Pages without an
+     * ETag or Last-Modified header cannot be revalidated and are removed instead.
+     *
+     * @param url The canonical URL of the page
+     * @param entry The validators and extraction
+     */
+    public synchronized void put(String url, Entry entry) {
+        if (entry.getEtag() == null && entry.getLastModified() == null) {
+            entries.remove(url);
+        } else {
+            entries.put(url, entry);
+        }
+    }
+
+    /**
+     * Drop every stored page
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return Number of stored pages
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Hash the images of an extraction, so a page downloaded again can be told
+     * apart from one whose images changed
+     *
+     * @param images The image candidates
+     * @return A 64-bit hash of the image URLs and their attributes, in order
+     */
+    static long hashImages(List<PageExtract.ImageCandidate> images) {
+        long hash = images.size();
+        for (PageExtract.ImageCandidate image : images) {
+            hash = hash * 0x100000001b3L ^ FingerprintSeenSet.fingerprint(image.toString());
+        }
+        return hash;
+    }
+
+    /**
+     * The validators of one page and what was extracted from it
+     */
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final String contentType;
+        private final PageExtract extract;
+        private final long imageHash;
+
+        /**
+         * Constructor for Entry
+         *
+         * @param etag The ETag header, or null if missing
+         * @param lastModified The Last-Modified header, or null if missing
+         * @param contentType The Content-Type header of the page
+         * @param extract The images and links extracted from the page
+         */
+        Entry(String etag, String lastModified, String contentType, PageExtract extract) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.extract = extract;
+            this.imageHash = hashImages(extract.getImages());
+        }
+
+        /**
+         * @return The ETag header, or null if missing
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return The Last-Modified header, or null if missing
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return The Content-Type header of the page
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * @return The images and links extracted from the page
+         */
+        public PageExtract getExtract() {
+            return extract;
+        }
+
+        /**
+         * @return The hash of the extracted images
+         */
+        public long getImageHash() {
+            return imageHash;
+        }
+    }
+}
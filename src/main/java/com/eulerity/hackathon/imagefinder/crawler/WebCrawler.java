@@ -3,27 +3,33 @@ package com.eulerity.hackathon.imagefinder.crawler;
 import org.jsoup.Connection;
 import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * Main web crawler class responsible for crawling a website and finding all images.
@@ -33,22 +39,48 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class WebCrawler {
     private final String baseUrl;
     private final String domain;
-    private final Set<String> visitedUrls;
+    private final String baseScheme;
+    private final String baseHost;
+    private SeenSet visitedUrls;
+    private DedupeMode dedupeMode = DedupeMode.EXACT;
+    private double linkFilterFalsePositiveRate;
+    private ScalableBloomFilter linkFilter;
+    private SeenSet seenLinks;
     private final Set<String> imageUrls;
     private final Map<String, ImageMetadata> imageMetadata;
     private final int maxPages;
     private final int threadCount;
     private final int crawlDelayMs;
-    private final ExecutorService executor;
-    private final LinkedBlockingQueue<String> urlQueue;
+    private final PolitenessScheduler urlQueue;
     private final AtomicInteger pagesCrawled;
     private final Object lock = new Object();
-    private boolean isRunning;
+    private volatile boolean isRunning;
+    private volatile boolean finished;
+    private final List<CrawlListener> listeners = new CopyOnWriteArrayList<>();
+    private FetchMode fetchMode = FetchMode.JSOUP;
+    private ExtractMode extractMode = ExtractMode.DOM;
+    private final AtomicInteger pagesInFlight = new AtomicInteger();
+    private final AtomicInteger asyncFetchesInFlight = new AtomicInteger();
+    private final Queue<Runnable> readyTasks = new ConcurrentLinkedQueue<>();
+    private AsyncPageFetcher asyncFetcher;
+    private final CrawlScheduler.Crawl schedulerHandle = new SchedulerHandle();
+    private volatile CountDownLatch detached = new CountDownLatch(1);
+    private int priority = CrawlScheduler.DEFAULT_PRIORITY;
     private final boolean enableLogoDetection;
-    private RobotsTxtParser robotsTxtParser;
+    private volatile RobotsTxtParser robotsTxtParser;
+    private CrawlCheckpoint checkpoint;
+    private boolean resumeFromCheckpoint;
+    private final ValidatorStore validators = ValidatorStore.getInstance();
+    private boolean adaptiveConcurrency = true;
+    private final Map<String, Integer> circuitRequeues = new ConcurrentHashMap<>();
+    private CrawlBudget budget = CrawlBudget.UNLIMITED;
+    private volatile long deadline = Long.MAX_VALUE;
+    private final AtomicReference<StopReason> stopReason = new AtomicReference<>();
+    private int frontierSpillThreshold;
+    private Comparator<FrontierEntry> frontierOrder = FrontierOrder.DEPTH_AND_SCORE;
+    private boolean sitemapSeeding = true;
     
-    // Define allowed schemes and content types
-    private static final Set<String> ALLOWED_SCHEMES = Set.of("http", "https");
+    // Define allowed content types
     private static final Set<String> ALLOWED_CONTENT_TYPES = Set.of(
         "text/html", "application/xhtml+xml", "application/xml", "text/xml");
     
@@ -56,19 +88,59 @@ public class WebCrawler {
     private static final int MAX_URL_DEPTH = 20;
     
     // Maximum redirects to follow
-    private static final int MAX_REDIRECTS = 5;
+    static final int MAX_REDIRECTS = 5;
+    
+    // Maximum attempts per request (including the first one)
+    static final int MAX_RETRIES = 3;
+    
+    // Longest a crawl runs when its budget has no time limit
+    private static final long MAX_CRAWL_DURATION_MS = TimeUnit.MINUTES.toMillis(60);
+    
+    // How long pages in flight may take to finish once the time budget has run out
+    private static final long TIME_BUDGET_GRACE_MS = 5000;
+    
+    // Times a page may be put back while its host's circuit is open before it is dropped
+    private static final int MAX_CIRCUIT_REQUEUES = 3;
+    
+    // Longest Retry-After delay honored, longer ones are capped
+    static final long MAX_RETRY_AFTER_MS = 60000;
+    
+    // Maximum page body size to download
+    static final int MAX_BODY_SIZE = 1024 * 1024; // 1MB
     
     // Timeout settings
-    private static final int CONNECTION_TIMEOUT_MS = 30000; // 10 seconds
+    static final int CONNECTION_TIMEOUT_MS = 30000; // 10 seconds
     private static final int READ_TIMEOUT_MS = 60000; // 15 seconds
     
-    // Map to track redirect chains to detect loops
-    private final Map<String, Set<String>> redirectChains = new ConcurrentHashMap<>();
+    // User agent sent with page requests
+    static final String USER_AGENT = "Eulerity-Crawler/1.0";
+    
+    // Maximum concurrent requests per crawl in async fetch mode
+    private static final int MAX_ASYNC_IN_FLIGHT = 256;
+    
+    // Links expected per page, used to size the first stage of the link filter
+    private static final int LINKS_PER_PAGE_ESTIMATE = 64;
+    private static final int MIN_LINK_FILTER_CAPACITY = 4096;
+    private static final int MAX_LINK_FILTER_CAPACITY = 1 << 22;
     
-    // URL components to ignore in query parameters
-    private static final Set<String> IGNORED_QUERY_PARAMS = Set.of(
-        "utm_source", "utm_medium", "utm_campaign", "utm_term", "utm_content",
-        "fbclid", "gclid", "msclkid", "ref", "source", "session", "timestamp");
+    // URLs per host kept on the heap before the frontier spills to disk, 0 to never spill
+    private static final int FRONTIER_SPILL_THRESHOLD = Integer.getInteger("imagefinder.frontier.spillThreshold", 0);
+    
+    // Most sitemap URLs read before the newest are picked for the frontier
+    private static final int MAX_SITEMAP_URLS = Integer.getInteger("imagefinder.sitemap.maxUrls", 50000);
+    
+    // URLs restored from a checkpoint per hold of the frontier lock
+    private static final int RESTORE_BATCH_SIZE = 1024;
+
+    
+    // Per-crawl fetch statistics
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong duplicateLinksSkipped = new AtomicLong();
+    private final AtomicInteger pagesNotModified = new AtomicInteger();
+    private final AtomicInteger pagesUnchanged = new AtomicInteger();
+    private final AtomicInteger pagesRequeued = new AtomicInteger();
+    private final AtomicInteger sitemapUrlsQueued = new AtomicInteger();
 
     /**
      * Constructor for WebCrawler
@@ -81,27 +153,31 @@ public class WebCrawler {
     public WebCrawler(String url, int maxPages, int threadCount, int crawlDelayMs,boolean enableLogoDetection) {
         this.baseUrl = canonicalizeUrl(url);
         this.domain = extractDomain(this.baseUrl);
-        this.visitedUrls = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        CanonicalUrl parsedBase = CanonicalUrl.parse(this.baseUrl);
+        this.baseScheme = parsedBase != null ? parsedBase.getScheme() : "";
+        this.baseHost = parsedBase != null ? CanonicalUrl.normalizeHost(parsedBase.getHost()) : "";
+        this.visitedUrls = new ExactSeenSet();
         this.imageUrls = Collections.newSetFromMap(new ConcurrentHashMap<>());
         this.imageMetadata = new ConcurrentHashMap<>();
         this.maxPages = maxPages;
         this.threadCount = threadCount;
         this.crawlDelayMs = crawlDelayMs;
-        this.executor = Executors.newFixedThreadPool(threadCount);
-        this.urlQueue = new LinkedBlockingQueue<>();
+        this.urlQueue = new PolitenessScheduler(host -> robotsTxtParser.getCrawlDelay(crawlDelayMs));
+        setFrontierSpillThreshold(FRONTIER_SPILL_THRESHOLD);
         this.pagesCrawled = new AtomicInteger(0);
         this.isRunning = false;
-        
-        // Initialize robots.txt parser
-        this.robotsTxtParser = new RobotsTxtParser(domain);
         this.enableLogoDetection = enableLogoDetection;
 
     }
 
     /**
-     * Start the crawling process
+     * Start the crawling process. The pages are crawled by the node-wide
+     * {@link CrawlScheduler}; this method blocks until the crawl is over.
+     * The first stage loads robots.txt, and the seed URL is only queued once
+     * its rules are known.
      * 
      * @return List of image URLs found during crawling
+     * @throws RejectedExecutionException If the node is saturated and cannot admit the crawl
      */
     public List<String> crawl() {
         if (isRunning) {
@@ -109,83 +185,395 @@ public class WebCrawler {
         }
 
         isRunning = true;
+        finished = false;
+        stopReason.set(null);
+        deadline = System.currentTimeMillis() + getMaxDurationMs();
         visitedUrls.clear();
         imageUrls.clear();
+        duplicateLinksSkipped.set(0);
+        if (linkFilterFalsePositiveRate > 0) {
+            int capacity = (int) Math.max(MIN_LINK_FILTER_CAPACITY,
+                    Math.min(MAX_LINK_FILTER_CAPACITY, (long) maxPages * LINKS_PER_PAGE_ESTIMATE));
+            linkFilter = new ScalableBloomFilter(capacity, linkFilterFalsePositiveRate);
+            // Raw links are many times the pages, so only their fingerprints are kept
+            seenLinks = new FingerprintSeenSet();
+        }
         imageMetadata.clear();
-        redirectChains.clear();
+        // Async fetches do not hold a thread, so only the in-flight cap bounds them
+        int maxConcurrencyPerHost = fetchMode == FetchMode.ASYNC ? MAX_ASYNC_IN_FLIGHT : threadCount;
+        urlQueue.setAdaptiveConcurrency(adaptiveConcurrency ? maxConcurrencyPerHost : 0);
+        urlQueue.setFrontierFactory(createFrontierFactory());
+        urlQueue.clear();
+        readyTasks.clear();
         pagesCrawled.set(0);
-
-        // Add the base URL to the queue
-        queueUrl(baseUrl);
-        
-        // Start worker threads
-        for (int i = 0; i < threadCount; i++) {
-            executor.submit(this::processUrlQueue);
+        requestCount.set(0);
+        bytesDownloaded.set(0);
+        pagesNotModified.set(0);
+        pagesUnchanged.set(0);
+        pagesRequeued.set(0);
+        sitemapUrlsQueued.set(0);
+        circuitRequeues.clear();
+        // The robots.txt stage counts as a page in flight until the seed is queued
+        pagesInFlight.set(1);
+        asyncFetchesInFlight.set(0);
+        asyncFetcher = fetchMode == FetchMode.ASYNC ? new AsyncPageFetcher(requestCount, bytesDownloaded, budget, validators, urlQueue) : null;
+        detached = new CountDownLatch(1);
+        if (resumeFromCheckpoint) {
+            restoreProgress();
         }
 
         // Wait for all tasks to complete
         try {
-            executor.shutdown();
-            executor.awaitTermination(60, TimeUnit.MINUTES);
+            CrawlScheduler.getInstance().submit(schedulerHandle);
+            RobotsTxtCache.getInstance().getAsync(domain).thenAccept(this::startFromSeed);
+            
+            // No page starts after the deadline, and the ones in flight get a grace
+            // period to finish before the crawl is cut off
+            if (!detached.await(getTimeLimitMs(), TimeUnit.MILLISECONDS)) {
+                exhaust(StopReason.TIME_BUDGET);
+                halt();
+            }
+            stopReason.compareAndSet(null, pagesCrawled.get() >= maxPages ? StopReason.MAX_PAGES : StopReason.COMPLETED);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             System.err.println("Crawler interrupted: " + e.getMessage());
+            stop();
         } finally {
             isRunning = false;
+            // Releases any frontier files spilled to disk
+            urlQueue.clear();
+            notifyComplete();
         }
 
         // Return the results
         return new ArrayList<>(imageUrls);
     }
     
+    /**
+     * Second stage of the crawl: apply the robots.txt rules and queue the seed URL.
+     * The sitemaps listed in robots.txt are read on a worker while the seed is
+     * crawled.
+     * 
+     * @param rules The robots.txt rules for the crawled domain
+     */
+    private void startFromSeed(RobotsTxtParser rules) {
+        robotsTxtParser = rules;
+        try {
+            if (isRunning && resumeFromCheckpoint) {
+                restoreFrontier();
+            }
+            if (isRunning) {
+                queueUrl(baseUrl, 0, 0);
+            }
+            if (isRunning && sitemapSeeding && !rules.getSitemaps().isEmpty()) {
+                // Counts as a page in flight so the crawl does not end before the sitemaps are read
+                pagesInFlight.incrementAndGet();
+                readyTasks.add(() -> seedFromSitemaps(rules.getSitemaps()));
+            }
+        } finally {
+            pagesInFlight.decrementAndGet();
+            CrawlScheduler.getInstance().signalWork();
+        }
+    }
+    
+    /**
+     * Queue the pages listed in sitemaps, so pages deep in a big site are found in
+     * one round trip instead of one page per link hop. The newest pages are queued
+     * first, at most maxPages of them, one link away from the seed and with a bonus
+     * for a recent lastmod.
+     * 
+     * @param sitemaps The sitemap URLs from robots.txt
+     */
+    private void seedFromSitemaps(List<String> sitemaps) {
+        try {
+            List<SitemapReader.SitemapUrl> pages = new SitemapReader(budget, requestCount, bytesDownloaded, urlQueue, baseHost)
+                    .read(sitemaps, MAX_SITEMAP_URLS);
+            pages.sort(Comparator.comparingLong(SitemapReader.SitemapUrl::getLastModified).reversed());
+            long now = System.currentTimeMillis();
+            int queued = 0;
+            for (SitemapReader.SitemapUrl page : pages) {
+                if (!isRunning || queued >= maxPages) {
+                    break;
+                }
+                if (queueUrl(page.getLoc(), 1, 0, FrontierOrder.freshness(page.getLastModified(), now))) {
+                    queued++;
+                }
+            }
+            sitemapUrlsQueued.set(queued);
+            System.out.println("Queued " + queued + " of " + pages.size() + " sitemap URLs for " + baseUrl);
+        } finally {
+            pagesInFlight.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Mark a page as processed once its links have been queued
+     * 
+     * @param url The URL of the page
+     * @param done false if the page was put back in the queue instead
+     */
+    private void finishPage(String url, boolean done) {
+        if (done && checkpoint != null) {
+            checkpoint.recordPage(url);
+        }
+        pagesInFlight.decrementAndGet();
+    }
+    
+    /**
+     * Put a page back in the queue because its host's circuit is open. The host
+     * is held back until the circuit lets a trial through, so no worker waits
+     * for it. A page put back too many times is dropped.
+     * 
+     * @param entry The page and its priority
+     * @return true if the page was put back, false if it was dropped
+     */
+    private boolean requeueForOpenCircuit(FrontierEntry entry) {
+        String url = entry.getUrl();
+        int requeues = circuitRequeues.merge(url, 1, Integer::sum);
+        if (requeues > MAX_CIRCUIT_REQUEUES || !isRunning) {
+            System.err.println("Error processing URL: " + url + " - Host circuit still open, giving up");
+            return false;
+        }
+        synchronized (lock) {
+            urlQueue.add(url, entry.getDepth(), entry.getScore());
+        }
+        // The page does not count against maxPages until it is fetched
+        pagesCrawled.decrementAndGet();
+        pagesRequeued.incrementAndGet();
+        return true;
+    }
+    
+    /**
+     * Load the visited pages and images of an earlier run from the checkpoint
+     */
+    private void restoreProgress() {
+        try {
+            pagesCrawled.set(checkpoint.loadDone(visitedUrls));
+            checkpoint.loadImages(metadata -> {
+                imageUrls.add(metadata.getUrl());
+                imageMetadata.put(metadata.getUrl(), metadata);
+            });
+            System.out.println("Resuming crawl of " + baseUrl + " after " + pagesCrawled.get()
+                    + " pages and " + imageUrls.size() + " images");
+        } catch (IOException e) {
+            System.err.println("Could not restore checkpoint, crawling from the start: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Queue the URLs the earlier run had not crawled yet. Runs in the robots.txt
+     * stage since the frontier needs the crawl delay. The checkpoint does not keep
+     * link depths, so these URLs are queued at the seed's depth and go first.
+     */
+    private void restoreFrontier() {
+        // The log is read without the lock, and only each batch is queued under it
+        List<String> batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+        try {
+            checkpoint.loadFrontier(visitedUrls, url -> {
+                batch.add(url);
+                if (batch.size() >= RESTORE_BATCH_SIZE) {
+                    queueRestored(batch);
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not restore the checkpointed frontier: " + e.getMessage());
+        }
+        queueRestored(batch);
+    }
+
+    /**
+     * Queue a batch of restored URLs and empty the batch
+     * 
+     * @param batch URLs read from the checkpoint
+     */
+    private void queueRestored(List<String> batch) {
+        synchronized (lock) {
+            for (String url : batch) {
+                urlQueue.add(url);
+            }
+        }
+        batch.clear();
+    }
+    
     /**
      * Forcibly stop the crawler
      */
     public void stop() {
         if (isRunning) {
-            isRunning = false;
-            executor.shutdownNow();
+            stopReason.compareAndSet(null, StopReason.STOPPED);
+            halt();
             System.out.println("Crawler stopped by user request");
         }
     }
     
     /**
-     * Process URLs from the queue until it's empty
+     * Stop handing out pages and interrupt the ones in progress
      */
-    private void processUrlQueue() {
-        while (isRunning && pagesCrawled.get() < maxPages) {
-            String url = null;
-            try {
-                // Get next URL from the queue with a timeout
-                url = urlQueue.poll(1, TimeUnit.SECONDS);
-                
-                // If no URL is available, break
-                if (url == null) {
-                    // Check if other threads are still working
-                    if (urlQueue.isEmpty() && pagesCrawled.get() > 0) {
-                        break;
-                    } else {
-                        continue;
-                    }
-                }
-                
-                // Process the URL with more robust error handling
+    private void halt() {
+        isRunning = false;
+        CrawlScheduler.getInstance().cancel(schedulerHandle);
+    }
+    
+    /**
+     * Stop starting new pages because a budget ran out. Pages in flight still
+     * finish, so their results are kept.
+     * 
+     * @param reason The budget that ran out
+     */
+    private void exhaust(StopReason reason) {
+        if (stopReason.compareAndSet(null, reason)) {
+            System.out.println("Crawl budget exhausted (" + reason + "), finishing pages in flight");
+            CrawlScheduler.getInstance().signalWork();
+        }
+    }
+    
+    /**
+     * Check the budget before a page is started
+     * 
+     * @return true if a budget has run out
+     */
+    private boolean isOverBudget() {
+        if (stopReason.get() != null) {
+            return true;
+        }
+        StopReason reason = budget.check(deadline, requestCount.get(), bytesDownloaded.get(), imageMetadata.size());
+        if (reason != null) {
+            exhaust(reason);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Limit how much this crawl may spend. When a budget runs out no new page is
+     * started, the pages in flight finish and the crawl returns what it found,
+     * with {@link #getStopReason()} telling which budget ran out. Must be called
+     * before {@link #crawl()}.
+     * 
+     * @param budget The budget, or null for no limits
+     */
+    public void setBudget(CrawlBudget budget) {
+        this.budget = budget != null ? budget : CrawlBudget.UNLIMITED;
+    }
+    
+    /**
+     * Adapt the number of concurrent fetches to each host to how it responds,
+     * up to the thread count, or the async in-flight cap in async fetch mode.
+     * Enabled by default; when disabled, every fetch may go to the same host. Must be called
+     * before {@link #crawl()}.
+     * 
+     * @param adaptiveConcurrency Whether to adapt concurrency per host
+     */
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+    
+    /**
+     * Seed the frontier with the pages listed in the sitemaps named by robots.txt.
+     * Enabled by default. Must be called before {@link #crawl()}.
+     * 
+     * @param sitemapSeeding Whether to read sitemaps
+     */
+    public void setSitemapSeeding(boolean sitemapSeeding) {
+        this.sitemapSeeding = sitemapSeeding;
+    }
+    
+    /**
+     * Set the scheduling priority of this crawl relative to other crawls on the node.
+     * Must be called before {@link #crawl()}.
+     * 
+     * @param priority Priority between {@link CrawlScheduler#MIN_PRIORITY} and {@link CrawlScheduler#MAX_PRIORITY}
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+    
+    /**
+     * Hands this crawl's pages to the {@link CrawlScheduler} one task at a time
+     */
+    private class SchedulerHandle implements CrawlScheduler.Crawl {
+        @Override
+        public Runnable pollTask() {
+            if (!isRunning) {
+                return null;
+            }
+            
+            // Responses from async fetches are parsed first, they are already paid for
+            Runnable ready = readyTasks.poll();
+            if (ready != null) {
+                return ready;
+            }
+            
+            if (pagesCrawled.get() >= maxPages || isOverBudget()) {
+                return null;
+            }
+            if (fetchMode == FetchMode.ASYNC && asyncFetchesInFlight.get() >= MAX_ASYNC_IN_FLIGHT) {
+                return null;
+            }
+            
+            // Get the next URL whose host is due for a fetch. The page counts as
+            // in flight until its links have been queued.
+            FrontierEntry entry = urlQueue.poll();
+            if (entry == null) {
+                return null;
+            }
+            pagesCrawled.incrementAndGet();
+            pagesInFlight.incrementAndGet();
+            
+            if (fetchMode == FetchMode.ASYNC) {
+                return () -> startAsyncFetch(entry);
+            }
+            return () -> {
+                boolean done = true;
                 try {
-                    processSinglePage(url);
-                } catch (Exception e) {
-                    System.err.println("Error processing URL: " + url + " - " + e.getMessage());
-                    // Continue processing other URLs even if one fails
+                    done = processSinglePage(entry);
+                } finally {
+                    finishPage(entry.getUrl(), done);
                 }
-                
-                // Apply crawl delay with small random jitter to be more natural
-                int delay = robotsTxtParser.getCrawlDelay(crawlDelayMs);
-                int jitter = new java.util.Random().nextInt(200); // Add up to 200ms jitter
-                Thread.sleep(delay + jitter);
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+            };
+        }
+
+        @Override
+        public boolean isFinished() {
+            if (!isRunning) {
+                return true;
+            }
+            
+            // Check in-flight pages first: a page queues its links before it stops
+            // counting, so seeing zero here means the queue below is up to date
+            if (pagesInFlight.get() > 0) {
+                return false;
+            }
+            return urlQueue.isEmpty() || pagesCrawled.get() >= maxPages || stopReason.get() != null;
+        }
+
+        @Override
+        public void onDetached() {
+            detached.countDown();
+        }
+
+        @Override
+        public int getMaxConcurrency() {
+            return threadCount;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public long getNextTaskDelayMs() {
+            // Pages finishing or async responses arriving signal the scheduler
+            if (!isRunning || pagesCrawled.get() >= maxPages || stopReason.get() != null) {
+                return Long.MAX_VALUE;
             }
+            if (fetchMode == FetchMode.ASYNC && asyncFetchesInFlight.get() >= MAX_ASYNC_IN_FLIGHT) {
+                return Long.MAX_VALUE;
+            }
+            // Wake at the deadline too, so the time budget is noticed without a signal
+            long untilDeadline = Math.max(0, deadline - System.currentTimeMillis());
+            return Math.min(urlQueue.getNextReadyDelayMs(), untilDeadline);
         }
     }
 
@@ -193,280 +581,439 @@ public class WebCrawler {
      * Queue a URL for crawling if it meets all criteria
      * 
      * @param url The URL to queue
+     * @param linkDepth Number of links followed from the seed URL to reach it
+     * @param parentImageCount Number of images on the page the link was found on
+     */
+    private void queueUrl(String url, int linkDepth, int parentImageCount) {
+        queueUrl(url, linkDepth, parentImageCount, 0);
+    }
+
+    /**
+     * Queue a URL for crawling if it meets all criteria
+     * 
+     * @param url The URL to queue
+     * @param linkDepth Number of links followed from the seed URL to reach it
+     * @param parentImageCount Number of images on the page the link was found on
+     * @param bonus Added to the URL's score, e.g. for a recent sitemap lastmod
+     * @return true if the URL was queued
      */
-    private void queueUrl(String url) {
+    private boolean queueUrl(String url, int linkDepth, int parentImageCount, double bonus) {
         // Skip empty or invalid URLs
         if (url == null || url.isEmpty()) {
-            return;
+            return false;
         }
         
-        // Check URL scheme
-        try {
-            URL urlObj = new URL(url);
-            String scheme = urlObj.getProtocol();
-            if (!ALLOWED_SCHEMES.contains(scheme.toLowerCase())) {
-                return;
+        // The page count can drop again when a page is requeued for an open
+        // circuit, so a link skipped here must not be remembered as seen
+        if (pagesCrawled.get() >= maxPages) {
+            return false;
+        }
+        
+        // Most links on a big site are navigation links that were seen before, and
+        // every check below gives a link the same verdict for the rest of the crawl,
+        // so repeats are dropped before any parsing. The filter answers "new" for
+        // most new links without touching the fingerprints, which only confirm
+        // the filter's hits.
+        if (linkFilter != null) {
+            if (linkFilter.mightContain(url) && seenLinks.contains(url)) {
+                duplicateLinksSkipped.incrementAndGet();
+                return false;
             }
-        } catch (MalformedURLException e) {
-            return;
+            seenLinks.add(url);
+            linkFilter.put(url);
+        }
+        
+        // Parse once: scheme, depth, host and path all come from the same parse
+        CanonicalUrl parsed = CanonicalUrl.parse(url);
+        if (parsed == null) {
+            return false;
         }
         
         // Check URL depth to prevent deep crawling
-        int depth = getUrlDepth(url);
-        if (depth > MAX_URL_DEPTH) {
+        if (parsed.getDepth() > MAX_URL_DEPTH) {
             System.out.println("Skipping URL (too deep): " + url);
-            return;
+            return false;
         }
         
-        String canonicalUrl = canonicalizeUrl(url);
+        String canonicalUrl = parsed.toString();
 
-        // Skip if already visited or if max pages reached
-        if (visitedUrls.contains(canonicalUrl) || pagesCrawled.get() >= maxPages) {
-            return;
+        // Skip if already visited
+        if (visitedUrls.contains(canonicalUrl)) {
+            return false;
         }
 
         // Check if URL is in the same domain
-        if (!isSameDomain(canonicalUrl)) {
-            return;
+        if (!isSameDomain(parsed)) {
+            return false;
         }
         
         // Check robots.txt rules
-        if (!robotsTxtParser.isAllowed(canonicalUrl)) {
+        if (!robotsTxtParser.isAllowedPath(parsed.getPathAndQuery())) {
             System.out.println("Skipping URL (disallowed by robots.txt): " + canonicalUrl);
-            return;
+            return false;
         }
 
         // Mark as visited
+        double score = FrontierOrder.score(parsed.getPathAndQuery(), parentImageCount) + bonus;
+        boolean queued;
         synchronized (lock) {
-            if (visitedUrls.add(canonicalUrl)) {
+            queued = visitedUrls.add(canonicalUrl);
+            if (queued) {
                 // Add to queue for processing
-                urlQueue.add(canonicalUrl);
+                urlQueue.add(canonicalUrl, linkDepth, score);
             }
         }
+        if (queued && checkpoint != null) {
+            checkpoint.recordQueued(canonicalUrl);
+        }
+        return queued;
+    }
+
+    /**
+     * Start a non-blocking fetch. The response is queued as a parse task for the
+     * scheduler, so no thread waits for the network.
+     * 
+     * @param entry The URL to fetch and its priority
+     */
+    private void startAsyncFetch(FrontierEntry entry) {
+        String url = entry.getUrl();
+        asyncFetchesInFlight.incrementAndGet();
+        asyncFetcher.fetch(url).whenComplete((page, error) -> {
+            asyncFetchesInFlight.decrementAndGet();
+            urlQueue.release(url);
+            readyTasks.add(() -> {
+                boolean done = true;
+                try {
+                    Throwable cause = error != null && error.getCause() != null ? error.getCause() : error;
+                    if (cause instanceof CircuitOpenException) {
+                        done = !requeueForOpenCircuit(entry);
+                    } else if (cause instanceof BudgetExhaustedException) {
+                        // Left for a resumed crawl
+                        done = false;
+                    } else if (cause != null) {
+                        System.err.println("Error processing URL: " + url + " - " + cause.getMessage());
+                    } else if (page != null) {
+                        processFetchedPage(url, entry.getDepth(), page);
+                    }
+                } finally {
+                    finishPage(url, done);
+                }
+            });
+            CrawlScheduler.getInstance().signalWork();
+        });
     }
 
     /**
      * Process a single page - extract images and find links
      * 
-     * @param url The URL to process
+     * @param entry The URL to process and its priority
+     * @return false if the page was put back in the queue because its host's
+     *         circuit is open, or not fetched because the budget ran out
      */
-    private void processSinglePage(String url) {
-        // Increment counter
-        pagesCrawled.incrementAndGet();
-        
+    private boolean processSinglePage(FrontierEntry entry) {
+        String url = entry.getUrl();
         try {
-            // Initialize redirect tracking for this URL
-            Set<String> redirectsVisited = new HashSet<>();
-            redirectsVisited.add(canonicalizeUrl(url));
-            redirectChains.put(url, redirectsVisited);
-            
-            // Configure connection with custom settings
-            Connection connection = Jsoup.connect(url)
-                    .userAgent("Eulerity-Crawler/1.0")
-                    .timeout(CONNECTION_TIMEOUT_MS)
-                    .maxBodySize(1024 * 1024) // 1MB max body size
-                    .followRedirects(false) // Handle redirects manually
-                    .ignoreContentType(true) // Check content type ourselves
-                    .ignoreHttpErrors(false);
-            
-            // Use retry mechanism first
-            Connection.Response response = null;
+            // Fetch the page once, following redirects and retrying as needed.
+            // The host's concurrency slot is only held while fetching.
+            FetchedPage page;
             try {
-                response = executeWithRetry(connection, 3); // Try up to 3 times
-                if (response == null) {
-                    return; // Failed to get response after retries
-                }
-                
-                // Continue with redirect handling
-                response = executeRequestWithRedirects(connection, url, MAX_REDIRECTS);
-                if (response == null) {
-                    return; // Failed to get response after redirects
-                }
-            } catch (IOException e) {
-                System.err.println("Error processing URL: " + url + " - " + e.getMessage());
-                return;
+                page = fetchPage(url);
+            } finally {
+                urlQueue.release(url);
             }
-            
+            if (page != null) {
+                processFetchedPage(url, entry.getDepth(), page);
+            }
+        } catch (CircuitOpenException e) {
+            return !requeueForOpenCircuit(entry);
+        } catch (BudgetExhaustedException e) {
+            // Left for a resumed crawl
+            return false;
+        } catch (SocketTimeoutException e) {
+            System.err.println("Error processing URL: " + url + " - Read timed out");
+        } catch (HttpStatusException e) {
+            System.err.println("Error processing URL: " + url + " - HTTP error fetching URL");
+        } catch (IOException e) {
+            System.err.println("Error processing URL: " + url + " - " + e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Unexpected error processing URL: " + url + " - " + e.getMessage());
+        }
+        return true;
+    }
+    
+    /**
+     * Extract images and links from a fetched page
+     * 
+     * @param url The URL that was requested
+     * @param linkDepth Number of links followed from the seed URL to reach the page
+     * @param page The fetched page
+     */
+    private void processFetchedPage(String url, int linkDepth, FetchedPage page) {
+        try {
             // Get the final URL after possible redirects
-            String finalUrl = response.url().toString();
-            String canonicalFinalUrl = canonicalizeUrl(finalUrl);
+            String finalUrl = page.getUrl();
+            CanonicalUrl parsedFinalUrl = CanonicalUrl.parse(finalUrl);
+            String canonicalFinalUrl = parsedFinalUrl != null ? parsedFinalUrl.toString() : canonicalizeUrl(finalUrl);
             
             // If the URL was redirected, update the visited URLs
             if (!url.equals(finalUrl)) {
                 // Add the redirect target to visited URLs
                 synchronized (lock) {
-                    visitedUrls.add(canonicalFinalUrl);
+                    if (visitedUrls.add(canonicalFinalUrl) && checkpoint != null) {
+                        checkpoint.recordRedirect(canonicalFinalUrl);
+                    }
                 }
                 
                 // Check if the redirect target is in the same domain
-                if (!isSameDomain(canonicalFinalUrl)) {
+                if (parsedFinalUrl == null || !isSameDomain(parsedFinalUrl)) {
                     System.out.println("Skipping URL (redirect to different domain): " + canonicalFinalUrl);
                     return;
                 }
             }
             
+            // The page has not changed since the last crawl, reuse what was extracted then.
+            // The entry the request was sent with is used, as the store may have
+            // dropped or replaced it since.
+            if (page.isNotModified()) {
+                ValidatorStore.Entry cached = page.getRevalidated();
+                if (cached == null) {
+                    System.out.println("Skipping URL (not modified, but the request was not conditional): " + url);
+                    return;
+                }
+                pagesNotModified.incrementAndGet();
+                applyExtract(cached.getExtract(), url, linkDepth);
+                return;
+            }
+            
             // Check content type
-            String contentType = response.contentType();
+            String contentType = page.getContentType();
             if (contentType == null || !isAllowedContentType(contentType)) {
                 System.out.println("Skipping URL (disallowed content type: " + contentType + "): " + url);
                 return;
             }
             
-            // Parse the document from the response
-            Document document = response.parse();
-
-            // Extract images
-            extractImages(document, url);
-
-            // Extract links for further crawling
-            extractLinks(document);
+            // Find images and links, either from a full DOM or in one streaming pass
+            PageExtract extract;
+            if (extractMode == ExtractMode.STREAMING) {
+                extract = PageExtractor.fromHtml(page.openReader(), finalUrl, url);
+            } else {
+                extract = PageExtractor.fromDocument(page.parse(), url);
+            }
+            rememberValidators(canonicalFinalUrl, page, extract);
+            applyExtract(extract, url, linkDepth);
 
-        } catch (SocketTimeoutException e) {
-            System.err.println("Error processing URL: " + url + " - Read timed out");
-        } catch (HttpStatusException e) {
-            System.err.println("Error processing URL: " + url + " - HTTP error fetching URL");
         } catch (IOException e) {
             System.err.println("Error processing URL: " + url + " - " + e.getMessage());
         } catch (Exception e) {
             System.err.println("Unexpected error processing URL: " + url + " - " + e.getMessage());
-        } finally {
-            // Clean up redirect tracking for this URL
-            redirectChains.remove(url);
         }
     }
     
     /**
-     * Execute a request and follow redirects manually with improved loop detection
+     * Fetch a page with a single request per hop. Retries, redirect following and
+     * redirect loop detection are handled by one loop so that each response is
+     * downloaded exactly once and handed downstream.
      * 
-     * @param connection The JSoup connection
-     * @param originalUrl The original URL
-     * @param maxRedirects Maximum number of redirects to follow
-     * @return The final response or null if failed
-     */
-    private Connection.Response executeRequestWithRedirects(Connection connection, String originalUrl, int maxRedirects) 
-        throws IOException {
-        String currentUrl = originalUrl;
-        Set<String> visitedUrls = new HashSet<>();
+     * @param url The URL to fetch
+     * @return The final page, or null if the redirect limit was reached
+     * @throws IOException If the page could not be fetched after all retries
+     */
+    private FetchedPage fetchPage(String url) throws IOException {
+        String currentUrl = url;
+        Set<String> redirectsVisited = new HashSet<>();
+        redirectsVisited.add(normalizeUrl(url));
+        int redirectCount = 0;
+        int attempt = 0;
+        long retryAfterMs = 0;
         
-        for (int redirectCount = 0; redirectCount < maxRedirects; redirectCount++) {
+        while (true) {
+            // Revalidate pages downloaded before instead of downloading them again
+            ValidatorStore.Entry cached = validators.get(canonicalizeUrl(currentUrl));
+            Connection.Response response;
             try {
-                // Execute the request
-                Connection.Response response = connection.execute();
-                
-                int statusCode = response.statusCode();
-                
-                // Check if it's a redirect status code
-                if (!(statusCode >= 300 && statusCode < 400)) {
-                    return response; // Not a redirect, return the response
-                }
-                
-                // Get the redirect location
-                String location = response.header("Location");
-                if (location == null || location.isEmpty()) {
-                    return response; // No valid redirect location
-                }
-                
-                // Resolve relative redirects
-                URL base = new URL(currentUrl);
-                URL redirectUrl = new URL(base, location);
-                String redirectUrlStr = redirectUrl.toString();
-                
-                // Normalize the URLs for better comparison
-                String normalizedRedirectUrl = normalizeUrl(redirectUrlStr);
-                
-                // Better redirect loop detection with normalized URLs
-                if (visitedUrls.contains(normalizedRedirectUrl)) {
-                    System.out.println("Potential redirect loop detected. Stopping at: " + redirectUrlStr);
-                    return response; // Return the last valid response instead of null
-                }
-                
-                // Add to visited URLs
-                visitedUrls.add(normalizedRedirectUrl);
-                
-                // Update current URL and connection
-                currentUrl = redirectUrlStr;
-                
-                // Apply a progressive delay between redirects
-                try {
-                    Thread.sleep(Math.min(200 * (redirectCount + 1), 2000));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                // Apply backoff if this is a retry
+                if (attempt > 0) {
+                    backoffBeforeRetry(attempt, retryAfterMs);
                 }
-                
-                connection = Jsoup.connect(currentUrl)
-                        .userAgent("Mozilla/5.0 (compatible; EulerityBot/1.0)")
-                        .timeout(CONNECTION_TIMEOUT_MS)
-                        .maxBodySize(1024 * 1024)
-                        .followRedirects(false)
-                        .ignoreContentType(true)
-                        .ignoreHttpErrors(false);
-                
+                response = executeRequest(currentUrl, CONNECTION_TIMEOUT_MS * (attempt + 1), cached);
+            } catch (CircuitOpenException | BudgetExhaustedException e) {
+                // The host is down or the crawl is over, a retry would only hold the worker
+                throw e;
             } catch (IOException e) {
-                // If we've already followed some redirects, log and retry with increased timeout
-                if (redirectCount > 0) {
-                    System.err.println("Error during redirect handling: " + e.getMessage());
-                    try {
-                        // Apply backoff before retry
-                        Thread.sleep(1000);
-                        // Retry with increased timeout
-                        connection = connection.timeout(CONNECTION_TIMEOUT_MS * 2);
-                        return connection.execute();
-                    } catch (IOException finalError) {
-                        throw finalError;
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted during redirect handling");
-                    }
-                } else {
+                attempt++;
+                retryAfterMs = e instanceof RetryAfterException ? ((RetryAfterException) e).getRetryAfterMs() : 0;
+                System.err.println("Request failed (attempt " + attempt + "/" + MAX_RETRIES + "): " + e.getMessage());
+                
+                // Client errors will not change on retry
+                if (attempt >= MAX_RETRIES || isClientError(e)) {
                     throw e;
                 }
+                continue;
             }
-        }
-        
-        // If we get here, we've hit the maximum redirects
-        System.err.println("Maximum redirects reached for URL: " + currentUrl);
-        return null;
-    }
-    
-    /**
-     * Execute a request with retry mechanism
-     * 
-     * @param connection The JSoup connection
-     * @param maxRetries Maximum number of retries
-     * @return The response or null if all retries failed
-     * @throws IOException If an I/O error occurs
+            
+            int statusCode = response.statusCode();
+            
+            // Not a redirect, this is the response we were looking for
+            if (!(statusCode >= 300 && statusCode < 400) || statusCode == 304) {
+                return FetchedPage.from(response, cached);
+            }
+            
+            // Get the redirect location
+            String location = response.header("Location");
+            if (location == null || location.isEmpty()) {
+                return FetchedPage.from(response, cached); // No valid redirect location
+            }
+            
+            if (++redirectCount > MAX_REDIRECTS) {
+                System.err.println("Maximum redirects reached for URL: " + currentUrl);
+                return null;
+            }
+            
+            // Resolve relative redirects
+            String redirectUrl = new URL(new URL(currentUrl), location).toString();
+            
+            // Redirect loop detection with normalized URLs
+            if (!redirectsVisited.add(normalizeUrl(redirectUrl))) {
+                System.out.println("Potential redirect loop detected. Stopping at: " + redirectUrl);
+                return FetchedPage.from(response, cached); // Return the last valid response instead of null
+            }
+            
+            // Apply a progressive delay between redirects
+            try {
+                Thread.sleep(Math.min(200 * redirectCount, 2000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted during redirect handling");
+            }
+            
+            // Each hop gets a fresh retry allowance
+            currentUrl = redirectUrl;
+            attempt = 0;
+        }
+    }
+    
+    /**
+     * Execute a single HTTP request and record it in the crawl statistics and
+     * the concurrency limit of its host
+     * 
+     * @param url The URL to request
+     * @param timeoutMs The timeout to use for this request
+     * @param cached The stored validators to make the request conditional on, or null
+     * @return The response
+     * @throws IOException If the request fails or the server answers with an error
+     * @throws CircuitOpenException If the host's circuit is open, without sending the request
+     * @throws BudgetExhaustedException If the request or byte budget has run out
      */
-    private Connection.Response executeWithRetry(Connection connection, int maxRetries) throws IOException {
-        IOException lastException = null;
+    private Connection.Response executeRequest(String url, int timeoutMs, ValidatorStore.Entry cached) throws IOException {
+        if (!urlQueue.allowRequest(url)) {
+            throw new CircuitOpenException(url);
+        }
+        budget.reserveRequest(requestCount, bytesDownloaded);
+        Connection connection = Jsoup.connect(url)
+                .userAgent(USER_AGENT)
+                .timeout(timeoutMs)
+                .maxBodySize(budget.capBodySize(MAX_BODY_SIZE, bytesDownloaded.get()))
+                .followRedirects(false) // Handle redirects manually
+                .ignoreContentType(true) // Check content type ourselves
+                .ignoreHttpErrors(true); // Check the status ourselves, to see Retry-After
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                connection.header("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                connection.header("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        long startedAt = System.currentTimeMillis();
+        Connection.Response response;
+        try {
+            response = connection.execute();
+        } catch (SocketTimeoutException e) {
+            urlQueue.recordTimeout(url, startedAt);
+            throw e;
+        } catch (IOException e) {
+            urlQueue.recordFailure(url);
+            throw e;
+        }
+        bytesDownloaded.addAndGet(response.bodyAsBytes().length);
         
-        for (int attempt = 0; attempt < maxRetries; attempt++) {
+        int statusCode = response.statusCode();
+        long retryAfterMs = parseRetryAfter(response.header("Retry-After"));
+        urlQueue.recordResponse(url, startedAt, statusCode, retryAfterMs);
+        if (statusCode < 200 || statusCode >= 400) {
+            throw retryAfterMs > 0 ? new RetryAfterException(statusCode, url, retryAfterMs)
+                    : new HttpStatusException("HTTP error fetching URL", statusCode, url);
+        }
+        return response;
+    }
+    
+    /**
+     * Parse a Retry-After header, given either in seconds or as an HTTP date
+     * 
+     * @param value The header value, or null if missing
+     * @return The delay in milliseconds, capped at MAX_RETRY_AFTER_MS, or 0 if
+     *         missing or invalid
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        value = value.trim();
+        long delayMs;
+        try {
+            delayMs = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
             try {
-                // Apply backoff if this is a retry
-                if (attempt > 0) {
-                    try {
-                        // Exponential backoff with jitter
-                        long backoffMs = Math.min(1000 * (long)Math.pow(2, attempt - 1), 10000);
-                        backoffMs += new java.util.Random().nextInt(1000); // Add jitter
-                        Thread.sleep(backoffMs);
-                        System.out.println("Retrying request (attempt " + (attempt + 1) + "/" + maxRetries + ")");
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Interrupted during retry backoff");
-                    }
-                }
-                
-                return connection.execute();
-            } catch (IOException e) {
-                lastException = e;
-                System.err.println("Request failed (attempt " + (attempt + 1) + "/" + maxRetries + "): " + e.getMessage());
-                
-                // Increase timeout for next attempt
-                connection = connection.timeout(CONNECTION_TIMEOUT_MS * (attempt + 2));
+                delayMs = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli()
+                        - System.currentTimeMillis();
+            } catch (DateTimeParseException e2) {
+                return 0;
             }
         }
-        
-        // All retries failed
-        throw lastException != null ? lastException : new IOException("All retries failed");
+        return Math.max(0, Math.min(MAX_RETRY_AFTER_MS, delayMs));
+    }
+    
+    /**
+     * Sleep before a retry using exponential backoff with jitter, or longer if
+     * the server asked for it with Retry-After
+     * 
+     * @param attempt The number of attempts made so far
+     * @param retryAfterMs The delay the server asked for, or 0 if none
+     * @throws IOException If interrupted while waiting
+     */
+    private void backoffBeforeRetry(int attempt, long retryAfterMs) throws IOException {
+        try {
+            Thread.sleep(Math.max(retryBackoffMs(attempt), retryAfterMs));
+            System.out.println("Retrying request (attempt " + (attempt + 1) + "/" + MAX_RETRIES + ")");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during retry backoff");
+        }
+    }
+    
+    /**
+     * Compute the exponential backoff with jitter before a retry
+     * 
+     * @param attempt The number of attempts made so far
+     * @return The delay in milliseconds
+     */
+    static long retryBackoffMs(int attempt) {
+        long backoffMs = Math.min(1000 * (long)Math.pow(2, attempt - 1), 10000);
+        return backoffMs + new java.util.Random().nextInt(1000); // Add jitter
+    }
+    
+    /**
+     * Check whether a failed request was rejected with a 4xx status
+     * 
+     * @param e The exception thrown by the request
+     * @return true if the server answered with a client error
+     */
+    static boolean isClientError(IOException e) {
+        if (e instanceof HttpStatusException) {
+            int status = ((HttpStatusException) e).getStatusCode();
+            return status >= 400 && status < 500 && status != 429;
+        }
+        return false;
     }
     
     /**
@@ -491,100 +1038,49 @@ public class WebCrawler {
     }
 
     /**
-     * Extract all images from the document and add to the result set
+     * Store the validators of a downloaded page so the next crawl can revalidate
+     * it, and count it as unchanged if its images are the same as last time
      * 
-     * @param document The HTML document
-     * @param pageUrl The URL of the page where the images were found
-     */
-    private void extractImages(Document document, String pageUrl) {
-        // Find all img tags
-        Elements imgElements = document.select("img");
-        for (Element img : imgElements) {
-            String imageUrl = img.absUrl("src");
-            if (!imageUrl.isEmpty()) {
-                addImage(imageUrl, img, pageUrl);
-            }
-            
-            // Check for lazy-loaded images in data attributes
-            String dataSrc = img.attr("data-src");
-            if (!dataSrc.isEmpty()) {
-                String fullDataSrc = resolveUrl(pageUrl, dataSrc);
-                if (!fullDataSrc.isEmpty()) {
-                    addImage(fullDataSrc, img, pageUrl);
-                }
-            }
-            
-            // Check other common data attributes for images
-            String[] dataAttrs = {"data-original", "data-lazy-src", "data-srcset", "data-lazy"};
-            for (String attr : dataAttrs) {
-                String attrValue = img.attr(attr);
-                if (!attrValue.isEmpty()) {
-                    String fullAttrSrc = resolveUrl(pageUrl, attrValue);
-                    if (!fullAttrSrc.isEmpty()) {
-                        addImage(fullAttrSrc, img, pageUrl);
-                    }
-                }
-            }
-            
-            // Check srcset attribute
-            String srcset = img.attr("srcset");
-            if (!srcset.isEmpty()) {
-                extractImagesFromSrcset(srcset, img, pageUrl);
-            }
-        }
-
-        // Look for CSS background images (limited to style attributes for simplicity)
-        Elements elementsWithStyle = document.select("[style]");
-        for (Element element : elementsWithStyle) {
-            String style = element.attr("style");
-            if (style.contains("background-image")) {
-                extractImageUrlFromStyle(style, pageUrl);
-            }
-        }
-        
-        // Look for image links
-        Elements linkElements = document.select("a[href]");
-        for (Element link : linkElements) {
-            String href = link.absUrl("href");
-            // Check if the link points to an image file
-            if (isImageUrl(href)) {
-                addImage(href, null, pageUrl);
-            }
+     * @param canonicalUrl The canonical final URL of the page
+     * @param page The fetched page
+     * @param extract The candidates found in the page
+     */
+    private void rememberValidators(String canonicalUrl, FetchedPage page, PageExtract extract) {
+        ValidatorStore.Entry previous = validators.get(canonicalUrl);
+        ValidatorStore.Entry entry = new ValidatorStore.Entry(
+                page.getEtag(), page.getLastModified(), page.getContentType(), extract);
+        if (previous != null && previous.getImageHash() == entry.getImageHash()) {
+            pagesUnchanged.incrementAndGet();
         }
+        validators.put(canonicalUrl, entry);
     }
-    
+
     /**
-     * Extract images from srcset attribute
+     * Add the images of a page to the results and queue its links
      * 
-     * @param srcset The srcset attribute value
-     * @param imgElement The img element
-     * @param pageUrl The page URL
+     * @param extract The candidates found in the page
+     * @param pageUrl The URL of the page
+     * @param linkDepth Number of links followed from the seed URL to reach the page
      */
-    private void extractImagesFromSrcset(String srcset, Element imgElement, String pageUrl) {
-        // Split by commas (separates different image definitions)
-        String[] srcSetParts = srcset.split(",");
-        
-        for (String part : srcSetParts) {
-            // Extract the URL (ignoring the descriptor)
-            String[] spaceSplit = part.trim().split("\\s+");
-            if (spaceSplit.length > 0) {
-                String imageUrl = spaceSplit[0].trim();
-                String fullImageUrl = resolveUrl(pageUrl, imageUrl);
-                if (!fullImageUrl.isEmpty()) {
-                    addImage(fullImageUrl, imgElement, pageUrl);
-                }
-            }
+    private void applyExtract(PageExtract extract, String pageUrl, int linkDepth) {
+        for (PageExtract.ImageCandidate image : extract.getImages()) {
+            addImage(image, pageUrl);
+        }
+        int imageCount = extract.getImages().size();
+        for (String link : extract.getLinks()) {
+            queueUrl(link, linkDepth + 1, imageCount);
         }
     }
 
     /**
      * Add an image to the results with metadata
      * 
-     * @param imageUrl The URL of the image
-     * @param imgElement The img element (may be null for CSS background images)
+     * @param image The image URL and the attributes of its img tag, if any
      * @param pageUrl The URL of the page where the image was found
      */
-    private void addImage(String imageUrl, Element imgElement, String pageUrl) {
+    private void addImage(PageExtract.ImageCandidate image, String pageUrl) {
+        String imageUrl = image.getUrl();
+
         // Skip empty or invalid image URLs
         if (imageUrl == null || imageUrl.isEmpty()) {
             return;
@@ -599,194 +1095,116 @@ public class WebCrawler {
         imageUrl = canonicalizeUrl(imageUrl);
         
         // Only add if it's a new image
-        if (!imageUrls.contains(imageUrl)) {
-            synchronized (lock) {
-                // Check again in case another thread added it
-                if (!imageUrls.add(imageUrl)) {
-                    return;
-                }
+        if (imageUrls.contains(imageUrl)) {
+            return;
+        }
+        
+        // Create metadata
+        ImageMetadata metadata = new ImageMetadata(imageUrl);
+        metadata.setPageFound(pageUrl);
+        
+        // Extract additional metadata if available
+        String altText = image.getAltText();
+        if (!altText.isEmpty()) {
+            metadata.setAltText(altText);
+        }
+        
+        // Extract dimensions if available
+        String width = image.getWidth();
+        String height = image.getHeight();
+        if (!width.isEmpty()) {
+            try {
+                metadata.setWidth(Integer.parseInt(width));
+            } catch (NumberFormatException e) {
+                // Ignore invalid width
+            }
+        }
+        if (!height.isEmpty()) {
+            try {
+                metadata.setHeight(Integer.parseInt(height));
+            } catch (NumberFormatException e) {
+                // Ignore invalid height
+            }
+        }
+        
+        // Check if it's a logo using the enhanced detection - ONLY if logo detection is enabled.
+        // Images not found in an img tag have no alt text or dimensions to go on.
+        if (enableLogoDetection) {
+            metadata.setLogo(LogoDetector.isLikelyLogo(
+                imageUrl, 
+                metadata.getWidth(), 
+                metadata.getHeight(), 
+                metadata.getAltText(),
+                pageUrl));
+        } else {
+            metadata.setLogo(false); // Explicitly set to false when detection is disabled
+        }
+        
+        synchronized (lock) {
+            if (!budget.allowsImage(imageMetadata.size())) {
+                exhaust(StopReason.IMAGE_BUDGET);
+                return;
             }
             
-            // Create metadata
-            ImageMetadata metadata = new ImageMetadata(imageUrl);
-            metadata.setPageFound(pageUrl);
-            
-            // Extract additional metadata if available
-            if (imgElement != null) {
-                // Extract alt text
-                String altText = imgElement.attr("alt");
-                if (!altText.isEmpty()) {
-                    metadata.setAltText(altText);
-                }
-                
-                // Extract dimensions if available
-                String width = imgElement.attr("width");
-                String height = imgElement.attr("height");
-                if (!width.isEmpty()) {
-                    try {
-                        metadata.setWidth(Integer.parseInt(width));
-                    } catch (NumberFormatException e) {
-                        // Ignore invalid width
-                    }
-                }
-                if (!height.isEmpty()) {
-                    try {
-                        metadata.setHeight(Integer.parseInt(height));
-                    } catch (NumberFormatException e) {
-                        // Ignore invalid height
-                    }
-                }
-                
-                // Check if it's a logo using the enhanced detection - ONLY if logo detection is enabled
-                if (enableLogoDetection) {
-                    metadata.setLogo(LogoDetector.isLikelyLogo(
-                        imageUrl, 
-                        metadata.getWidth(), 
-                        metadata.getHeight(), 
-                        metadata.getAltText(),
-                        pageUrl));
-                } else {
-                    metadata.setLogo(false); // Explicitly set to false when detection is disabled
-                }
-            } else {
-                // For non-img elements, check if it's a logo using URL and page context - ONLY if logo detection is enabled
-                if (enableLogoDetection) {
-                    metadata.setLogo(LogoDetector.isLikelyLogo(imageUrl, -1, -1, null, pageUrl));
-                } else {
-                    metadata.setLogo(false); // Explicitly set to false when detection is disabled
-                }
+            // Check again in case another thread added it
+            if (!imageUrls.add(imageUrl)) {
+                return;
             }
             
-            // Store metadata
+            // Store metadata and publish it while holding the lock so that
+            // listeners registering concurrently see every image exactly once
             imageMetadata.put(imageUrl, metadata);
+            if (checkpoint != null) {
+                checkpoint.recordImage(metadata);
+            }
+            for (CrawlListener listener : listeners) {
+                listener.onImage(metadata);
+            }
         }
     }
 
     /**
-     * Extract image URL from CSS style attribute
+     * Register a listener for images found by this crawler. Images found before
+     * registration are replayed to the listener first, and if the crawl has
+     * already finished the listener is completed right away.
      * 
-     * @param style The CSS style string
-     * @param pageUrl The URL of the page where the image was found
+     * @param listener The listener to register
      */
-    private void extractImageUrlFromStyle(String style, String pageUrl) {
-        // Simple regex to find url() in background-image
-        int startIndex = style.indexOf("url(");
-        if (startIndex != -1) {
-            startIndex += 4;
-            int endIndex = style.indexOf(")", startIndex);
-            if (endIndex != -1) {
-                String url = style.substring(startIndex, endIndex).trim();
-                // Remove quotes if present
-                if ((url.startsWith("\"") && url.endsWith("\"")) || 
-                    (url.startsWith("'") && url.endsWith("'"))) {
-                    url = url.substring(1, url.length() - 1);
-                }
-                if (!url.isEmpty() && (url.startsWith("http") || url.startsWith("/") || url.startsWith("./") || url.startsWith("../"))) {
-                    // Skip data URLs
-                    if (url.startsWith("data:")) {
-                        return;
-                    }
-                    
-                    // Convert relative URLs to absolute
-                    String fullUrl = resolveUrl(pageUrl, url);
-                    if (!fullUrl.isEmpty()) {
-                        addImage(fullUrl, null, pageUrl);
-                    }
-                }
+    public void addListener(CrawlListener listener) {
+        synchronized (lock) {
+            for (ImageMetadata metadata : imageMetadata.values()) {
+                listener.onImage(metadata);
+            }
+            if (finished) {
+                listener.onComplete();
+            } else {
+                listeners.add(listener);
             }
         }
     }
-    
-    /**
-     * Resolve a relative URL against a base URL
-     * 
-     * @param baseUrl The base URL
-     * @param relativeUrl The relative URL
-     * @return The resolved URL or empty string if invalid
-     */
-    private String resolveUrl(String baseUrl, String relativeUrl) {
-        if (relativeUrl == null || relativeUrl.isEmpty()) {
-            return "";
-        }
-        
-        // Already absolute
-        if (relativeUrl.startsWith("http")) {
-            return relativeUrl;
-        }
-        
-        try {
-            URL base = new URL(baseUrl);
-            URL resolved = new URL(base, relativeUrl);
-            return resolved.toString();
-        } catch (MalformedURLException e) {
-            return "";
-        }
-    }
-    
+
     /**
-     * Check if a URL points to an image file
+     * Unregister a listener
      * 
-     * @param url The URL to check
-     * @return true if it's an image URL, false otherwise
+     * @param listener The listener to remove
      */
-    private boolean isImageUrl(String url) {
-        if (url == null || url.isEmpty()) {
-            return false;
-        }
-        
-        String lowerUrl = url.toLowerCase();
-        return lowerUrl.endsWith(".jpg") || 
-               lowerUrl.endsWith(".jpeg") || 
-               lowerUrl.endsWith(".png") || 
-               lowerUrl.endsWith(".gif") || 
-               lowerUrl.endsWith(".webp") || 
-               lowerUrl.endsWith(".svg") || 
-               lowerUrl.endsWith(".bmp") || 
-               lowerUrl.endsWith(".ico");
+    public void removeListener(CrawlListener listener) {
+        listeners.remove(listener);
     }
 
     /**
-     * Extract all links from the document for further crawling
-     * 
-     * @param document The HTML document
-     */
-    private void extractLinks(Document document) {
-        // Extract regular links
-        Elements linkElements = document.select("a[href]");
-        for (Element link : linkElements) {
-            String linkUrl = link.absUrl("href");
-            // Skip empty links, javascript:, mailto:, tel:, etc.
-            if (linkUrl.isEmpty() || linkUrl.startsWith("javascript:") || 
-                linkUrl.startsWith("mailto:") || linkUrl.startsWith("tel:") || 
-                linkUrl.startsWith("#")) {
-                continue;
-            }
-            
-            // Skip image URLs as they've already been processed
-            if (!isImageUrl(linkUrl)) {
-                queueUrl(linkUrl);
-            }
-        }
-        
-        // Extract iframe sources
-        Elements iframeElements = document.select("iframe[src]");
-        for (Element iframe : iframeElements) {
-            String srcUrl = iframe.absUrl("src");
-            if (!srcUrl.isEmpty()) {
-                queueUrl(srcUrl);
-            }
-        }
-        
-        // Extract form actions
-        Elements formElements = document.select("form[action]");
-        for (Element form : formElements) {
-            String actionUrl = form.absUrl("action");
-            if (!actionUrl.isEmpty()) {
-                queueUrl(actionUrl);
+     * Mark the crawl as finished and notify all listeners
+     */
+    private void notifyComplete() {
+        synchronized (lock) {
+            finished = true;
+            for (CrawlListener listener : listeners) {
+                listener.onComplete();
             }
+            listeners.clear();
         }
     }
-    
+
     /**
      * Get image metadata for all discovered images
      * 
@@ -809,34 +1227,12 @@ public class WebCrawler {
     /**
      * Check if a URL is in the same domain as the base URL
      * 
-     * @param url The URL to check
+     * @param url The parsed URL to check
      * @return true if in the same domain, false otherwise
      */
-    private boolean isSameDomain(String url) {
-        try {
-            URL urlObj = new URL(url);
-            String urlDomain = normalizeHost(urlObj.getHost());
-            URL baseUrlObj = new URL(domain);
-            String baseDomain = normalizeHost(baseUrlObj.getHost());
-            
-            return urlObj.getProtocol().equals(baseUrlObj.getProtocol()) && 
-                  urlDomain.equals(baseDomain);
-        } catch (MalformedURLException e) {
-            return false;
-        }
-    }
-    
-    /**
-     * Normalize hostname (e.g., remove www prefix)
-     * 
-     * @param host The hostname to normalize
-     * @return Normalized hostname
-     */
-    private String normalizeHost(String host) {
-        if (host.startsWith("www.")) {
-            return host.substring(4);
-        }
-        return host;
+    private boolean isSameDomain(CanonicalUrl url) {
+        return url.getScheme().equals(baseScheme) &&
+              CanonicalUrl.normalizeHost(url.getHost()).equals(baseHost);
     }
 
     /**
@@ -849,7 +1245,11 @@ public class WebCrawler {
         try {
             URL urlObj = new URL(url);
             String protocol = urlObj.getProtocol();
-            String host = normalizeHost(urlObj.getHost());
+            String host = CanonicalUrl.normalizeHost(urlObj.getHost());
+            // Keep an explicit port, robots.txt lives on the same origin as the page
+            if (urlObj.getPort() != -1) {
+                host += ":" + urlObj.getPort();
+            }
             return protocol + "://" + host;
         } catch (MalformedURLException e) {
             // If URL is malformed, return the original URL as a fallback
@@ -857,140 +1257,14 @@ public class WebCrawler {
         }
     }
     
-    /**
-     * Get the depth of a URL (number of path segments)
-     * 
-     * @param url The URL to check
-     * @return The depth
-     */
-    private int getUrlDepth(String url) {
-        try {
-            URL urlObj = new URL(url);
-            String path = urlObj.getPath();
-            if (path == null || path.isEmpty() || path.equals("/")) {
-                return 0;
-            }
-            
-            // Count slashes in the path
-            int depth = 0;
-            for (int i = 0; i < path.length(); i++) {
-                if (path.charAt(i) == '/') {
-                    depth++;
-                }
-            }
-            return depth;
-        } catch (MalformedURLException e) {
-            return 0;
-        }
-    }
-
     /**
      * Canonicalize URL to ensure consistent representation
      * 
      * @param url The URL to canonicalize
      * @return Canonicalized URL
      */
-    private String canonicalizeUrl(String url) {
-        if (url == null || url.isEmpty()) {
-            return "";
-        }
-        
-        try {
-            // Ensure URL has protocol
-            if (!url.startsWith("http://") && !url.startsWith("https://")) {
-                url = "https://" + url;
-            }
-            
-            // Parse URL
-            URL urlObj = new URL(url);
-            String protocol = urlObj.getProtocol();
-            String host = normalizeHost(urlObj.getHost());
-            int port = urlObj.getPort();
-            String path = urlObj.getPath();
-            String query = urlObj.getQuery();
-            
-            // Normalize path: ensure it starts with / and handle default pages
-            if (path == null || path.isEmpty()) {
-                path = "/";
-            } else if (path.endsWith("/index.html") || path.endsWith("/index.php") || 
-                      path.endsWith("/index.asp") || path.endsWith("/index.jsp") ||
-                      path.endsWith("/default.html") || path.endsWith("/default.php") ||
-                      path.endsWith("/default.asp") || path.endsWith("/default.jsp") ||
-                      path.endsWith("/home.html") || path.endsWith("/home.php") ||
-                      path.endsWith("/home.asp") || path.endsWith("/home.jsp")) {
-                // Replace with directory root
-                path = path.substring(0, path.lastIndexOf('/') + 1);
-            }
-            
-            // Remove trailing slash from path except for root
-            if (path.length() > 1 && path.endsWith("/")) {
-                path = path.substring(0, path.length() - 1);
-            }
-            
-            // Clean query parameters
-            String cleanQuery = cleanQueryParameters(query);
-            
-            // Build canonicalized URL
-            StringBuilder result = new StringBuilder();
-            result.append(protocol).append("://").append(host);
-            
-            if (port != -1 && port != 80 && port != 443) {
-                result.append(":").append(port);
-            }
-            
-            result.append(path);
-            
-            if (cleanQuery != null && !cleanQuery.isEmpty()) {
-                result.append("?").append(cleanQuery);
-            }
-            
-            return result.toString();
-            
-        } catch (MalformedURLException e) {
-            // If parsing fails, return normalized version
-            return normalizeUrl(url);
-        }
-    }
-    
-    /**
-     * Clean query parameters by removing tracking parameters
-     * 
-     * @param query The query string
-     * @return Cleaned query string
-     */
-    private String cleanQueryParameters(String query) {
-        if (query == null || query.isEmpty()) {
-            return null;
-        }
-        
-        StringBuilder result = new StringBuilder();
-        String[] pairs = query.split("&");
-        boolean first = true;
-        
-        for (String pair : pairs) {
-            // Skip empty pairs
-            if (pair.isEmpty()) {
-                continue;
-            }
-            
-            // Split parameter name and value
-            String[] parts = pair.split("=", 2);
-            String name = parts[0];
-            
-            // Skip ignored parameters
-            if (IGNORED_QUERY_PARAMS.contains(name.toLowerCase())) {
-                continue;
-            }
-            
-            // Add parameter to result
-            if (!first) {
-                result.append("&");
-            }
-            result.append(pair);
-            first = false;
-        }
-        
-        return result.toString();
+    public static String canonicalizeUrl(String url) {
+        return CanonicalUrl.canonicalize(url);
     }
     
     /**
@@ -999,12 +1273,12 @@ public class WebCrawler {
      * @param url The URL to normalize
      * @return Normalized URL
      */
-    private String normalizeUrl(String url) {
+    static String normalizeUrl(String url) {
         try {
             // Remove fragments
             URL urlObj = new URL(url);
             String protocol = urlObj.getProtocol();
-            String host = normalizeHost(urlObj.getHost());
+            String host = CanonicalUrl.normalizeHost(urlObj.getHost());
             String path = urlObj.getPath();
             
             // Normalize path
@@ -1037,6 +1311,113 @@ public class WebCrawler {
         }
     }
 
+    /**
+     * Select the HTTP engine used to fetch pages. Must be called before {@link #crawl()}.
+     * 
+     * @param fetchMode The fetch mode
+     */
+    public void setFetchMode(FetchMode fetchMode) {
+        this.fetchMode = fetchMode;
+    }
+
+    /**
+     * Select how images and links are found in fetched pages. Must be called before {@link #crawl()}.
+     * 
+     * @param extractMode The extraction mode
+     */
+    public void setExtractMode(ExtractMode extractMode) {
+        this.extractMode = extractMode;
+    }
+
+    /**
+     * Select how already queued URLs are remembered. Must be called before {@link #crawl()}.
+     * {@link DedupeMode#FINGERPRINT} keeps a fraction of the memory for crawls of
+     * hundreds of thousands of pages, but {@link #getVisitedUrls()} is then empty.
+     * 
+     * @param dedupeMode The dedupe mode
+     */
+    public void setDedupeMode(DedupeMode dedupeMode) {
+        this.dedupeMode = dedupeMode;
+        this.visitedUrls = newSeenSet();
+    }
+
+    /**
+     * Record the crawl's progress in a checkpoint, or continue from it. Must be
+     * called before {@link #crawl()}. The checkpoint is not closed by the crawler.
+     * 
+     * @param checkpoint The checkpoint
+     * @param resume true to continue from the progress already in the checkpoint
+     */
+    public void setCheckpoint(CrawlCheckpoint checkpoint, boolean resume) {
+        this.checkpoint = checkpoint;
+        this.resumeFromCheckpoint = resume;
+    }
+
+    /**
+     * Keep at most this many queued URLs per host on the heap and spill the rest
+     * to memory-mapped files, for crawls of millions of pages. Must be called
+     * before {@link #crawl()}.
+     * 
+     * @param hotUrls URLs per host kept in memory, or 0 to keep every URL in memory
+     */
+    public void setFrontierSpillThreshold(int hotUrls) {
+        this.frontierSpillThreshold = hotUrls;
+    }
+
+    /**
+     * Set the order in which each host's queued URLs are crawled. The default,
+     * {@link FrontierOrder#DEPTH_AND_SCORE}, crawls breadth-first but moves pages
+     * that look like galleries or product pages, or were linked from pages with
+     * many images, ahead, so a small maxPages is spent on image-rich pages. A
+     * frontier that spills to disk always keeps the order URLs were found in.
+     * Must be called before {@link #crawl()}.
+     * 
+     * @param order Orders the queued URLs, the smallest first, or null to crawl
+     *        them in the order they were found
+     */
+    public void setFrontierOrder(Comparator<FrontierEntry> order) {
+        this.frontierOrder = order;
+    }
+
+    /**
+     * @return Creates the URL queue of each host from the spill threshold and order
+     */
+    private Supplier<Frontier> createFrontierFactory() {
+        int hotUrls = frontierSpillThreshold;
+        Comparator<FrontierEntry> order = frontierOrder;
+        if (hotUrls > 0) {
+            return () -> new SpillingFrontier(hotUrls);
+        }
+        if (order != null) {
+            return () -> new PriorityFrontier(order);
+        }
+        return InMemoryFrontier::new;
+    }
+
+    /**
+     * Reject links that were already seen on another page with a Bloom filter,
+     * before they are canonicalized and checked against robots.txt. Hits are
+     * confirmed against 64-bit fingerprints of the links seen so far, whatever
+     * the dedupe mode, so a new link is only dropped if its fingerprint equals
+     * that of a different link, with the odds given in {@link FingerprintSeenSet}.
+     * Must be called before {@link #crawl()}.
+     * 
+     * @param falsePositiveRate Target false-positive rate of the filter, or 0 to disable it
+     */
+    public void setLinkFilter(double falsePositiveRate) {
+        if (falsePositiveRate < 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be in [0, 1)");
+        }
+        this.linkFilterFalsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Create an empty seen set for the current dedupe mode
+     */
+    private SeenSet newSeenSet() {
+        return dedupeMode == DedupeMode.FINGERPRINT ? new FingerprintSeenSet() : new ExactSeenSet();
+    }
+
     /**
      * Check if the crawler is currently running
      * 
@@ -1055,12 +1436,150 @@ public class WebCrawler {
         return pagesCrawled.get();
     }
     
+    /**
+     * Get the number of distinct images found so far
+     * 
+     * @return Number of images found
+     */
+    public int getImageCount() {
+        return imageMetadata.size();
+    }
+    
+    /**
+     * Get the number of HTTP requests made by this crawl, including retries and redirects
+     * 
+     * @return Number of requests made
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+    
+    /**
+     * Get the number of response body bytes downloaded by this crawl
+     * 
+     * @return Number of bytes downloaded
+     */
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+    
+    /**
+     * Get the number of links dropped by the link filter as repeats
+     * 
+     * @return Number of repeated links skipped
+     */
+    public long getDuplicateLinksSkipped() {
+        return duplicateLinksSkipped.get();
+    }
+    
+    /**
+     * Get the number of pages the server answered with 304 Not Modified, whose
+     * images and links were reused from the last crawl
+     * 
+     * @return Number of pages revalidated without a download
+     */
+    public int getPagesNotModified() {
+        return pagesNotModified.get();
+    }
+    
+    /**
+     * Get the number of pages downloaded again whose images had not changed
+     * since the last crawl
+     * 
+     * @return Number of unchanged pages
+     */
+    public int getPagesUnchanged() {
+        return pagesUnchanged.get();
+    }
+    
+    /**
+     * Get the number of concurrent fetches currently allowed to the crawled host
+     * 
+     * @return The adaptive limit, or 0 if concurrency is not adapted
+     */
+    public int getConcurrencyLimit() {
+        return urlQueue.getConcurrencyLimit(baseUrl);
+    }
+    
+    /**
+     * Get the longest this crawl runs once started: its time budget, or the
+     * default limit if it has none, plus the grace period for pages in flight
+     * 
+     * @return The limit in milliseconds
+     */
+    public long getTimeLimitMs() {
+        return getMaxDurationMs() + TIME_BUDGET_GRACE_MS;
+    }
+    
+    private long getMaxDurationMs() {
+        return budget.getMaxDurationMs() > 0 ? budget.getMaxDurationMs() : MAX_CRAWL_DURATION_MS;
+    }
+    
+    /**
+     * Get why the crawl stopped
+     * 
+     * @return The reason, or null while the crawl is running normally
+     */
+    public StopReason getStopReason() {
+        return stopReason.get();
+    }
+    
+    /**
+     * Get the state of the crawled host's circuit breaker
+     * 
+     * @return CLOSED, OPEN or HALF_OPEN, or null before the seed is queued
+     */
+    public String getCircuitState() {
+        return urlQueue.getCircuitState(baseUrl);
+    }
+    
+    /**
+     * Get the number of times a page was put back in the queue because its
+     * host's circuit was open
+     * 
+     * @return Number of pages put back
+     */
+    public int getPagesRequeued() {
+        return pagesRequeued.get();
+    }
+    
+    /**
+     * Get the number of URLs queued from sitemaps
+     * 
+     * @return Number of sitemap URLs queued
+     */
+    public int getSitemapUrlsQueued() {
+        return sitemapUrlsQueued.get();
+    }
+    
+    /**
+     * Get the number of distinct URLs queued or reached by redirect
+     * 
+     * @return Number of URLs seen
+     */
+    public int getSeenUrlCount() {
+        return visitedUrls.size();
+    }
+    
+    /**
+     * Get the estimated probability that the seen set mistook a new URL for a
+     * known one, always 0 unless fingerprint dedupe is used
+     * 
+     * @return The collision probability
+     */
+    public double getSeenCollisionProbability() {
+        return visitedUrls.getCollisionProbability();
+    }
+    
     /**
      * Get the set of visited URLs
      * 
-     * @return Set of visited URLs
+     * @return Set of visited URLs, empty when only fingerprints are kept
      */
     public Set<String> getVisitedUrls() {
-        return new HashSet<>(visitedUrls);
+        if (visitedUrls instanceof ExactSeenSet) {
+            return ((ExactSeenSet) visitedUrls).snapshot();
+        }
+        return new HashSet<>();
     }
 }
\ No newline at end of file
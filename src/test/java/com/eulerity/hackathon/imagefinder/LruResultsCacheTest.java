@@ -0,0 +1,103 @@
+package com.eulerity.hackathon.imagefinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Checks the weight accounting, least-recently-used eviction and time-to-live
+ * of the results cache against a fake clock
+ */
+public class LruResultsCacheTest {
+    private static final long TTL_MS = 1000;
+
+    private final AtomicLong now = new AtomicLong(1000000);
+    // Values weigh their length
+    private final LruResultsCache<String, String> cache = new LruResultsCache<>(10, TTL_MS, String::length, now::get);
+
+    @Test
+    public void tracksWeight() {
+        cache.put("a", "xxx");
+        cache.put("b", "xxxx");
+        assertStats(2, 7);
+
+        // Replacing an entry releases the weight of the old value
+        cache.put("a", "x");
+        assertStats(2, 5);
+        assertEquals("x", cache.get("a"));
+
+        assertEquals(1, cache.invalidateIf(key -> key.equals("b")));
+        assertStats(1, 1);
+        cache.invalidateAll();
+        assertStats(0, 0);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        cache.put("a", "xxx");
+        cache.put("b", "xxx");
+        cache.put("c", "xxx");
+        // Reading a makes b the least recently used
+        assertEquals("xxx", cache.get("a"));
+        cache.put("d", "xxx");
+
+        assertNull(cache.get("b"));
+        assertEquals("xxx", cache.get("a"));
+        assertEquals("xxx", cache.get("c"));
+        assertEquals("xxx", cache.get("d"));
+        assertEquals(Long.valueOf(1), cache.stats().get("evictions"));
+        assertStats(3, 9);
+    }
+
+    @Test
+    public void rejectsValuesHeavierThanTheCache() {
+        cache.put("a", "xxx");
+        cache.put("big", "xxxxxxxxxxx");
+        assertNull(cache.get("big"));
+        assertEquals("xxx", cache.get("a"));
+        assertStats(1, 3);
+    }
+
+    @Test
+    public void expiresAfterTtl() {
+        cache.put("a", "xxx");
+        now.addAndGet(TTL_MS - 1);
+        assertEquals("xxx", cache.get("a"));
+        assertEquals("xxx", cache.find(key -> key.startsWith("a")));
+
+        now.addAndGet(1);
+        assertNull(cache.find(key -> key.startsWith("a")));
+        assertNull(cache.get("a"));
+        assertEquals(Long.valueOf(1), cache.stats().get("expirations"));
+        assertStats(0, 0);
+    }
+
+    @Test
+    public void dropsExpiredEntriesBeforeLiveOnes() {
+        cache.put("old", "xxx");
+        now.addAndGet(TTL_MS / 2);
+        cache.put("live", "xxx");
+        // Reading the expiring entry makes it the most recently used
+        assertEquals("xxx", cache.get("old"));
+        now.addAndGet(TTL_MS / 2);
+
+        // Over the limit: the expired entry goes, although live is older in access order
+        cache.put("new", "xxxxxx");
+        assertEquals("xxx", cache.get("live"));
+        assertEquals("xxxxxx", cache.get("new"));
+        Map<String, Long> stats = cache.stats();
+        assertEquals(Long.valueOf(1), stats.get("expirations"));
+        assertEquals(Long.valueOf(0), stats.get("evictions"));
+        assertStats(2, 9);
+    }
+
+    private void assertStats(long entries, long weight) {
+        Map<String, Long> stats = cache.stats();
+        assertEquals(Long.valueOf(entries), stats.get("entries"));
+        assertEquals(Long.valueOf(weight), stats.get("weight"));
+    }
+}
@@ -0,0 +1,119 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Drives the limit through rounds of responses on a fake clock, one
+ * millisecond per request
+ */
+public class AdaptiveConcurrencyLimitTest {
+    private long now = 1000000;
+
+    @Test
+    public void doublesUntilFirstCut() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(64);
+        assertEquals(AdaptiveConcurrencyLimit.INITIAL_LIMIT, limit.getLimit());
+        int expected = AdaptiveConcurrencyLimit.INITIAL_LIMIT;
+        while (expected < 64) {
+            // One completed response short of a round changes nothing
+            succeed(limit, expected - 1, 10);
+            assertEquals(expected, limit.getLimit());
+            succeed(limit, 1, 10);
+            expected *= 2;
+            assertEquals(expected, limit.getLimit());
+        }
+        succeed(limit, 64, 10);
+        assertEquals(64, limit.getLimit());
+
+        // After a cut the limit grows by one per round
+        limit.onOverload(now, now++);
+        assertEquals(32, limit.getLimit());
+        succeed(limit, 32, 10);
+        assertEquals(33, limit.getLimit());
+        succeed(limit, 33, 10);
+        assertEquals(34, limit.getLimit());
+    }
+
+    @Test
+    public void ignoresSignalsFromBeforeTheLastCut() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(64);
+        succeed(limit, 2, 10);
+        succeed(limit, 4, 10);
+        assertEquals(8, limit.getLimit());
+
+        // A burst of errors from requests that were in flight together
+        long sentAt = now - 1;
+        long cutAt = now;
+        limit.onOverload(sentAt, cutAt);
+        assertEquals(4, limit.getLimit());
+        limit.onOverload(sentAt, cutAt + 1);
+        limit.onOverload(sentAt, cutAt + 2);
+        assertEquals(4, limit.getLimit());
+
+        // Timestamps are in milliseconds, a request sent as the limit was cut may
+        // have gone out before it
+        limit.onOverload(cutAt, cutAt + 3);
+        assertEquals(4, limit.getLimit());
+        limit.onOverload(cutAt + 1, cutAt + 4);
+        assertEquals(2, limit.getLimit());
+
+        // Never below one
+        limit.onOverload(cutAt + 5, cutAt + 6);
+        limit.onOverload(cutAt + 7, cutAt + 8);
+        assertEquals(1, limit.getLimit());
+    }
+
+    @Test
+    public void cutsWhenLatencyRisesAboveBaseline() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(64);
+        assertEquals(-1, limit.getBaselineP95());
+        succeed(limit, 2, 10);
+        succeed(limit, 4, 10);
+        assertEquals(-1, limit.getBaselineP95());
+        succeed(limit, 8, 10);
+        assertEquals(10, limit.getBaselineP95());
+        assertEquals(16, limit.getLimit());
+
+        // Up to twice the baseline plus 50 ms is still flat
+        succeed(limit, 16, 70);
+        assertEquals(10, limit.getBaselineP95());
+        assertEquals(32, limit.getLimit());
+
+        succeed(limit, 32, 71);
+        assertEquals(16, limit.getLimit());
+
+        // The slow latencies were measured at the old limit and are forgotten
+        succeed(limit, 16, 10);
+        assertEquals(17, limit.getLimit());
+        assertEquals(10, limit.getBaselineP95());
+    }
+
+    @Test
+    public void resetsBaselineWhenNothingIsLeftToCut() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1);
+        succeed(limit, 8, 10);
+        assertEquals(10, limit.getBaselineP95());
+
+        // The host got slower at one fetch at a time, which becomes the new baseline
+        succeed(limit, 1, 500);
+        assertEquals(500, limit.getBaselineP95());
+        assertEquals(1, limit.getLimit());
+        succeed(limit, 32, 500);
+        assertEquals(500, limit.getBaselineP95());
+
+        // and is lowered again once the host recovers
+        succeed(limit, 32, 20);
+        assertEquals(20, limit.getBaselineP95());
+    }
+
+    /**
+     * Record successful responses, each sent a millisecond after the previous one
+     */
+    private void succeed(AdaptiveConcurrencyLimit limit, int count, long latencyMs) {
+        for (int i = 0; i < count; i++) {
+            limit.onSuccess(now++, latencyMs);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time per discovered link of the URL work queueUrl does before the visited
+ * check: the scheme check, depth, canonical form, same-domain check and the
+ * path for robots.txt. Compares CanonicalUrl with the java.net.URL based code
+ * it replaced, kept in {@link CanonicalUrlTest.Baseline}.
+ *
+ * Run with: mvn -Pbenchmarks test -Dbenchmark=CanonicalUrlBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanonicalUrlBenchmark {
+    private static final int LINKS = 1000;
+    private static final String DOMAIN_SCHEME = "https";
+    private static final String DOMAIN_HOST = "example.com";
+
+    private String[] links;
+
+    /**
+     * Links as they come out of a page: mostly same-site pages, some with
+     * tracking parameters, fragments or index files, and a few external links
+     */
+    @Setup
+    public void setUp() {
+        String[] hosts = {"https://example.com", "https://www.example.com", "https://cdn.example.net", "http://example.com"};
+        String[] files = {"", "/", "/index.html", "/page.html", "/image.jpg"};
+        String[] queries = {"", "", "?id=42", "?utm_source=news&utm_medium=email&id=7", "?q=shoes&page=2&ref=home"};
+        String[] fragments = {"", "", "", "#top"};
+        Random random = new Random(15);
+        links = new String[LINKS];
+        for (int i = 0; i < LINKS; i++) {
+            StringBuilder link = new StringBuilder(hosts[random.nextInt(hosts.length)]);
+            for (int s = random.nextInt(5); s > 0; s--) {
+                link.append("/section").append(random.nextInt(20));
+            }
+            link.append(files[random.nextInt(files.length)])
+                    .append(queries[random.nextInt(queries.length)])
+                    .append(fragments[random.nextInt(fragments.length)]);
+            links[i] = link.toString();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void javaNetUrl(Blackhole blackhole) {
+        for (String link : links) {
+            if (!CanonicalUrlTest.Baseline.hasAllowedScheme(link)) {
+                continue;
+            }
+            blackhole.consume(CanonicalUrlTest.Baseline.getUrlDepth(link));
+            String canonical = CanonicalUrlTest.Baseline.canonicalizeUrl(link);
+            blackhole.consume(canonical);
+            try {
+                URL parsed = new URL(canonical);
+                blackhole.consume(parsed.getProtocol().equals(DOMAIN_SCHEME)
+                        && CanonicalUrlTest.Baseline.normalizeHost(parsed.getHost()).equals(DOMAIN_HOST));
+                blackhole.consume(parsed.getPath());
+                blackhole.consume(parsed.getQuery());
+            } catch (MalformedURLException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINKS)
+    public void canonicalUrl(Blackhole blackhole) {
+        for (String link : links) {
+            CanonicalUrl parsed = CanonicalUrl.parse(link);
+            if (parsed == null) {
+                continue;
+            }
+            blackhole.consume(parsed.getDepth());
+            blackhole.consume(parsed.toString());
+            blackhole.consume(parsed.getScheme().equals(DOMAIN_SCHEME)
+                    && CanonicalUrl.normalizeHost(parsed.getHost()).equals(DOMAIN_HOST));
+            blackhole.consume(parsed.getPathAndQuery());
+        }
+    }
+}
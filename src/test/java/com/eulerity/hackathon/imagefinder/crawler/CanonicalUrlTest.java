@@ -0,0 +1,341 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks the single-pass parser against the java.net.URL based code WebCrawler
+ * used before it: canonicalizeUrl, normalizeUrl, getUrlDepth and the scheme
+ * check of queueUrl, copied below unchanged as the reference
+ */
+public class CanonicalUrlTest {
+    private static final String[] HOSTS = {
+        "example.com", "www.example.com", "EXAMPLE.com", "sub.example.co.uk", "my_host-1.example.com",
+        "127.0.0.1", "[::1]", "[2001:db8::1]", "user@example.com", "user:pass@www.example.com",
+        "@example.com", "example.com.", "xn--bcher-kva.example", "exa mple.com", "",
+    };
+
+    private static final String[] PORTS = {
+        "", ":", ":80", ":443", ":8080", ":0", ":65535", ":99999", ":123456", ":8a", "::80",
+    };
+
+    private static final String[] PATHS = {
+        "", "/", "/a", "/a/", "/a/b/c", "/a//b", "//a", "/a/./b", "/a/../b", "/./", "/..", "/.hidden",
+        "/index.html", "/a/index.html", "/a/index.html/", "/a/home.jsp", "/a/Index.html", "/xindex.html",
+        "/a%20b", "/a%2Fb", "/%7Euser/", "/a b", "/café", "/a;jsessionid=1", "/a:b", "/a@b",
+    };
+
+    private static final String[] QUERIES = {
+        "", "?", "?a=1", "?a=", "?a", "?=1", "?a=1&", "?&a=1", "?a=1&&b=2", "?a=1&b=2",
+        "?utm_source=x", "?UTM_Source=x&a=1", "?a=1&ref=home&b=", "?session", "?a=%20&b=%26",
+        "?a=1?b=2", "?a=b=c", "?q=a/b",
+    };
+
+    private static final String[] FRAGMENTS = {
+        "", "#", "#top", "#a?b=1", "#/path",
+    };
+
+    private static final String[] ODD = {
+        "example.com", "www.example.com/a", "//example.com/a", "ftp://example.com/a", "mailto:me@example.com",
+        "javascript:void(0)", "HTTP://Example.com/A", "Https://example.com", "http:/example.com", "http:example.com",
+        "http://", "https://", "http://?a=1", "http://#f", " http://example.com/", "http://example.com/ ",
+        "http://example.com\t/a", "http://example.com/a\nb", "http://exa%6Dple.com/", "http://example.com:/a",
+        "http://example.com?a=1", "http://example.com#f", "http://example.com/a#f?b=1", "file:///etc/passwd",
+        "http://a.com/a/b/../../..", "http://a.com/.", "http://a.com/..", "http://a.com/a/.",
+    };
+
+    @Test
+    public void matchesBaselineOnEdgeCases() {
+        List<String> corpus = buildCorpus();
+        int checked = 0;
+        for (String url : corpus) {
+            String reason = "for " + url;
+            CanonicalUrl parsed = CanonicalUrl.parse(url);
+
+            assertEquals(reason, Baseline.canonicalizeUrl(url), CanonicalUrl.canonicalize(url));
+            if (!Baseline.isQueueable(url)) {
+                assertNull(reason, parsed);
+                continue;
+            }
+            assertNotNull(reason, parsed);
+            checked++;
+
+            String canonical = Baseline.canonicalizeUrl(url);
+            assertEquals(reason, canonical, parsed.toString());
+            assertEquals(reason, Baseline.getUrlDepth(url), parsed.getDepth());
+
+            // isSameDomain and the robots.txt check used these parts of the canonical
+            // URL. Without a host isSameDomain rejects the URL before its path is used.
+            URL canonicalUrl = Baseline.toUrl(canonical);
+            assertEquals(reason, canonicalUrl.getProtocol(), parsed.getScheme());
+            assertEquals(reason, Baseline.normalizeHost(canonicalUrl.getHost()), CanonicalUrl.normalizeHost(parsed.getHost()));
+            if (canonicalUrl.getHost().isEmpty()) {
+                continue;
+            }
+            assertEquals(reason, canonicalUrl.getPort(), parsed.getPort());
+            assertEquals(reason, canonicalUrl.getPath().isEmpty() ? "/" : canonicalUrl.getPath(), parsed.getPath());
+            assertEquals(reason, canonicalUrl.getQuery(), parsed.getQuery());
+        }
+        // Most of the corpus should be valid URLs rather than rejected input
+        assertEquals(true, checked > corpus.size() / 2);
+    }
+
+    @Test
+    public void handlesEmptyInput() {
+        assertNull(CanonicalUrl.parse(null));
+        assertNull(CanonicalUrl.parse(""));
+        assertEquals("", CanonicalUrl.canonicalize(null));
+        assertEquals("", CanonicalUrl.canonicalize(""));
+    }
+
+    @Test
+    public void canonicalizesCommonUrls() {
+        assertEquals("https://example.com/", CanonicalUrl.canonicalize("https://www.example.com"));
+        assertEquals("http://example.com:8080/a", CanonicalUrl.canonicalize("http://example.com:8080/a/index.html"));
+        assertEquals("https://example.com/a?b=2", CanonicalUrl.canonicalize("https://example.com/a/?utm_source=x&b=2#top"));
+        assertEquals(3, CanonicalUrl.parse("http://example.com/a/b/c").getDepth());
+    }
+
+    /**
+     * Every scheme, host, port, path, query and fragment combined with each
+     * other part at its plain value, plus inputs that are odd as a whole
+     */
+    private static List<String> buildCorpus() {
+        Set<String> corpus = new HashSet<>(Arrays.asList(ODD));
+        for (String scheme : new String[] {"http://", "https://"}) {
+            for (String host : HOSTS) {
+                for (String port : PORTS) {
+                    corpus.add(scheme + host + port + "/a/b?c=1#d");
+                }
+                for (String path : PATHS) {
+                    for (String query : QUERIES) {
+                        corpus.add(scheme + host + path + query);
+                    }
+                    for (String fragment : FRAGMENTS) {
+                        corpus.add(scheme + host + ":8080" + path + "?x=1" + fragment);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(corpus);
+    }
+
+    /**
+     * The URL handling of WebCrawler before CanonicalUrl existed
+     */
+    static final class Baseline {
+        private static final Set<String> ALLOWED_SCHEMES = new HashSet<>(Arrays.asList("http", "https"));
+
+        private static final Set<String> IGNORED_QUERY_PARAMS = new HashSet<>(Arrays.asList(
+            "utm_source", "utm_medium", "utm_campaign", "utm_term", "utm_content",
+            "fbclid", "gclid", "msclkid", "ref", "source", "session", "timestamp"));
+
+        static URL toUrl(String url) {
+            try {
+                return new URL(url);
+            } catch (MalformedURLException e) {
+                throw new AssertionError("Canonical URL does not parse: " + url, e);
+            }
+        }
+
+        /**
+         * queueUrl rejected URLs without an http(s) scheme, and isSameDomain
+         * rejected those whose canonical form does not parse
+         */
+        static boolean isQueueable(String url) {
+            if (!hasAllowedScheme(url)) {
+                return false;
+            }
+            try {
+                new URL(canonicalizeUrl(url));
+                return true;
+            } catch (MalformedURLException e) {
+                return false;
+            }
+        }
+
+        static boolean hasAllowedScheme(String url) {
+            try {
+                URL urlObj = new URL(url);
+                String scheme = urlObj.getProtocol();
+                return ALLOWED_SCHEMES.contains(scheme.toLowerCase());
+            } catch (MalformedURLException e) {
+                return false;
+            }
+        }
+
+        static int getUrlDepth(String url) {
+            try {
+                URL urlObj = new URL(url);
+                String path = urlObj.getPath();
+                if (path == null || path.isEmpty() || path.equals("/")) {
+                    return 0;
+                }
+
+                // Count slashes in the path
+                int depth = 0;
+                for (int i = 0; i < path.length(); i++) {
+                    if (path.charAt(i) == '/') {
+                        depth++;
+                    }
+                }
+                return depth;
+            } catch (MalformedURLException e) {
+                return 0;
+            }
+        }
+
+        static String canonicalizeUrl(String url) {
+            if (url == null || url.isEmpty()) {
+                return "";
+            }
+
+            try {
+                // Ensure URL has protocol
+                if (!url.startsWith("http://") && !url.startsWith("https://")) {
+                    url = "https://" + url;
+                }
+
+                // Parse URL
+                URL urlObj = new URL(url);
+                String protocol = urlObj.getProtocol();
+                String host = normalizeHost(urlObj.getHost());
+                int port = urlObj.getPort();
+                String path = urlObj.getPath();
+                String query = urlObj.getQuery();
+
+                // Normalize path: ensure it starts with / and handle default pages
+                if (path == null || path.isEmpty()) {
+                    path = "/";
+                } else if (path.endsWith("/index.html") || path.endsWith("/index.php") ||
+                          path.endsWith("/index.asp") || path.endsWith("/index.jsp") ||
+                          path.endsWith("/default.html") || path.endsWith("/default.php") ||
+                          path.endsWith("/default.asp") || path.endsWith("/default.jsp") ||
+                          path.endsWith("/home.html") || path.endsWith("/home.php") ||
+                          path.endsWith("/home.asp") || path.endsWith("/home.jsp")) {
+                    // Replace with directory root
+                    path = path.substring(0, path.lastIndexOf('/') + 1);
+                }
+
+                // Remove trailing slash from path except for root
+                if (path.length() > 1 && path.endsWith("/")) {
+                    path = path.substring(0, path.length() - 1);
+                }
+
+                // Clean query parameters
+                String cleanQuery = cleanQueryParameters(query);
+
+                // Build canonicalized URL
+                StringBuilder result = new StringBuilder();
+                result.append(protocol).append("://").append(host);
+
+                if (port != -1 && port != 80 && port != 443) {
+                    result.append(":").append(port);
+                }
+
+                result.append(path);
+
+                if (cleanQuery != null && !cleanQuery.isEmpty()) {
+                    result.append("?").append(cleanQuery);
+                }
+
+                return result.toString();
+
+            } catch (MalformedURLException e) {
+                // If parsing fails, return normalized version
+                return normalizeUrl(url);
+            }
+        }
+
+        static String cleanQueryParameters(String query) {
+            if (query == null || query.isEmpty()) {
+                return null;
+            }
+
+            StringBuilder result = new StringBuilder();
+            String[] pairs = query.split("&");
+            boolean first = true;
+
+            for (String pair : pairs) {
+                // Skip empty pairs
+                if (pair.isEmpty()) {
+                    continue;
+                }
+
+                // Split parameter name and value
+                String[] parts = pair.split("=", 2);
+                String name = parts[0];
+
+                // Skip ignored parameters
+                if (IGNORED_QUERY_PARAMS.contains(name.toLowerCase())) {
+                    continue;
+                }
+
+                // Add parameter to result
+                if (!first) {
+                    result.append("&");
+                }
+                result.append(pair);
+                first = false;
+            }
+
+            return result.toString();
+        }
+
+        static String normalizeUrl(String url) {
+            try {
+                // Remove fragments
+                URL urlObj = new URL(url);
+                String protocol = urlObj.getProtocol();
+                String host = normalizeHost(urlObj.getHost());
+                String path = urlObj.getPath();
+
+                // Normalize path
+                if (path == null || path.isEmpty()) {
+                    path = "/";
+                }
+
+                // Remove trailing slash for consistency, except for root
+                if (path.length() > 1 && path.endsWith("/")) {
+                    path = path.substring(0, path.length() - 1);
+                }
+
+                // Reconstruct URL without query and fragment
+                return protocol + "://" + host + path;
+
+            } catch (MalformedURLException e) {
+                // Fallback to basic normalization
+                url = url.toLowerCase().trim();
+                int fragmentIndex = url.indexOf('#');
+                if (fragmentIndex > 0) {
+                    url = url.substring(0, fragmentIndex);
+                }
+
+                // Remove trailing slash
+                if (url.endsWith("/")) {
+                    url = url.substring(0, url.length() - 1);
+                }
+
+                return url;
+            }
+        }
+
+        static String normalizeHost(String host) {
+            if (host.startsWith("www.")) {
+                return host.substring(4);
+            }
+            return host;
+        }
+    }
+}
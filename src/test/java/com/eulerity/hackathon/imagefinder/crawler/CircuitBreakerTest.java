@@ -0,0 +1,156 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Runs the circuit breaker of a host through its states on a fake clock, on
+ * its own and inside the scheduler, with the default thresholds
+ */
+public class CircuitBreakerTest {
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_MS = 30000;
+    private static final long MAX_OPEN_MS = 5 * 60 * 1000;
+    private static final int MAX_TRIPS = 3;
+    private static final String TRIAL = "http://example.com/trial";
+    private static final String OTHER = "http://example.com/other";
+
+    private long now = 1000000;
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        recordFailures(breaker, FAILURE_THRESHOLD - 1);
+        // A response in between starts the count again
+        breaker.onSuccess(OTHER);
+        recordFailures(breaker, FAILURE_THRESHOLD - 1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.onFailure(OTHER, now));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(now + OPEN_MS, breaker.getOpenUntil());
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.canDispatch(now + OPEN_MS - 1));
+        assertTrue(breaker.canDispatch(now + OPEN_MS));
+
+        // Requests that were in flight when it opened change nothing
+        assertFalse(breaker.onFailure(OTHER, now + 1));
+        breaker.onSuccess(OTHER);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(now + OPEN_MS, breaker.getOpenUntil());
+    }
+
+    @Test
+    public void onlyTheTrialDecides() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        open(breaker);
+        now = breaker.getOpenUntil();
+        breaker.onDispatch(TRIAL);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.canDispatch(now));
+
+        // Late responses to requests sent before the circuit opened
+        breaker.onSuccess(OTHER);
+        assertFalse(breaker.onFailure(OTHER, now));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess(TRIAL);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        recordFailures(breaker, FAILURE_THRESHOLD - 1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void releasedTrialLetsAnotherThrough() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        open(breaker);
+        now = breaker.getOpenUntil();
+        breaker.onDispatch(TRIAL);
+        // Put back without an answer, the host is still undecided
+        breaker.release(TRIAL);
+        assertTrue(breaker.canDispatch(now));
+        breaker.onDispatch(OTHER);
+        breaker.onSuccess(TRIAL);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(OTHER);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void doublesOpenPeriodUpToMax() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        open(breaker);
+        long expected = OPEN_MS;
+        for (int trip = 1; trip <= 6; trip++) {
+            assertEquals(now + expected, breaker.getOpenUntil());
+            assertEquals(trip >= MAX_TRIPS, breaker.isExhausted());
+            now = breaker.getOpenUntil();
+            breaker.onDispatch(TRIAL);
+            assertTrue(breaker.onFailure(TRIAL, now));
+            expected = Math.min(MAX_OPEN_MS, expected * 2);
+        }
+        assertEquals(MAX_OPEN_MS, breaker.getOpenUntil() - now);
+
+        // A trial that gets through forgets the trips
+        now = breaker.getOpenUntil();
+        breaker.onDispatch(TRIAL);
+        breaker.onSuccess(TRIAL);
+        assertFalse(breaker.isExhausted());
+        open(breaker);
+        assertEquals(now + OPEN_MS, breaker.getOpenUntil());
+    }
+
+    @Test
+    public void schedulerHoldsBackAndThenDropsHost() {
+        AtomicLong clock = new AtomicLong(now);
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> 0, clock::get);
+        for (int i = 0; i < 10; i++) {
+            scheduler.add("http://example.com/page" + i);
+        }
+
+        long openMs = OPEN_MS;
+        for (int trip = 1; trip <= MAX_TRIPS; trip++) {
+            FrontierEntry entry = scheduler.poll();
+            assertNotNull(entry);
+            // The first trip takes a run of failures, after that the trial alone
+            for (int i = 0; i < (trip == 1 ? FAILURE_THRESHOLD : 1); i++) {
+                scheduler.recordFailure(entry.getUrl());
+            }
+            scheduler.release(entry.getUrl());
+            if (trip == MAX_TRIPS) {
+                break;
+            }
+            assertEquals("OPEN", scheduler.getCircuitState(entry.getUrl()));
+            assertEquals(10 - trip, scheduler.size());
+            assertNull(scheduler.poll());
+            assertEquals(openMs, scheduler.getNextReadyDelayMs());
+            clock.addAndGet(openMs);
+            openMs *= 2;
+        }
+
+        // Given up on: its queued URLs are dropped and new ones are not taken
+        assertTrue(scheduler.isEmpty());
+        assertNull(scheduler.poll());
+        scheduler.add("http://example.com/later");
+        assertTrue(scheduler.isEmpty());
+    }
+
+    private void recordFailures(CircuitBreaker breaker, int failures) {
+        for (int i = 0; i < failures; i++) {
+            assertFalse(breaker.onFailure(OTHER, now));
+        }
+    }
+
+    private void open(CircuitBreaker breaker) {
+        recordFailures(breaker, FAILURE_THRESHOLD - 1);
+        assertTrue(breaker.onFailure(OTHER, now));
+    }
+}
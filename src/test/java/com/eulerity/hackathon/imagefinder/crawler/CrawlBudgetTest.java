@@ -0,0 +1,98 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Checks the order the limits are checked in, the request counter and the caps
+ * on response bodies and images
+ */
+public class CrawlBudgetTest {
+    private static final long PAST = 1;
+    private static final long FUTURE = System.currentTimeMillis() + 3600000;
+
+    @Test
+    public void checksRequestsBytesImagesThenTime() {
+        CrawlBudget budget = new CrawlBudget(1000, 100, 10, 5);
+        assertEquals(StopReason.REQUEST_BUDGET, budget.check(PAST, 10, 100, 5));
+        assertEquals(StopReason.BYTE_BUDGET, budget.check(PAST, 9, 100, 5));
+        assertEquals(StopReason.IMAGE_BUDGET, budget.check(PAST, 9, 99, 5));
+        assertEquals(StopReason.TIME_BUDGET, budget.check(PAST, 9, 99, 4));
+        assertNull(budget.check(FUTURE, 9, 99, 4));
+    }
+
+    @Test
+    public void zeroMeansNoLimit() {
+        assertNull(CrawlBudget.UNLIMITED.check(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE));
+        assertFalse(CrawlBudget.UNLIMITED.isLimited());
+        assertTrue(CrawlBudget.UNLIMITED.allowsImage(Integer.MAX_VALUE));
+        assertEquals(WebCrawler.MAX_BODY_SIZE, CrawlBudget.UNLIMITED.capBodySize(WebCrawler.MAX_BODY_SIZE, Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeLimits() {
+        new CrawlBudget(0, -1, 0, 0);
+    }
+
+    @Test
+    public void rollsBackRefusedRequest() throws BudgetExhaustedException {
+        CrawlBudget budget = new CrawlBudget(0, 0, 2, 0);
+        AtomicLong requests = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        budget.reserveRequest(requests, bytes);
+        budget.reserveRequest(requests, bytes);
+        for (int i = 0; i < 3; i++) {
+            assertRefused(budget, requests, bytes, StopReason.REQUEST_BUDGET);
+            assertEquals(2, requests.get());
+        }
+    }
+
+    @Test
+    public void refusesRequestOnceBytesAreSpent() throws BudgetExhaustedException {
+        CrawlBudget budget = new CrawlBudget(0, 100, 0, 0);
+        AtomicLong requests = new AtomicLong();
+        AtomicLong bytes = new AtomicLong(99);
+        budget.reserveRequest(requests, bytes);
+        assertEquals(1, requests.get());
+        bytes.set(100);
+        assertRefused(budget, requests, bytes, StopReason.BYTE_BUDGET);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void capsBodyAtRemainingBytes() {
+        CrawlBudget budget = new CrawlBudget(0, 5000, 0, 0);
+        assertEquals(1000, budget.capBodySize(1000, 0));
+        assertEquals(1000, budget.capBodySize(1000, 4000));
+        assertEquals(300, budget.capBodySize(1000, 4700));
+        // Jsoup reads the whole body for a limit of 0
+        assertEquals(1, budget.capBodySize(1000, 5000));
+        assertEquals(1, budget.capBodySize(1000, 6000));
+    }
+
+    @Test
+    public void allowsExactlyMaxImages() {
+        CrawlBudget budget = new CrawlBudget(0, 0, 0, 3);
+        assertTrue(budget.allowsImage(0));
+        assertTrue(budget.allowsImage(2));
+        assertFalse(budget.allowsImage(3));
+        assertNull(budget.check(Long.MAX_VALUE, 0, 0, 2));
+        assertEquals(StopReason.IMAGE_BUDGET, budget.check(Long.MAX_VALUE, 0, 0, 3));
+    }
+
+    private static void assertRefused(CrawlBudget budget, AtomicLong requests, AtomicLong bytes, StopReason reason) {
+        try {
+            budget.reserveRequest(requests, bytes);
+            fail("request allowed past " + reason);
+        } catch (BudgetExhaustedException e) {
+            assertEquals(reason, e.getReason());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that recording never waits for the checkpoint's monitor, and that what
+ * was recorded comes back on resume, also after seen.log has been compacted
+ */
+public class CrawlCheckpointTest {
+    private String jobId;
+    private CrawlCheckpoint checkpoint;
+
+    @Before
+    public void setUp() throws IOException {
+        jobId = UUID.randomUUID().toString();
+        Properties parameters = new Properties();
+        parameters.setProperty("url", "http://example.com/");
+        checkpoint = CrawlCheckpoint.create(jobId, parameters);
+    }
+
+    @After
+    public void tearDown() {
+        checkpoint.delete();
+    }
+
+    @Test
+    public void recordsWhileMonitorIsHeld() throws InterruptedException {
+        // The flusher holds the monitor while it writes and compacts
+        CountDownLatch recorded = new CountDownLatch(1);
+        synchronized (checkpoint) {
+            Thread worker = new Thread(() -> {
+                checkpoint.recordQueued("http://example.com/a");
+                checkpoint.recordPage("http://example.com/a");
+                checkpoint.recordRedirect("http://example.com/b");
+                checkpoint.recordImage(new ImageMetadata("http://example.com/a.png"));
+                recorded.countDown();
+            });
+            worker.start();
+            assertTrue("recording waited for the monitor", recorded.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void restoresWhatWasRecorded() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            checkpoint.recordQueued(url(i));
+        }
+        for (int i = 0; i < 4; i++) {
+            checkpoint.recordPage(url(i));
+        }
+        checkpoint.recordRedirect("http://example.com/moved");
+        checkpoint.recordImage(new ImageMetadata("http://example.com/a.png"));
+        checkpoint.recordQueued("http://example.com/line\nbreak");
+        checkpoint.close();
+
+        CrawlCheckpoint resumed = CrawlCheckpoint.open(jobId);
+        assertNotNull(resumed);
+        try {
+            SeenSet visited = new ExactSeenSet();
+            assertEquals(4, resumed.loadDone(visited));
+            assertTrue(visited.contains("http://example.com/moved"));
+
+            List<String> frontier = new ArrayList<>();
+            resumed.loadFrontier(visited, frontier::add);
+            List<String> expected = new ArrayList<>();
+            for (int i = 4; i < 10; i++) {
+                expected.add(url(i));
+            }
+            assertEquals(expected, frontier);
+
+            List<ImageMetadata> images = new ArrayList<>();
+            resumed.loadImages(images::add);
+            assertEquals(1, images.size());
+            assertEquals("http://example.com/a.png", images.get(0).getUrl());
+        } finally {
+            resumed.close();
+        }
+    }
+
+    @Test
+    public void compactsSeenLogWithoutLosingTheFrontier() throws IOException {
+        // Enough processed pages that the first flush compacts seen.log
+        int queued = 30000;
+        int done = 25000;
+        for (int i = 0; i < queued; i++) {
+            checkpoint.recordQueued(url(i));
+        }
+        for (int i = 0; i < done; i++) {
+            checkpoint.recordPage(url(i));
+        }
+        checkpoint.flush();
+        checkpoint.recordQueued(url(queued));
+        checkpoint.flush();
+        checkpoint.close();
+
+        CrawlCheckpoint resumed = CrawlCheckpoint.open(jobId);
+        try {
+            SeenSet visited = new ExactSeenSet();
+            assertEquals(done, resumed.loadDone(visited));
+            List<String> frontier = new ArrayList<>();
+            resumed.loadFrontier(visited, frontier::add);
+            assertEquals(queued - done + 1, frontier.size());
+            assertEquals(url(done), frontier.get(0));
+            assertEquals(url(queued), frontier.get(frontier.size() - 1));
+        } finally {
+            resumed.close();
+        }
+    }
+
+    private static String url(int i) {
+        return "http://example.com/page/" + i;
+    }
+}
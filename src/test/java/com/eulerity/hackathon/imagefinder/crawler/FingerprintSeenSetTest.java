@@ -0,0 +1,112 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks that the fingerprint seen set behaves like a set of URLs, stays within
+ * its memory estimate and reports the birthday bound as its collision estimate
+ */
+public class FingerprintSeenSetTest {
+    private static final int URLS = 100000;
+
+    @Test
+    public void behavesLikeASet() {
+        FingerprintSeenSet seen = new FingerprintSeenSet();
+        for (int i = 0; i < URLS; i++) {
+            assertTrue(seen.add(url(i)));
+        }
+        for (int i = 0; i < URLS; i++) {
+            assertTrue(seen.contains(url(i)));
+            assertFalse(seen.add(url(i)));
+        }
+        // No two of these URLs share a fingerprint, or fewer would have been added
+        assertEquals(URLS, seen.size());
+
+        int present = 0;
+        for (int i = 0; i < URLS; i++) {
+            if (seen.contains("http://example.com/other/" + i)) {
+                present++;
+            }
+        }
+        assertEquals(0, present);
+
+        seen.clear();
+        assertEquals(0, seen.size());
+        assertFalse(seen.contains(url(0)));
+        assertTrue(seen.add(url(0)));
+    }
+
+    @Test
+    public void staysWithinMemoryEstimate() {
+        FingerprintSeenSet seen = new FingerprintSeenSet();
+        long empty = seen.getTableBytes();
+        for (int i = 0; i < URLS; i++) {
+            seen.add(url(i));
+        }
+        // Tables are kept between three eighths and three quarters full
+        double bytesPerUrl = (double) (seen.getTableBytes() - empty) / URLS;
+        assertTrue("bytes per URL: " + bytesPerUrl, bytesPerUrl >= 8 / 0.75 - 1 && bytesPerUrl <= 8 / 0.375);
+
+        seen.clear();
+        assertEquals(empty, seen.getTableBytes());
+    }
+
+    @Test
+    public void estimatesCollisionsWithBirthdayBound() {
+        FingerprintSeenSet seen = new FingerprintSeenSet();
+        assertEquals(0, seen.getCollisionProbability(), 0);
+        for (int i = 0; i < URLS; i++) {
+            seen.add(url(i));
+        }
+        double n = URLS;
+        double expected = n * (n - 1) / Math.pow(2, 65);
+        assertEquals(expected, seen.getCollisionProbability(), expected * 1e-6);
+
+        // Five million URLs stay under one in a million, as documented
+        assertTrue(-Math.expm1(-5e6 * (5e6 - 1) / Math.pow(2, 65)) < 1e-6);
+    }
+
+    @Test
+    public void fingerprintIsNeverZero() {
+        for (int i = 0; i < URLS; i++) {
+            assertTrue(FingerprintSeenSet.fingerprint(url(i)) != 0);
+        }
+        assertTrue(FingerprintSeenSet.fingerprint("") != 0);
+    }
+
+    @Test
+    public void addsConcurrently() throws InterruptedException {
+        FingerprintSeenSet seen = new FingerprintSeenSet();
+        AtomicInteger added = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        // Every thread adds the same URLs, so each must be added exactly once
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < URLS / 4; i++) {
+                    if (seen.add(url(i))) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(URLS / 4, added.get());
+        assertEquals(URLS / 4, seen.size());
+    }
+
+    private static String url(int i) {
+        return "http://example.com/page/" + i;
+    }
+}
@@ -0,0 +1,115 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+/**
+ * Runs the DOM and streaming extraction on the same pages and checks that they
+ * find the same images and links in the same order
+ */
+public class PageExtractorTest {
+    private static final String PAGE_URL = "http://example.com/dir/page.html";
+
+    private static final String[] FIXTURES = {
+        // Plain tags, relative and absolute URLs
+        "<html><body><img src=\"a.png\" alt=\"A\" width=\"10\" height=\"20\">"
+                + "<img src=\"/b.jpg\"><img src=\"http://other.com/c.gif\">"
+                + "<a href=\"next.html\">next</a><a href=\"/top\">top</a><a href=\"http://other.com/\">x</a>"
+                + "</body></html>",
+
+        // Lazy-loading attributes, srcset and images behind anchors
+        "<img data-src=\"lazy.png\" data-original=\"orig.png\" data-lazy-src=\"/l.png\" alt=\"lazy\">"
+                + "<img srcset=\"small.jpg 1x, large.jpg 2x , /huge.jpg 3x\">"
+                + "<a href=\"photo.JPG\">photo</a><a href=\"icon.ico\">icon</a>",
+
+        // Background images in style attributes on any tag
+        "<div style=\"background-image: url('bg1.png')\"></div>"
+                + "<section style='background-image:url(\"/bg2.jpg\")'></section>"
+                + "<span style=\"background-image: url(data:image/png;base64,xyz)\"></span>"
+                + "<a href=\"styled.html\" style=\"background-image: url(http://cdn.com/bg3.gif)\">s</a>",
+
+        // A base tag applies to the whole document, only the first one counts
+        "<html><head><base href=\"http://cdn.example.com/assets/\"><base href=\"http://ignored.com/\"></head>"
+                + "<body><img src=\"img.png\"><a href=\"../page\">p</a><a href=\"?q=1\">q</a></body></html>",
+
+        // Query-only, dot-relative and fragment links
+        "<a href=\"?page=2\">2</a><a href=\"./same\">same</a><a href=\"../up\">up</a>"
+                + "<a href=\"#top\">top</a><a href=\"other.html#frag\">frag</a><a href=\"\">empty</a>",
+
+        // Links that are never crawled
+        "<a href=\"javascript:void(0)\">js</a><a href=\"mailto:me@example.com\">mail</a>"
+                + "<a href=\"tel:123\">tel</a><a>no href</a><a href=\"ok.html\">ok</a>",
+
+        // Frames and forms, a form inside an open form is dropped by the parser
+        "<iframe src=\"frame.html\"></iframe><iframe></iframe>"
+                + "<form action=\"/search\"><form action=\"/nested\"></form></form>"
+                + "<form action=\"after.php\"></form><form></form>",
+
+        // Upper case tags and attributes, unquoted values and entities
+        "<IMG SRC=upper.PNG ALT='Upper'><A HREF=\"a?x=1&amp;y=2\">amp</A>"
+                + "<img src=\"sp ace.png\"><a href=\"caf&eacute;.html\">e</a>",
+
+        // Markup in comments, scripts and raw text is not a tag
+        "<!-- <img src=\"comment.png\"> --><script>var s = '<a href=\"script.html\">';</script>"
+                + "<style>a { background-image: url(css.png) }</style>"
+                + "<textarea><img src=\"textarea.png\"></textarea><title><a href=\"t.html\"></title>"
+                + "<img src=\"real.png\">",
+
+        // "image" is an alias for img
+        "<image src=\"alias.png\" alt=\"alias\"><p><img src=\"p.png\"></p>",
+
+        // Broken markup the parser has to recover from
+        "<div><img src=\"unclosed.png\"<a href=\"broken.html\">b</a><img src=unterminated.png"
+                + "</div><p><a href='x.html'>x<a href='y.html'>y</p>",
+
+        // Jsoup ends a tag at a '<' where a tag or attribute name would start,
+        // but not after a name without a value or inside an unquoted value
+        "<img<a href=\"n1.html\"><img src=x.png <a href=n2.html><img/<a href=n3.html>"
+                + "<img alt <a href=n4.html><img alt/<a href=n5.html><img alt=<a href=n6.html>"
+                + "<a href=n7.html<img src=n8.png><img x <<a href=n9.html>",
+    };
+
+    @Test
+    public void streamingMatchesDom() throws IOException {
+        for (String html : FIXTURES) {
+            PageExtract dom = PageExtractor.fromDocument(Jsoup.parse(html, PAGE_URL), PAGE_URL);
+            PageExtract streaming = PageExtractor.fromHtml(new StringReader(html), PAGE_URL, PAGE_URL);
+
+            assertEquals("images of " + html, dom.getImages(), streaming.getImages());
+            assertEquals("links of " + html, dom.getLinks(), streaming.getLinks());
+        }
+    }
+
+    @Test
+    public void fixturesFindSomething() throws IOException {
+        // Guards against both modes agreeing because both found nothing
+        int images = 0;
+        int links = 0;
+        for (String html : FIXTURES) {
+            PageExtract dom = PageExtractor.fromDocument(Jsoup.parse(html, PAGE_URL), PAGE_URL);
+            images += dom.getImages().size();
+            links += dom.getLinks().size();
+        }
+        assertTrue("images found: " + images, images >= 20);
+        assertTrue("links found: " + links, links >= 20);
+    }
+
+    @Test
+    public void resolvesLikeJsoup() {
+        assertEquals("http://example.com/dir/page.html?q=1", PageExtractor.resolve(PAGE_URL, "?q=1"));
+        assertEquals("http://example.com/same", PageExtractor.resolve("http://example.com", "./same"));
+        assertEquals("http://example.com/up", PageExtractor.resolve(PAGE_URL, "../up"));
+        assertEquals("http://other.com/x", PageExtractor.resolve("not a url", "http://other.com/x"));
+        assertEquals("", PageExtractor.resolve("not a url", "relative"));
+        for (String relative : new String[] {"?q=1", "./same", "../up", "a b.png", "//cdn.com/x", "#f"}) {
+            assertEquals(relative, Jsoup.parse("<a href=\"" + relative + "\">", PAGE_URL).select("a").attr("abs:href"),
+                    PageExtractor.resolve(PAGE_URL, relative));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks the order the frontier hands out URLs in, and the path and parent
+ * scores the default order is fed with
+ */
+public class PriorityFrontierTest {
+    private static final double DELTA = 1e-9;
+
+    private long sequence;
+
+    @Test
+    public void fifoKeepsQueueOrder() {
+        PriorityFrontier frontier = new PriorityFrontier(FrontierOrder.FIFO);
+        add(frontier, "/deep", 5, 0);
+        add(frontier, "/gallery", 1, 2);
+        add(frontier, "/login", 0, -1);
+        assertEquals(Arrays.asList("/deep", "/gallery", "/login"), drain(frontier));
+    }
+
+    @Test
+    public void ordersByDepthMinusScore() {
+        PriorityFrontier frontier = new PriorityFrontier(FrontierOrder.DEPTH_AND_SCORE);
+        add(frontier, "/a", 2, 0);         // 2
+        add(frontier, "/b", 1, 0);         // 1
+        add(frontier, "/gallery", 2, 1);   // 1, queued after /b
+        add(frontier, "/tag", 1, -1);      // 2, queued after /a
+        add(frontier, "/shop", 3, 1.5);    // 1.5
+        add(frontier, "/", 0, 0);          // 0
+        assertEquals(Arrays.asList("/", "/b", "/gallery", "/shop", "/a", "/tag"), drain(frontier));
+        assertEquals(0, frontier.size());
+        assertNull(frontier.poll());
+    }
+
+    @Test
+    public void scoresPathHints() {
+        assertEquals(0, FrontierOrder.score("/about", 0), DELTA);
+        assertEquals(1, FrontierOrder.score("/photos/summer", 0), DELTA);
+        assertEquals(1, FrontierOrder.score("/Shop/Shoes?color=red", 0), DELTA);
+        // One bonus however many hints there are
+        assertEquals(1, FrontierOrder.score("/gallery/images/album", 0), DELTA);
+        assertEquals(-1, FrontierOrder.score("/tag/summer", 0), DELTA);
+        assertEquals(-1, FrontierOrder.score("/blog?page=2", 0), DELTA);
+        assertEquals(-1, FrontierOrder.score("/blog?sort=new", 0), DELTA);
+        assertEquals(0, FrontierOrder.score("/gallery/page/2", 0), DELTA);
+        // Words are matched whole, and only in the path
+        assertEquals(0, FrontierOrder.score("/imagery/pager", 0), DELTA);
+        assertEquals(0, FrontierOrder.score("/about?ref=gallery", 0), DELTA);
+        assertEquals(0, FrontierOrder.score(null, 0), DELTA);
+    }
+
+    @Test
+    public void scoresParentImages() {
+        assertEquals(0, FrontierOrder.score("/about", 0), DELTA);
+        assertEquals(Math.log(2) / Math.log(21), FrontierOrder.score("/about", 1), DELTA);
+        assertEquals(1, FrontierOrder.score("/about", 20), DELTA);
+        assertEquals(1, FrontierOrder.score("/about", 1000), DELTA);
+        assertEquals(2, FrontierOrder.score("/gallery", 20), DELTA);
+        double few = FrontierOrder.score("/about", 3);
+        double more = FrontierOrder.score("/about", 10);
+        assertTrue(few > 0 && few < more && more < 1);
+    }
+
+    @Test
+    public void hintsReorderLinksOfOnePage() {
+        // Links found together on a page, queued in document order
+        PriorityFrontier frontier = new PriorityFrontier(FrontierOrder.DEPTH_AND_SCORE);
+        int parentImages = 5;
+        for (String path : new String[] {"/archive/2019", "/about", "/products/hats", "/login", "/portfolio"}) {
+            add(frontier, path, 1, FrontierOrder.score(path, parentImages));
+        }
+        assertEquals(Arrays.asList("/products/hats", "/portfolio", "/about", "/archive/2019", "/login"),
+                drain(frontier));
+    }
+
+    @Test
+    public void freshnessHalvesAfterHalfLife() {
+        long now = 100L * 24 * 3600 * 1000;
+        long halfLife = 30L * 24 * 3600 * 1000;
+        assertEquals(0, FrontierOrder.freshness(-1, now), DELTA);
+        assertEquals(1, FrontierOrder.freshness(now, now), DELTA);
+        assertEquals(1, FrontierOrder.freshness(now + 1000, now), DELTA);
+        assertEquals(0.5, FrontierOrder.freshness(now - halfLife, now), DELTA);
+        assertEquals(1.0 / 3, FrontierOrder.freshness(now - 2 * halfLife, now), DELTA);
+    }
+
+    private void add(PriorityFrontier frontier, String path, int depth, double score) {
+        frontier.add(new FrontierEntry(path, depth, score, sequence++));
+    }
+
+    private static List<String> drain(PriorityFrontier frontier) {
+        List<String> urls = new ArrayList<>();
+        FrontierEntry entry;
+        while ((entry = frontier.poll()) != null) {
+            urls.add(entry.getUrl());
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,85 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time per path of checking robots.txt rules, the compiled matcher against the
+ * regex code it replaced, kept in {@link RobotsRuleMatcherTest.Baseline}. The
+ * rules are a site's worth of literal prefixes, some wildcards and a few Allow
+ * exceptions.
+ *
+ * Run with: mvn -Pbenchmarks test -Dbenchmark=RobotsRuleMatcherBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RobotsRuleMatcherBenchmark {
+    private static final int PATHS = 1000;
+
+    private final List<String> allowRules = new ArrayList<>();
+    private final List<String> disallowRules = new ArrayList<>();
+    private RobotsRuleMatcher matcher;
+    private String[] paths;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < 40; i++) {
+            disallowRules.add("/section" + i + "/private");
+        }
+        for (int i = 0; i < 10; i++) {
+            disallowRules.add("/*.ext" + i + "$");
+        }
+        for (int i = 0; i < 10; i++) {
+            allowRules.add("/section" + i + "/private/public");
+        }
+        matcher = new RobotsRuleMatcher();
+        for (String rule : disallowRules) {
+            matcher.addRule(rule, false);
+        }
+        for (String rule : allowRules) {
+            matcher.addRule(rule, true);
+        }
+        matcher.compact();
+
+        Random random = new Random(1);
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = "/section" + random.nextInt(60) + (random.nextBoolean() ? "/private/" : "/pub/") + "page" + i + ".html";
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void regex(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(RobotsRuleMatcherTest.Baseline.isPathAllowed(path, allowRules, disallowRules));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void compiled(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(matcher.isAllowed(path));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Checks the compiled matcher on the examples of RFC 9309, and against the
+ * regex code RobotsTxtParser used before it, copied below unchanged. The old
+ * code let any matching Allow win, treated '$' as a literal character and
+ * compared percent-encoding as is; where an example depends on that, the test
+ * asserts that the old code got it wrong.
+ */
+public class RobotsRuleMatcherTest {
+    // Whether the old code agrees with the RFC on an example
+    private static final boolean BASELINE_AGREES = true;
+    private static final boolean BASELINE_WRONG = false;
+
+    @Test
+    public void followsRfcSimpleExample() {
+        // RFC 9309 section 5.1, the groups for "*" and for foobot
+        String star = "Disallow: *.gif$\nDisallow: /example/\nAllow: /publications/";
+        check(star, "/example/page.html", false, BASELINE_AGREES);
+        check(star, "/publications/index.html", true, BASELINE_AGREES);
+        check(star, "/images/logo.gif", false, BASELINE_WRONG);
+        check(star, "/images/logo.gif.html", true, BASELINE_AGREES);
+        check(star, "/other/page.html", true, BASELINE_AGREES);
+
+        String foobot = "Disallow:/\nAllow:/example/page.html\nAllow:/example/allowed.gif";
+        check(foobot, "/example/page.html", true, BASELINE_AGREES);
+        check(foobot, "/example/allowed.gif", true, BASELINE_AGREES);
+        check(foobot, "/example/other.html", false, BASELINE_AGREES);
+        check(foobot, "/", false, BASELINE_AGREES);
+    }
+
+    @Test
+    public void prefersLongestMatch() {
+        // RFC 9309 section 5.2
+        String rules = "Allow: /example/page/\nDisallow: /example/page/disallowed.gif";
+        check(rules, "/example/page/", true, BASELINE_AGREES);
+        check(rules, "/example/page/allowed.gif", true, BASELINE_AGREES);
+        check(rules, "/example/page/disallowed.gif", false, BASELINE_WRONG);
+
+        // Allow wins a tie, also between a wildcard and a literal rule of equal length
+        check("Disallow: /page\nAllow: /page", "/page/a", true, BASELINE_AGREES);
+        check("Disallow: /x.php\nAllow: /*.php", "/x.php", true, BASELINE_AGREES);
+        check("Disallow: /x.php5\nAllow: /*.php", "/x.php5", false, BASELINE_WRONG);
+    }
+
+    @Test
+    public void supportsSpecialCharacters() {
+        // RFC 9309 section 2.2.3
+        String exact = "Disallow: /\nAllow: /this/path/exactly$";
+        check(exact, "/this/path/exactly", true, BASELINE_WRONG);
+        check(exact, "/this/path/exactly/more", false, BASELINE_AGREES);
+        check(exact, "/this/path/exactly?query", false, BASELINE_AGREES);
+
+        String star = "Disallow: /\nAllow: /this/*/exactly";
+        check(star, "/this/a/exactly", true, BASELINE_AGREES);
+        check(star, "/this/a/b/exactly/more", true, BASELINE_AGREES);
+        check(star, "/this/exactly", false, BASELINE_AGREES);
+
+        // Escaped special characters are literal
+        check("Disallow: /path/file-with-a-%2A.html", "/path/file-with-a-*.html", false, BASELINE_WRONG);
+        check("Disallow: /path/file-with-a-%2A.html", "/path/file-with-a-x.html", true, BASELINE_AGREES);
+        check("Disallow: /path/foo-%24", "/path/foo-$", false, BASELINE_WRONG);
+        check("Disallow: /path/foo-%24", "/path/foo-", true, BASELINE_AGREES);
+    }
+
+    @Test
+    public void normalizesPercentEncoding() {
+        // RFC 9309 section 2.2.2
+        check("Disallow: /foo/bar?baz=quz", "/foo/bar?baz=quz", false, BASELINE_AGREES);
+        check("Disallow: /foo/bar/ツ", "/foo/bar/%E3%83%84", false, BASELINE_WRONG);
+        check("Disallow: /foo/bar/%E3%83%84", "/foo/bar/%E3%83%84", false, BASELINE_AGREES);
+        check("Disallow: /foo/bar/%E3%83%84", "/foo/bar/ツ", false, BASELINE_WRONG);
+        check("Disallow: /foo/bar/%62%61%7A", "/foo/bar/baz", false, BASELINE_WRONG);
+        check("Disallow: /foo/bar/%e3%83%84", "/foo/bar/%E3%83%84", false, BASELINE_WRONG);
+        // Reserved characters stay distinct from their escapes
+        check("Disallow: /a%2Fb", "/a/b", true, BASELINE_AGREES);
+
+        assertEquals("/foo/bar/%E3%83%84", RobotsRuleMatcher.normalize("/foo/bar/ツ", false));
+        assertEquals("/foo/bar/baz", RobotsRuleMatcher.normalize("/foo/bar/%62%61%7a", false));
+        assertEquals("/a%2Fb/%3F", RobotsRuleMatcher.normalize("/a%2fb/%3f", false));
+        assertEquals("/%F0%9F%98%80", RobotsRuleMatcher.normalize("/😀", false));
+        assertEquals("/100%/%2A", RobotsRuleMatcher.normalize("/100%/*", false));
+        assertEquals("/*.gif", RobotsRuleMatcher.normalize("/*.gif", true));
+        assertEquals("/a%24b", RobotsRuleMatcher.normalize("/a$b", true));
+        String plain = "/plain/path?a=1";
+        assertTrue(plain == RobotsRuleMatcher.normalize(plain, false));
+    }
+
+    @Test
+    public void bareDollarOnlyMatchesEmptyPath() {
+        // The pattern ends right where it starts, so only an empty path matches.
+        // The old code looked for a literal '$' anywhere in the path.
+        String rules = "Disallow: $";
+        check(rules, "", false, BASELINE_WRONG);
+        check(rules, "/", true, BASELINE_AGREES);
+        check(rules, "/a", true, BASELINE_AGREES);
+        check(rules, "/price$", true, BASELINE_WRONG);
+
+        // Longer rules still beat it on the empty path
+        check("Disallow: $\nAllow: *$", "", true, BASELINE_AGREES);
+    }
+
+    @Test
+    public void matchesBaselineOnDisallowRules() {
+        // With only Disallow rules and no '$' or escapes, precedence and encoding do
+        // not matter, so the two matchers must agree on every path
+        String[] segments = {"a", "b", "ab", "img", "x.gif", "page.html", "?q=1", "&s=2", "-", "."};
+        Random random = new Random(9309);
+        for (int round = 0; round < 200; round++) {
+            List<String> disallowed = new ArrayList<>();
+            RobotsRuleMatcher matcher = new RobotsRuleMatcher();
+            for (int r = 0; r < 1 + random.nextInt(8); r++) {
+                String pattern = randomPath(random, segments);
+                if (random.nextInt(3) == 0) {
+                    int star = 1 + random.nextInt(pattern.length());
+                    pattern = pattern.substring(0, star) + "*" + pattern.substring(star);
+                }
+                disallowed.add(pattern);
+                matcher.addRule(pattern, false);
+            }
+            matcher.compact();
+            for (int p = 0; p < 50; p++) {
+                String path = randomPath(random, segments);
+                assertEquals(disallowed + " on " + path,
+                        Baseline.isPathAllowed(path, new ArrayList<>(), disallowed), matcher.isAllowed(path));
+            }
+        }
+    }
+
+    private static String randomPath(Random random, String[] segments) {
+        StringBuilder path = new StringBuilder();
+        for (int s = 0; s < 1 + random.nextInt(4); s++) {
+            path.append('/').append(segments[random.nextInt(segments.length)]);
+        }
+        return path.toString();
+    }
+
+    /**
+     * Check one path against robots.txt Allow and Disallow lines
+     */
+    private static void check(String rules, String path, boolean allowed, boolean baselineAgrees) {
+        RobotsRuleMatcher matcher = new RobotsRuleMatcher();
+        List<String> allowRules = new ArrayList<>();
+        List<String> disallowRules = new ArrayList<>();
+        for (String line : rules.split("\n")) {
+            int colon = line.indexOf(':');
+            String value = line.substring(colon + 1).trim();
+            boolean allow = line.substring(0, colon).trim().equalsIgnoreCase("allow");
+            matcher.addRule(value, allow);
+            (allow ? allowRules : disallowRules).add(value);
+        }
+        matcher.compact();
+
+        String reason = rules.replace('\n', ' ') + " on " + path;
+        assertEquals(reason, allowed, matcher.isAllowed(path));
+        boolean baseline = Baseline.isPathAllowed(path, allowRules, disallowRules);
+        if (baselineAgrees) {
+            assertEquals("baseline: " + reason, allowed, baseline);
+        } else {
+            assertNotEquals("baseline: " + reason, allowed, baseline);
+        }
+    }
+
+    /**
+     * The rule matching of RobotsTxtParser before the rules were compiled
+     */
+    static final class Baseline {
+        static boolean isPathAllowed(String path, List<String> allowedPaths, List<String> disallowedPaths) {
+            // Check allow rules first (they take precedence over disallow)
+            for (String allowPath : allowedPaths) {
+                if (pathMatches(path, allowPath)) {
+                    return true;
+                }
+            }
+
+            // Then check disallow rules
+            for (String disallowPath : disallowedPaths) {
+                if (pathMatches(path, disallowPath)) {
+                    return false;
+                }
+            }
+
+            // If no rules matched, it's allowed
+            return true;
+        }
+
+        private static boolean pathMatches(String path, String pattern) {
+            // Convert robots.txt pattern to regex
+            String regex = pattern
+                    .replace(".", "\\.")
+                    .replace("?", "\\?")
+                    .replace("*", ".*")
+                    .replace("$", "\\$");
+
+            // Ensure the pattern matches the entire path
+            if (!pattern.endsWith("$")) {
+                regex = "^" + regex;
+            }
+
+            // Check if path matches the pattern
+            Pattern compiledPattern = Pattern.compile(regex);
+            Matcher matcher = compiledPattern.matcher(path);
+            return matcher.find();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks that the Bloom filter never forgets a string, keeps its measured
+ * false-positive rate under the configured one as it grows, and grows its bit
+ * arrays as documented
+ */
+public class ScalableBloomFilterTest {
+    private static final int ELEMENTS = 100000;
+    private static final int QUERIES = 200000;
+    private static final double RATE = 0.01;
+    // The configured rate bounds the expected rate. How full the small first
+    // stages end up depends on which strings land in them, which moves the
+    // measured rate by up to a tenth or so.
+    private static final double MAX_MEASURED_RATE = RATE * 1.2;
+
+    @Test
+    public void hasNoFalseNegatives() {
+        // Starting small forces several stages
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, RATE);
+        for (int i = 0; i < ELEMENTS; i++) {
+            filter.put(added(i));
+            assertTrue(filter.mightContain(added(i)));
+        }
+        for (int i = 0; i < ELEMENTS; i++) {
+            assertTrue(added(i), filter.mightContain(added(i)));
+        }
+    }
+
+    @Test
+    public void staysUnderFalsePositiveRate() {
+        for (int initialCapacity : new int[] {ELEMENTS, ELEMENTS / 10, 100}) {
+            ScalableBloomFilter filter = new ScalableBloomFilter(initialCapacity, RATE);
+            for (int i = 0; i < ELEMENTS; i++) {
+                filter.put(added(i));
+            }
+            double rate = measureFalsePositiveRate(filter);
+            assertTrue("initial capacity " + initialCapacity + " rate " + rate, rate <= MAX_MEASURED_RATE);
+            assertEquals(RATE, filter.getFalsePositiveRate(), 0);
+        }
+    }
+
+    @Test
+    public void growsByStages() {
+        ScalableBloomFilter sized = new ScalableBloomFilter(ELEMENTS, RATE);
+        long sizedBytes = sized.getBitBytes();
+        for (int i = 0; i < ELEMENTS; i++) {
+            sized.put(added(i));
+        }
+        // A filter sized for its elements never grows. Its only stage has half
+        // the rate, which takes -ln(p/2) / (ln 2)^2 bits per element.
+        assertEquals(sizedBytes, sized.getBitBytes());
+        double optimalBits = -Math.log(RATE / 2) / (Math.log(2) * Math.log(2));
+        double bitsPerElement = 8.0 * sizedBytes / ELEMENTS;
+        assertEquals(optimalBits, bitsPerElement, 0.01);
+
+        // Growing from a small filter costs more bits, but stays within a few times that
+        ScalableBloomFilter grown = new ScalableBloomFilter(100, RATE);
+        long initialBytes = grown.getBitBytes();
+        for (int i = 0; i < ELEMENTS; i++) {
+            grown.put(added(i));
+        }
+        assertTrue(grown.getBitBytes() > initialBytes);
+        assertTrue(grown.getBitBytes() < 3 * sizedBytes);
+    }
+
+    @Test
+    public void addsConcurrently() throws InterruptedException {
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, RATE);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                for (int i = offset; i < ELEMENTS; i += 8) {
+                    filter.put(added(i));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < ELEMENTS; i++) {
+            assertTrue(added(i), filter.mightContain(added(i)));
+        }
+        double rate = measureFalsePositiveRate(filter);
+        assertTrue("rate " + rate, rate <= MAX_MEASURED_RATE);
+    }
+
+    @Test
+    public void rejectsInvalidSettings() {
+        for (double rate : new double[] {0, 1, -0.5, Double.NaN}) {
+            try {
+                new ScalableBloomFilter(100, rate);
+                fail("rate " + rate + " was accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        try {
+            new ScalableBloomFilter(0, RATE);
+            fail("capacity 0 was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static double measureFalsePositiveRate(ScalableBloomFilter filter) {
+        int falsePositives = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            if (filter.mightContain("http://example.com/never/" + i)) {
+                falsePositives++;
+            }
+        }
+        return (double) falsePositives / QUERIES;
+    }
+
+    private static String added(int i) {
+        return "http://example.com/page/" + i;
+    }
+}
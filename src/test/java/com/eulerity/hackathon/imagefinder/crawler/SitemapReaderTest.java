@@ -0,0 +1,288 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Parses sitemaps and sitemap indexes, plain and gzipped, and reads them from
+ * a local server through the scheduler
+ */
+public class SitemapReaderTest {
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+    private static final String URLSET = "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">";
+    private static final String INDEX = "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">";
+
+    private final List<String> requested = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Serve an index listing a gzipped sitemap on this host and sitemaps that
+     * must not be read, and the gzipped sitemap itself
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            requested.add(path);
+            byte[] body;
+            if (path.equals("/sitemap_index.xml")) {
+                body = (HEADER + INDEX
+                        + sitemap("http://other.example/sitemap.xml", "2024-05-01")
+                        + sitemap("ftp://127.0.0.1/sitemap.xml", "2024-04-01")
+                        + sitemap("file:///etc/passwd", "2024-03-01")
+                        + sitemap(baseUrl + "/pages.xml.gz", "2024-02-01")
+                        + "</sitemapindex>").getBytes(StandardCharsets.UTF_8);
+            } else if (path.equals("/pages.xml.gz")) {
+                body = gzip(HEADER + URLSET + url(baseUrl + "/a", null) + url(baseUrl + "/b", null) + "</urlset>");
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Test
+    public void parsesUrlset() throws IOException {
+        List<SitemapReader.SitemapUrl> pages = new ArrayList<>();
+        List<SitemapReader.SitemapUrl> children = new ArrayList<>();
+        parse(HEADER + URLSET
+                + url("https://example.com/a", "2024-01-02")
+                + url("  https://example.com/b  ", null)
+                + "<url><lastmod>2024-01-02</lastmod></url>"
+                + "</urlset>", pages, children, 100);
+
+        assertEquals(Arrays.asList("https://example.com/a", "https://example.com/b"), locs(pages));
+        assertEquals(SitemapReader.parseLastModified("2024-01-02"), pages.get(0).getLastModified());
+        assertEquals(-1, pages.get(1).getLastModified());
+        assertTrue(children.isEmpty());
+    }
+
+    @Test
+    public void parsesGzippedIndex() throws IOException {
+        List<SitemapReader.SitemapUrl> pages = new ArrayList<>();
+        List<SitemapReader.SitemapUrl> children = new ArrayList<>();
+        byte[] body = gzip(HEADER + INDEX
+                + sitemap("https://example.com/one.xml", "2024-01-01")
+                + sitemap("https://example.com/two.xml.gz", null)
+                + "</sitemapindex>");
+        SitemapReader.parse(new ByteArrayInputStream(body), pages, children, 100);
+
+        assertTrue(pages.isEmpty());
+        assertEquals(Arrays.asList("https://example.com/one.xml", "https://example.com/two.xml.gz"), locs(children));
+    }
+
+    @Test
+    public void onlyReadsEntriesDirectlyUnderTheRoot() throws IOException {
+        List<SitemapReader.SitemapUrl> pages = new ArrayList<>();
+        List<SitemapReader.SitemapUrl> children = new ArrayList<>();
+        parse(HEADER + URLSET
+                // An extension's loc inside an entry is not the entry's URL
+                + "<url><loc>https://example.com/a</loc>"
+                + "<image><loc>https://example.com/a.png</loc></image></url>"
+                // Neither is an entry nested deeper than the root's children
+                + "<wrapper><url><loc>https://example.com/nested</loc></url></wrapper>"
+                + "<wrapper><sitemap><loc>https://example.com/nested.xml</loc></sitemap></wrapper>"
+                + "</urlset>", pages, children, 100);
+
+        assertEquals(Collections.singletonList("https://example.com/a"), locs(pages));
+        assertTrue(children.isEmpty());
+    }
+
+    @Test
+    public void capsEntriesPerFile() throws IOException {
+        StringBuilder xml = new StringBuilder(HEADER).append(URLSET);
+        for (int i = 0; i < 50010; i++) {
+            xml.append("<url><loc>https://example.com/").append(i).append("</loc></url>");
+        }
+        xml.append("</urlset>");
+
+        List<SitemapReader.SitemapUrl> pages = new ArrayList<>();
+        parse(xml.toString(), pages, new ArrayList<>(), Integer.MAX_VALUE);
+        assertEquals(50000, pages.size());
+        assertEquals("https://example.com/49999", pages.get(49999).getLoc());
+
+        // and stops at the URLs the caller still wants
+        pages.clear();
+        parse(xml.toString(), pages, new ArrayList<>(), 10);
+        assertEquals(10, pages.size());
+    }
+
+    @Test
+    public void doesNotResolveExternalEntities() throws IOException {
+        File secret = File.createTempFile("sitemap", ".txt");
+        try {
+            Files.write(secret.toPath(), "top-secret".getBytes(StandardCharsets.UTF_8));
+            String xml = HEADER
+                    + "<!DOCTYPE urlset [<!ENTITY secret SYSTEM \"" + secret.toURI() + "\">]>"
+                    + URLSET + "<url><loc>https://example.com/&secret;</loc></url></urlset>";
+            List<SitemapReader.SitemapUrl> pages = new ArrayList<>();
+            try {
+                parse(xml, pages, new ArrayList<>(), 100);
+            } catch (IOException e) {
+                // Refusing the document is as good as ignoring the entity
+            }
+            for (SitemapReader.SitemapUrl page : pages) {
+                assertFalse(page.getLoc().contains("top-secret"));
+            }
+        } finally {
+            secret.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedXml() throws IOException {
+        parse(HEADER + URLSET + "<url><loc>https://example.com/a</url>", new ArrayList<>(), new ArrayList<>(), 100);
+    }
+
+    @Test
+    public void parsesW3cDatetimes() {
+        long day = 24L * 3600 * 1000;
+        long date = SitemapReader.parseLastModified("2024-03-01");
+        assertEquals(19783 * day, date);
+        assertEquals(SitemapReader.parseLastModified("2024-01-01"), SitemapReader.parseLastModified("2024"));
+        assertEquals(SitemapReader.parseLastModified("2024-03-01"), SitemapReader.parseLastModified("2024-03"));
+        assertEquals(date + 3600 * 1000, SitemapReader.parseLastModified("2024-03-01T01:00:00Z"));
+        assertEquals(date + 3600 * 1000, SitemapReader.parseLastModified("2024-03-01T03:00:00+02:00"));
+        assertEquals(date + 1500, SitemapReader.parseLastModified("2024-03-01T00:00:01.5Z"));
+        assertEquals(-1, SitemapReader.parseLastModified("yesterday"));
+        assertEquals(-1, SitemapReader.parseLastModified("2024-13-01"));
+        assertEquals(-1, SitemapReader.parseLastModified(""));
+        assertEquals(-1, SitemapReader.parseLastModified(null));
+    }
+
+    @Test
+    public void robotsTxtOnlyListsSitemapsOnItsHost() {
+        RobotsTxtParser rules = new RobotsTxtParser("https://www.example.com", "User-agent: *\n"
+                + "Sitemap: /sitemap.xml\n"
+                + "Sitemap: http://example.com/news.xml\n"
+                + "Sitemap: https://internal.example.com/sitemap.xml\n"
+                + "Sitemap: http://169.254.169.254/latest/meta-data\n"
+                + "Sitemap: ftp://example.com/sitemap.xml\n"
+                + "Sitemap: file:///etc/passwd\n");
+        assertEquals(Arrays.asList("https://www.example.com/sitemap.xml", "http://example.com/news.xml"),
+                rules.getSitemaps());
+    }
+
+    @Test
+    public void readsOnlySitemapsOnTheCrawledHost() {
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> 0);
+        AtomicLong requestCount = new AtomicLong();
+        SitemapReader reader = new SitemapReader(new CrawlBudget(0, 0, 0, 0), requestCount, new AtomicLong(),
+                scheduler, "127.0.0.1");
+        List<SitemapReader.SitemapUrl> pages = reader.read(Arrays.asList(
+                "http://other.example/robots-sitemap.xml", baseUrl + "/sitemap_index.xml"), 100);
+
+        assertEquals(Arrays.asList(baseUrl + "/a", baseUrl + "/b"), locs(pages));
+        assertEquals(Arrays.asList("/sitemap_index.xml", "/pages.xml.gz"), requested);
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    public void skipsHostWithOpenCircuit() {
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> 0);
+        scheduler.add(baseUrl + "/");
+        for (int i = 0; i < 5; i++) {
+            scheduler.recordFailure(baseUrl + "/page" + i);
+        }
+        AtomicLong requestCount = new AtomicLong();
+        SitemapReader reader = new SitemapReader(new CrawlBudget(0, 0, 0, 0), requestCount, new AtomicLong(),
+                scheduler, "127.0.0.1");
+
+        assertTrue(reader.read(Collections.singletonList(baseUrl + "/sitemap_index.xml"), 100).isEmpty());
+        assertTrue(requested.isEmpty());
+        assertEquals(0, requestCount.get());
+    }
+
+    @Test
+    public void reservesTheHostsNextFetch() {
+        AtomicLong clock = new AtomicLong(1000000);
+        PolitenessScheduler scheduler = new PolitenessScheduler(host -> 1000, clock::get);
+        assertEquals(0, scheduler.reserveFetch("http://example.com/sitemap.xml"));
+        long wait = scheduler.reserveFetch("http://example.com/sitemap2.xml");
+        assertTrue(wait >= 1000);
+
+        // Pages of the host wait behind both sitemaps
+        scheduler.add("http://example.com/page");
+        assertNull(scheduler.poll());
+        assertTrue(scheduler.getNextReadyDelayMs() >= wait + 1000);
+        // Other hosts do not
+        scheduler.add("http://example.org/page");
+        assertEquals("http://example.org/page", scheduler.poll().getUrl());
+    }
+
+    private static void parse(String xml, List<SitemapReader.SitemapUrl> pages,
+            List<SitemapReader.SitemapUrl> children, int maxUrls) throws IOException {
+        SitemapReader.parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), pages, children, maxUrls);
+    }
+
+    private static String url(String loc, String lastModified) {
+        return "<url><loc>" + loc + "</loc>" + (lastModified == null ? "" : "<lastmod>" + lastModified + "</lastmod>")
+                + "</url>";
+    }
+
+    private static String sitemap(String loc, String lastModified) {
+        return "<sitemap><loc>" + loc + "</loc>"
+                + (lastModified == null ? "" : "<lastmod>" + lastModified + "</lastmod>") + "</sitemap>";
+    }
+
+    private static byte[] gzip(String xml) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(xml.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<String> locs(List<SitemapReader.SitemapUrl> urls) {
+        List<String> locs = new ArrayList<>();
+        for (SitemapReader.SitemapUrl url : urls) {
+            locs.add(url.getLoc());
+        }
+        return locs;
+    }
+}
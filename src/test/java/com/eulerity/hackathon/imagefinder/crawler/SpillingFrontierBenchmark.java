@@ -0,0 +1,66 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time per URL of queueing a host's frontier and draining it again, the
+ * in-memory queue against SpillingFrontier keeping 10000 URLs on the heap and
+ * writing the other 90000 to segment files.
+ *
+ * Run with: mvn -Pbenchmarks test -Dbenchmark=SpillingFrontierBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpillingFrontierBenchmark {
+    private static final int URLS = 100000;
+    private static final int HOT_URLS = 10000;
+
+    @Param({"memory", "spilling"})
+    public String frontier;
+
+    private FrontierEntry[] entries;
+
+    @Setup
+    public void setUp() {
+        entries = new FrontierEntry[URLS];
+        for (int i = 0; i < URLS; i++) {
+            String url = "https://example.com/products/category-" + (i % 977) + "/item-" + i + "?page=" + (i % 13);
+            entries[i] = new FrontierEntry(url, 1 + i % 5, 0, i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void fillAndDrain(Blackhole blackhole) {
+        Frontier queue = frontier.equals("spilling") ? new SpillingFrontier(HOT_URLS) : new InMemoryFrontier();
+        try {
+            for (FrontierEntry entry : entries) {
+                queue.add(entry);
+            }
+            FrontierEntry entry;
+            while ((entry = queue.poll()) != null) {
+                blackhole.consume(entry);
+            }
+        } finally {
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the spilling frontier hands URLs out first-in first-out however
+ * they are split between the heap and segment files, and that it removes its
+ * files again
+ */
+public class SpillingFrontierTest {
+    // A few records per segment, so a test run crosses many segment boundaries
+    private static final int SEGMENT_SIZE = 256;
+
+    @Test
+    public void keepsOrderAcrossSegments() {
+        SpillingFrontier frontier = new SpillingFrontier(8, SEGMENT_SIZE);
+        for (int i = 0; i < 1000; i++) {
+            frontier.add(entry(i));
+        }
+        assertEquals(1000, frontier.size());
+        assertEquals(1000 - 8, frontier.getSpilledCount());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEntry(entry(i), frontier.poll());
+            assertEquals(1000 - i - 1, frontier.size());
+        }
+        assertNull(frontier.poll());
+        assertEquals(0, frontier.getSpilledCount());
+    }
+
+    @Test
+    public void keepsOrderWhileAddingAndPolling() {
+        SpillingFrontier frontier = new SpillingFrontier(16, SEGMENT_SIZE);
+        ArrayDeque<FrontierEntry> expected = new ArrayDeque<>();
+        Random random = new Random(42);
+        int next = 0;
+        int maxSpilled = 0;
+        for (int step = 0; step < 20000; step++) {
+            // Add a little more than is polled, so the queue grows and shrinks
+            if (random.nextInt(100) < 55) {
+                FrontierEntry entry = entry(next++);
+                frontier.add(entry);
+                expected.add(entry);
+            } else {
+                FrontierEntry polled = frontier.poll();
+                FrontierEntry wanted = expected.poll();
+                if (wanted == null) {
+                    assertNull(polled);
+                } else {
+                    assertEntry(wanted, polled);
+                }
+            }
+            assertEquals(expected.size(), frontier.size());
+            maxSpilled = Math.max(maxSpilled, frontier.getSpilledCount());
+        }
+        assertTrue("nothing was spilled", maxSpilled > 100);
+
+        while (!expected.isEmpty()) {
+            assertEntry(expected.poll(), frontier.poll());
+        }
+        assertNull(frontier.poll());
+    }
+
+    @Test
+    public void spillsUrlsLargerThanASegment() {
+        SpillingFrontier frontier = new SpillingFrontier(1, SEGMENT_SIZE);
+        StringBuilder path = new StringBuilder();
+        while (path.length() < 4 * SEGMENT_SIZE) {
+            path.append("/long-path-segment");
+        }
+        FrontierEntry small = entry(0);
+        FrontierEntry large = new FrontierEntry("http://example.com" + path + "/é", 3, 0.5, 1);
+        FrontierEntry after = entry(2);
+        frontier.add(small);
+        frontier.add(large);
+        frontier.add(after);
+        assertEquals(2, frontier.getSpilledCount());
+
+        assertEntry(small, frontier.poll());
+        assertEntry(large, frontier.poll());
+        assertEntry(after, frontier.poll());
+    }
+
+    @Test
+    public void deletesItsFiles() {
+        File tmp = new File(System.getProperty("imagefinder.frontier.dir", System.getProperty("java.io.tmpdir")));
+        int before = countFrontierDirectories(tmp);
+
+        SpillingFrontier frontier = new SpillingFrontier(4, SEGMENT_SIZE);
+        for (int i = 0; i < 100; i++) {
+            frontier.add(entry(i));
+        }
+        assertTrue(frontier.getSpilledCount() > 0);
+        assertEquals(before + 1, countFrontierDirectories(tmp));
+
+        frontier.clear();
+        assertEquals(0, frontier.size());
+        assertEquals(0, frontier.getSpilledCount());
+        assertNull(frontier.poll());
+        assertEquals(before, countFrontierDirectories(tmp));
+
+        // Still usable after a clear
+        frontier.add(entry(7));
+        assertEntry(entry(7), frontier.poll());
+    }
+
+    private static int countFrontierDirectories(File directory) {
+        String[] names = directory.list((parent, name) -> name.startsWith("imagefinder-frontier"));
+        return names == null ? 0 : names.length;
+    }
+
+    private static FrontierEntry entry(int i) {
+        return new FrontierEntry("http://example.com/page/" + i, i % 7, i / 3.0, i);
+    }
+
+    private static void assertEntry(FrontierEntry expected, FrontierEntry actual) {
+        assertEquals(expected.getUrl(), actual.getUrl());
+        assertEquals(expected.getDepth(), actual.getDepth());
+        assertEquals(expected.getScore(), actual.getScore(), 0);
+        assertEquals(expected.getSequence(), actual.getSequence());
+    }
+}
@@ -0,0 +1,188 @@
+package com.eulerity.hackathon.imagefinder.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Crawls pages served from a local server: a page crawled twice, the second
+ * time with the validators of the first, pages of a host that goes down, and
+ * a page with more than the budget allows
+ */
+public class WebCrawlerTest {
+    private static final String ETAG = "\"v1\"";
+    private static final String PAGE = "<html><body><img src=\"/a.png\" alt=\"A\"></body></html>";
+    private static final int FAILING_PAGES = 6;
+    private static final int GALLERY_IMAGES = 5;
+
+    private final AtomicInteger notModified = new AtomicInteger();
+    private HttpServer server;
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.createContext("/failing", this::handleFailing);
+        server.createContext("/gallery", this::handleGallery);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Serve the page with an ETag, and answer a request that carries it with 304
+     * after dropping every stored validator, as an eviction or another crawl
+     * replacing the entry would while the response is on its way
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestURI().getPath().equals("/")) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                ValidatorStore.getInstance().invalidateAll();
+                notModified.incrementAndGet();
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                send(exchange, PAGE);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Serve a page linking to pages that all answer 503
+     */
+    private void handleFailing(HttpExchange exchange) throws IOException {
+        try {
+            if (exchange.getRequestURI().getPath().equals("/failing")) {
+                StringBuilder links = new StringBuilder();
+                for (int i = 0; i < FAILING_PAGES; i++) {
+                    links.append("<a href=\"/failing/page").append(i).append("\">").append(i).append("</a>");
+                }
+                send(exchange, links.toString());
+            } else {
+                exchange.sendResponseHeaders(503, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Serve a page with a few images
+     */
+    private void handleGallery(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder images = new StringBuilder("<html><body>");
+            for (int i = 0; i < GALLERY_IMAGES; i++) {
+                images.append("<img src=\"/gallery/").append(i).append(".png\">");
+            }
+            send(exchange, images.append("</body></html>").toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, String html) throws IOException {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void reusesExtractionOfNotModifiedPage() {
+        checkNotModified(FetchMode.JSOUP);
+    }
+
+    @Test
+    public void reusesExtractionOfNotModifiedPageWhenAsync() {
+        checkNotModified(FetchMode.ASYNC);
+    }
+
+    private void checkNotModified(FetchMode fetchMode) {
+        List<String> expected = Collections.singletonList(baseUrl + "a.png");
+        WebCrawler first = newCrawler(fetchMode);
+        assertEquals(expected, first.crawl());
+        assertEquals(0, first.getPagesNotModified());
+
+        // The stored entry is gone by the time the 304 is processed
+        WebCrawler second = newCrawler(fetchMode);
+        assertEquals(expected, second.crawl());
+        assertEquals(1, notModified.get());
+        assertEquals(1, second.getPagesNotModified());
+        assertEquals("A", second.getImageMetadata(baseUrl + "a.png").getAltText());
+    }
+
+    @Test
+    public void requeuedPagesDoNotCountAgainstMaxPages() {
+        // The links are fetched at once, and their failures open the circuit
+        // before any retry is sent. The retries fail fast and put the pages
+        // back, and the circuit stays open for 30 s, past the time budget.
+        WebCrawler crawler = new WebCrawler(baseUrl + "failing", 1 + FAILING_PAGES, 1, 0, false);
+        crawler.setFetchMode(FetchMode.ASYNC);
+        crawler.setAdaptiveConcurrency(false);
+        crawler.setSitemapSeeding(false);
+        crawler.setBudget(new CrawlBudget(3000, 0, 0, 0));
+        crawler.crawl();
+
+        assertEquals(StopReason.TIME_BUDGET, crawler.getStopReason());
+        assertTrue(crawler.getPagesRequeued() >= FAILING_PAGES - 1);
+        // Only the seed was crawled, the pages put back are not counted
+        assertEquals(1, crawler.getPagesCrawled());
+    }
+
+    @Test
+    public void stopsAtImageBudget() {
+        WebCrawler crawler = new WebCrawler(baseUrl + "gallery", 1, 1, 0, false);
+        crawler.setSitemapSeeding(false);
+        crawler.setBudget(new CrawlBudget(0, 0, 0, 3));
+        assertEquals(3, crawler.crawl().size());
+        assertEquals(3, crawler.getImageCount());
+        assertEquals(StopReason.IMAGE_BUDGET, crawler.getStopReason());
+    }
+
+    @Test
+    public void capsBodyAtByteBudget() {
+        for (FetchMode fetchMode : FetchMode.values()) {
+            WebCrawler crawler = new WebCrawler(baseUrl + "gallery", 1, 1, 0, false);
+            crawler.setFetchMode(fetchMode);
+            crawler.setSitemapSeeding(false);
+            crawler.setBudget(new CrawlBudget(0, 100, 0, 0));
+            crawler.crawl();
+            assertEquals(fetchMode.name(), 100, crawler.getBytesDownloaded());
+        }
+    }
+
+    private WebCrawler newCrawler(FetchMode fetchMode) {
+        WebCrawler crawler = new WebCrawler(baseUrl, 1, 1, 0, false);
+        crawler.setFetchMode(fetchMode);
+        crawler.setSitemapSeeding(false);
+        return crawler;
+    }
+}